@@ -0,0 +1,99 @@
+/*
+ * Copyright 2021 Voyta Krizek, https://github.com/NewTownData
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.newtowndata.disk.benchmark;
+
+import com.newtowndata.disk.core.cache.CacheFormat;
+import com.newtowndata.disk.core.cache.GzipCacheFormat;
+import com.newtowndata.disk.core.cache.SegmentedCacheFormat;
+import com.newtowndata.disk.core.compact.CompactPathGraph;
+import com.newtowndata.disk.core.compact.MappedCacheFormat;
+import com.newtowndata.disk.core.entity.PathGraph;
+import com.newtowndata.disk.tools.TreeGenerator;
+import com.newtowndata.disk.tools.TreeShape;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Saves and loads the cache the way {@code CacheService} serializes and deserializes it, for every
+ * format and several graph sizes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class CacheBenchmark {
+
+  private static final int PARALLELISM = Runtime.getRuntime().availableProcessors();
+
+  @Param({"10000", "100000", "1000000"})
+  public int nodes;
+
+  @Param({"GZIP", "MAPPED", "SEGMENTED"})
+  public CacheFormat format;
+
+  private Path directory;
+  private Path cache;
+  private PathGraph graph;
+
+  @Setup
+  public void setup() throws IOException {
+    directory = Files.createTempDirectory("cache-benchmark");
+    cache = directory.resolve("cache.idx");
+    graph = TreeGenerator.graph("/synthetic",
+        new TreeShape(Integer.MAX_VALUE, 4, 12, 0, 0, 1L << 20, nodes, nodes));
+    serialize();
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    TreeGenerator.delete(directory);
+  }
+
+  @Benchmark
+  public Path serialize() throws IOException {
+    switch (format) {
+      case MAPPED -> MappedCacheFormat.write(CompactPathGraph.from(graph), cache);
+      case SEGMENTED -> SegmentedCacheFormat.write(graph, cache,
+          GzipCacheFormat.DEFAULT_COMPRESSION_LEVEL, PARALLELISM * 4, PARALLELISM);
+      default -> GzipCacheFormat.write(graph, cache);
+    }
+    return cache;
+  }
+
+  @Benchmark
+  public Object deserialize() throws IOException {
+    return switch (format) {
+      case MAPPED -> MappedCacheFormat.open(cache).toPathGraph();
+      case SEGMENTED -> SegmentedCacheFormat.read(cache, PARALLELISM);
+      default -> GzipCacheFormat.read(cache);
+    };
+  }
+
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2021 Voyta Krizek, https://github.com/NewTownData
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.newtowndata.disk.benchmark;
+
+import com.newtowndata.disk.logic.utils.FileUtils;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Rendering of sizes and timestamps, called once per row of every listing.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FileUtilsBenchmark {
+
+  private final long[] values = new long[1024];
+
+  @Setup
+  public void setup() {
+    Random random = new Random(42L);
+    for (int i = 0; i < values.length; i++) {
+      values[i] = random.nextLong(1L << (i % 48 + 1));
+    }
+  }
+
+  @Benchmark
+  public void renderFileSize(Blackhole blackhole) {
+    for (long value : values) {
+      blackhole.consume(FileUtils.renderFileSize(value));
+    }
+  }
+
+  @Benchmark
+  public void renderTimestamp(Blackhole blackhole) {
+    for (long value : values) {
+      blackhole.consume(FileUtils.renderTimestamp(value));
+    }
+  }
+
+}
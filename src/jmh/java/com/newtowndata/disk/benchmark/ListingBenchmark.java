@@ -0,0 +1,91 @@
+/*
+ * Copyright 2021 Voyta Krizek, https://github.com/NewTownData
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.newtowndata.disk.benchmark;
+
+import com.newtowndata.disk.core.compact.CompactPathGraph;
+import com.newtowndata.disk.core.entity.PathGraph;
+import com.newtowndata.disk.core.index.ExtensionIndex;
+import com.newtowndata.disk.rest.IndexResource;
+import com.newtowndata.disk.service.CacheService;
+import com.newtowndata.disk.service.ScanStatus;
+import com.newtowndata.disk.tools.TreeGenerator;
+import com.newtowndata.disk.tools.TreeShape;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+import org.mockito.Mockito;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Builds the model of the listing page for the widest directory of a flat tree and for the deepest
+ * directory of a narrow one, on the map-backed and the compact graph.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ListingBenchmark {
+
+  @Param({"wide", "deep"})
+  public String shape;
+
+  @Param({"false", "true"})
+  public boolean compact;
+
+  private IndexResource indexResource;
+  private String path;
+
+  @Setup
+  public void setup() {
+    PathGraph graph = shape.equals("wide")
+        ? TreeGenerator.graph("/wide", new TreeShape(0, 0, 50_000, 0, 0, 1L << 20, 50_001, 42L))
+        : TreeGenerator.graph("/deep", new TreeShape(0, 0, 0, 0, 1_000, 1L << 20, 2_001, 42L));
+    path = shape.equals("wide") ? "/wide" : deepest(graph);
+    if (compact) {
+      graph = CompactPathGraph.from(graph).toPathGraph();
+    }
+
+    CacheService cacheService = Mockito.mock(CacheService.class);
+    Mockito.when(cacheService.getPathGraph()).thenReturn(graph);
+    Mockito.when(cacheService.getExtensionIndex()).thenReturn(ExtensionIndex.build(graph, 8));
+    Mockito.when(cacheService.getScanStatus()).thenReturn(ScanStatus.IDLE);
+    // without a listing cache, every invocation builds its listing
+    indexResource = new IndexResource(cacheService, 0L);
+  }
+
+  @Benchmark
+  public Object listing() {
+    HashMap<String, Object> model = new HashMap<>();
+    indexResource.getIndex(path, null, model, null);
+    return model;
+  }
+
+  private static String deepest(PathGraph graph) {
+    return graph.pathInfos().keySet().stream()
+        .filter(key -> !graph.pathInfos().get(key).children().isEmpty())
+        .max((first, second) -> Integer.compare(first.length(), second.length())).orElseThrow();
+  }
+
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2021 Voyta Krizek, https://github.com/NewTownData
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.newtowndata.disk.benchmark;
+
+import com.newtowndata.disk.core.PathUtils;
+import com.newtowndata.disk.core.entity.PathGraph;
+import com.newtowndata.disk.core.entity.PathInfo;
+import com.newtowndata.disk.service.FileVerification;
+import com.newtowndata.disk.service.PathGraphVisitor;
+import com.newtowndata.disk.service.PathService;
+import com.newtowndata.disk.service.PathServices;
+import com.newtowndata.disk.service.ScanMetrics;
+import com.newtowndata.disk.tools.TreeGenerator;
+import com.newtowndata.disk.tools.TreeShape;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Walks a synthetic tree on disk. The page cache is warm after the first iteration, so this measures
+ * the CPU side of the scan rather than the disk.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ScanBenchmark {
+
+  @Param({"3", "4"})
+  public int depth;
+
+  private Path root;
+  private ScanMetrics metrics;
+  private PathService parallelService;
+  private PathGraph graph;
+
+  @Setup
+  public void setup() throws IOException {
+    root = Files.createTempDirectory("scan-benchmark");
+    TreeGenerator.write(root,
+        new TreeShape(depth, 8, 16, 0, 0, 4096L, Integer.MAX_VALUE, 42L));
+    metrics = new ScanMetrics(new SimpleMeterRegistry());
+    parallelService = PathServices.of(0, FileVerification.STAT);
+    graph = parallelService.create(List.of(root));
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    TreeGenerator.delete(root);
+  }
+
+  @Benchmark
+  public Map<String, PathInfo> visitorWalk() throws IOException {
+    Map<String, PathInfo> paths = new HashMap<>();
+    Files.walkFileTree(root, new PathGraphVisitor(paths, metrics.start()));
+    return paths;
+  }
+
+  @Benchmark
+  public PathGraph parallelScan() throws IOException {
+    return parallelService.create(List.of(root));
+  }
+
+  @Benchmark
+  public Object rollup() {
+    return PathUtils.calculateTotals(root.toString(), graph.pathInfos());
+  }
+
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2021 Voyta Krizek, https://github.com/NewTownData
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.newtowndata.disk.core;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+/**
+ * Least recently used cache bounded by the total weight of its values, for example the number of
+ * rows of cached listings. A value heavier than the whole capacity is computed but not kept.
+ */
+public final class LruCache<K, V> {
+
+  private final long capacity;
+  private final ToLongFunction<? super V> weigher;
+  private final LinkedHashMap<K, V> entries = new LinkedHashMap<>(16, 0.75f, true);
+  private long weight;
+
+  public LruCache(long capacity, ToLongFunction<? super V> weigher) {
+    this.capacity = capacity;
+    this.weigher = weigher;
+  }
+
+  /**
+   * Returns the cached value or computes and caches it. The value is computed outside the lock, so
+   * concurrent misses on the same key may compute it more than once.
+   */
+  public V get(K key, Function<? super K, ? extends V> loader) {
+    V value = getIfPresent(key);
+    if (value != null) {
+      return value;
+    }
+
+    value = loader.apply(key);
+    put(key, value);
+    return value;
+  }
+
+  /** @return null when the key is not cached */
+  public synchronized V getIfPresent(K key) {
+    return entries.get(key);
+  }
+
+  public synchronized void put(K key, V value) {
+    long valueWeight = weigher.applyAsLong(value);
+    if (valueWeight > capacity) {
+      return;
+    }
+
+    V previous = entries.put(key, value);
+    if (previous != null) {
+      weight -= weigher.applyAsLong(previous);
+    }
+    weight += valueWeight;
+
+    Iterator<V> eldest = entries.values().iterator();
+    while (weight > capacity) {
+      weight -= weigher.applyAsLong(eldest.next());
+      eldest.remove();
+    }
+  }
+
+  public synchronized void clear() {
+    entries.clear();
+    weight = 0L;
+  }
+
+  public synchronized int size() {
+    return entries.size();
+  }
+
+  public synchronized long weight() {
+    return weight;
+  }
+
+}
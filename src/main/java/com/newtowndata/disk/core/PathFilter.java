@@ -0,0 +1,94 @@
+/*
+ * Copyright 2021 Voyta Krizek, https://github.com/NewTownData
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.newtowndata.disk.core;
+
+import java.nio.file.FileSystems;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Full-path patterns compiled once into a single regular expression. Each pattern is a
+ * {@code regex:} expression or a {@code glob:}, the default, where {@code **} matches across
+ * separators and {@code *} and {@code ?} match within one path segment. Every thread reuses its own
+ * {@link Matcher}, so matching does not allocate.
+ */
+public final class PathFilter {
+
+  public static final PathFilter NONE = new PathFilter(null);
+
+  private static final String SEPARATOR = FileSystems.getDefault().getSeparator();
+
+  private final ThreadLocal<Matcher> matchers;
+
+  private PathFilter(Pattern pattern) {
+    this.matchers = pattern == null ? null : ThreadLocal.withInitial(() -> pattern.matcher(""));
+  }
+
+  public static PathFilter compile(List<String> patterns) {
+    List<String> expressions = new ArrayList<>();
+    for (String pattern : patterns) {
+      if (pattern.isBlank()) {
+        continue;
+      }
+      if (pattern.startsWith("regex:")) {
+        expressions.add(pattern.substring("regex:".length()));
+      } else if (pattern.startsWith("glob:")) {
+        expressions.add(globRegex(pattern.substring("glob:".length())));
+      } else {
+        expressions.add(globRegex(pattern));
+      }
+    }
+    if (expressions.isEmpty()) {
+      return NONE;
+    }
+    return new PathFilter(Pattern.compile("(?:" + String.join(")|(?:", expressions) + ")"));
+  }
+
+  public boolean matches(String path) {
+    return matchers != null && matchers.get().reset(path).matches();
+  }
+
+  private static String globRegex(String glob) {
+    String segment = "[^\\" + SEPARATOR + "]";
+    StringBuilder regex = new StringBuilder();
+    StringBuilder literal = new StringBuilder();
+    for (int i = 0; i < glob.length(); i++) {
+      char c = glob.charAt(i);
+      if (c != '*' && c != '?') {
+        literal.append(c);
+        continue;
+      }
+
+      if (literal.length() > 0) {
+        regex.append(Pattern.quote(literal.toString()));
+        literal.setLength(0);
+      }
+      if (c == '?') {
+        regex.append(segment);
+      } else if (i + 1 < glob.length() && glob.charAt(i + 1) == '*') {
+        regex.append(".*");
+        i++;
+      } else {
+        regex.append(segment).append('*');
+      }
+    }
+    if (literal.length() > 0) {
+      regex.append(Pattern.quote(literal.toString()));
+    }
+    return regex.toString();
+  }
+
+}
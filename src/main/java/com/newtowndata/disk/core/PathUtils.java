@@ -14,35 +14,30 @@
 package com.newtowndata.disk.core;
 
 import com.newtowndata.disk.core.entity.PathInfo;
-import java.io.IOException;
-import java.nio.file.Files;
+import com.newtowndata.disk.core.entity.PathTotals;
 import java.nio.file.Path;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.List;
-import java.util.stream.Stream;
+import java.util.Map;
 
 public final class PathUtils {
 
   private PathUtils() {}
 
-  public static PathInfo createPathInfo(Path currentPath, BasicFileAttributes attributes)
-      throws IOException {
+  public static PathInfo createPathInfo(Path currentPath, BasicFileAttributes attributes,
+      List<String> children) {
     Path parent = currentPath.getParent();
 
-    List<String> children;
     String fileType;
     if (attributes.isSymbolicLink()) {
       fileType = PathConstants.FILE_TYPE_SYMLINK;
-      children = Collections.emptyList();
     } else if (attributes.isDirectory()) {
       fileType = PathConstants.FILE_TYPE_DIRECTORY;
-      try (Stream<Path> files = Files.list(currentPath)) {
-        children = files.map(p -> p.toString()).toList();
-      }
     } else {
       fileType = PathConstants.FILE_TYPE_FILE;
-      children = Collections.emptyList();
     }
 
     return new PathInfo(parent == null ? null : parent.toString(), fileType,
@@ -52,12 +47,72 @@ public final class PathUtils {
   }
 
   public static PathInfo createEmptyPathInfo(Path currentPath, String fileType) {
+    return createEmptyPathInfo(currentPath, fileType, Collections.emptyList());
+  }
+
+  public static PathInfo createEmptyPathInfo(Path currentPath, String fileType,
+      List<String> children) {
     Path parent = currentPath.getParent();
 
     return new PathInfo(parent == null ? null : parent.toString(), fileType,
         currentPath.getFileName() == null ? currentPath.toString()
             : currentPath.getFileName().toString(),
-        0L, 0L, Collections.emptyList());
+        0L, 0L, children);
+  }
+
+  public static void calculateTotals(List<String> roots, Map<String, PathInfo> pathInfos) {
+    for (String root : roots) {
+      calculateTotals(root, pathInfos);
+    }
+  }
+
+  public static PathTotals calculateTotals(String path, Map<String, PathInfo> pathInfos) {
+    PathInfo rootInfo = pathInfos.get(path);
+    if (rootInfo == null) {
+      return null;
+    }
+
+    Deque<TotalsFrame> stack = new ArrayDeque<>();
+    stack.push(new TotalsFrame(path, rootInfo));
+    PathTotals result = null;
+    while (!stack.isEmpty()) {
+      TotalsFrame frame = stack.peek();
+      if (frame.next < frame.pathInfo.children().size()) {
+        String child = frame.pathInfo.children().get(frame.next++);
+        PathInfo childInfo = pathInfos.get(child);
+        if (childInfo == null) {
+          continue;
+        }
+        if (childInfo.children().isEmpty()) {
+          frame.totals = frame.totals.add(childInfo.totals());
+        } else {
+          stack.push(new TotalsFrame(child, childInfo));
+        }
+      } else {
+        stack.pop();
+        pathInfos.put(frame.path, frame.pathInfo.withTotals(frame.totals));
+        if (stack.isEmpty()) {
+          result = frame.totals;
+        } else {
+          stack.peek().totals = stack.peek().totals.add(frame.totals);
+        }
+      }
+    }
+    return result;
+  }
+
+  private static class TotalsFrame {
+
+    private final String path;
+    private final PathInfo pathInfo;
+    private PathTotals totals;
+    private int next;
+
+    public TotalsFrame(String path, PathInfo pathInfo) {
+      this.path = path;
+      this.pathInfo = pathInfo;
+      this.totals = PathTotals.of(pathInfo.fileType(), pathInfo.size());
+    }
   }
 
 }
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2021 Voyta Krizek, https://github.com/NewTownData
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.newtowndata.disk.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Partial selection with a bounded heap: the first {@code count} items of an order in
+ * O(n log count) time and O(count) memory, without sorting the whole input.
+ */
+public final class TopN<T> {
+
+  private final int count;
+  private final Comparator<? super T> order;
+  private final PriorityQueue<T> heap;
+
+  public TopN(int count, Comparator<? super T> order) {
+    this.count = count;
+    this.order = order;
+    this.heap = new PriorityQueue<>(Math.max(1, Math.min(count, 1024)), order.reversed());
+  }
+
+  public static <T> List<T> select(Iterable<? extends T> items, int count,
+      Comparator<? super T> order) {
+    TopN<T> topN = new TopN<>(count, order);
+    for (T item : items) {
+      topN.add(item);
+    }
+    return topN.toList();
+  }
+
+  public void add(T item) {
+    if (count <= 0) {
+      return;
+    }
+    if (heap.size() < count) {
+      heap.add(item);
+    } else if (order.compare(item, heap.peek()) < 0) {
+      heap.poll();
+      heap.add(item);
+    }
+  }
+
+  public int size() {
+    return heap.size();
+  }
+
+  /** Selected items, first in order first. */
+  public List<T> toList() {
+    List<T> result = new ArrayList<>(heap);
+    Collections.sort(result, order);
+    return result;
+  }
+
+}
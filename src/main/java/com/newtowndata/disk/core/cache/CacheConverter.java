@@ -0,0 +1,87 @@
+/*
+ * Copyright 2021 Voyta Krizek, https://github.com/NewTownData
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.newtowndata.disk.core.cache;
+
+import com.newtowndata.disk.core.compact.CompactPathGraph;
+import com.newtowndata.disk.core.compact.MappedCacheFormat;
+import com.newtowndata.disk.core.entity.PathGraph;
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Converts a cache file between the gzip (v1), mapped (v2) and segmented (v3) formats. Without an
+ * explicit target format, gzip and segmented caches become mapped and mapped caches become gzip.
+ *
+ * <pre>
+ * java -cp disk-analysis.jar -Dloader.main=com.newtowndata.disk.core.cache.CacheConverter \
+ *     org.springframework.boot.loader.PropertiesLauncher cache.idx cache-v2.idx
+ * </pre>
+ */
+public final class CacheConverter {
+
+  private CacheConverter() {}
+
+  public static void main(String[] args) throws IOException {
+    if (args.length != 2 && args.length != 3) {
+      System.err.println("Usage: CacheConverter <source> <target> [GZIP|MAPPED|SEGMENTED]");
+      System.exit(1);
+    }
+
+    CacheFormat target = args.length == 3
+        ? convert(Path.of(args[0]), Path.of(args[1]), CacheFormat.valueOf(args[2]))
+        : convert(Path.of(args[0]), Path.of(args[1]));
+    System.out.println("Written " + args[1] + " in " + target + " format");
+  }
+
+  public static CacheFormat convert(Path source, Path target) throws IOException {
+    CacheFormat format = detect(source);
+    return convert(source, target,
+        format == CacheFormat.MAPPED ? CacheFormat.GZIP : CacheFormat.MAPPED);
+  }
+
+  public static CacheFormat convert(Path source, Path target, CacheFormat targetFormat)
+      throws IOException {
+    CacheFormat format = detect(source);
+    int parallelism = Runtime.getRuntime().availableProcessors();
+
+    if (targetFormat == CacheFormat.MAPPED) {
+      CompactPathGraph graph = switch (format) {
+        case GZIP -> GzipCacheFormat.readCompact(source);
+        case SEGMENTED -> SegmentedCacheFormat.readCompact(source, parallelism);
+        case MAPPED -> CompactPathGraph.from(MappedCacheFormat.open(source).toPathGraph());
+      };
+      MappedCacheFormat.write(graph, target);
+      return targetFormat;
+    }
+
+    PathGraph graph = switch (format) {
+      case GZIP -> GzipCacheFormat.read(source);
+      case SEGMENTED -> SegmentedCacheFormat.read(source, parallelism);
+      case MAPPED -> MappedCacheFormat.open(source).toPathGraph();
+    };
+    if (targetFormat == CacheFormat.SEGMENTED) {
+      SegmentedCacheFormat.write(graph, target, GzipCacheFormat.DEFAULT_COMPRESSION_LEVEL,
+          parallelism * 4, parallelism);
+    } else {
+      GzipCacheFormat.write(graph, target);
+    }
+    return targetFormat;
+  }
+
+  private static CacheFormat detect(Path source) throws IOException {
+    return CacheFormat.detect(source)
+        .orElseThrow(() -> new IllegalArgumentException("Unknown cache format: " + source));
+  }
+
+}
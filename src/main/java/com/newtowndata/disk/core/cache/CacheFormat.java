@@ -0,0 +1,70 @@
+/*
+ * Copyright 2021 Voyta Krizek, https://github.com/NewTownData
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.newtowndata.disk.core.cache;
+
+import com.newtowndata.disk.core.compact.MappedCacheFormat;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+
+public enum CacheFormat {
+
+  /**
+   * Version 1: depth-first stream of nodes compressed with gzip, extended with on-disk sizes behind
+   * a leading marker.
+   */
+  GZIP,
+
+  /**
+   * Version 3: fixed-width node table, child index and name pool opened with mmap. Version 2 files
+   * without on-disk sizes are still opened.
+   */
+  MAPPED,
+
+  /**
+   * Version 4: independently gzipped segments written and read in parallel. Version 3 files
+   * without on-disk sizes are still read.
+   */
+  SEGMENTED;
+
+  private static final int GZIP_MAGIC = 0x1f8b;
+
+  public static Optional<CacheFormat> detect(Path path) throws IOException {
+    if (!Files.exists(path)) {
+      return Optional.empty();
+    }
+
+    try (InputStream is = Files.newInputStream(path);
+        DataInputStream dis = new DataInputStream(is)) {
+      int magic = dis.readInt();
+      if (magic == MappedCacheFormat.MAGIC) {
+        return Optional.of(MAPPED);
+      }
+      if (magic == SegmentedCacheFormat.MAGIC) {
+        return Optional.of(SEGMENTED);
+      }
+      if ((magic >>> 16) == GZIP_MAGIC) {
+        return Optional.of(GZIP);
+      }
+      return Optional.empty();
+    } catch (EOFException e) {
+      return Optional.empty();
+    }
+  }
+
+}
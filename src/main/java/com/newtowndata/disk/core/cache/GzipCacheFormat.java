@@ -0,0 +1,215 @@
+/*
+ * Copyright 2021 Voyta Krizek, https://github.com/NewTownData
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.newtowndata.disk.core.cache;
+
+import com.newtowndata.disk.core.PathUtils;
+import com.newtowndata.disk.core.compact.CompactPathGraph;
+import com.newtowndata.disk.core.compact.CompactPathGraphBuilder;
+import com.newtowndata.disk.core.compact.NodeGraph;
+import com.newtowndata.disk.core.entity.PathGraph;
+import com.newtowndata.disk.core.entity.PathInfo;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Version 1 cache format: the root count followed by every node in depth-first order, gzipped.
+ * Reading and writing use explicit stacks, so the depth of the tree is not limited by the thread
+ * stack. A leading {@link #EXTENDED} marker means every node also carries its on-disk size, files
+ * without it are read with the on-disk size equal to the apparent size.
+ */
+public final class GzipCacheFormat {
+
+  private GzipCacheFormat() {}
+
+  public static final int DEFAULT_COMPRESSION_LEVEL = 5;
+
+  public static final int EXTENDED = -1;
+
+  public static void write(PathGraph pathGraph, Path path) throws IOException {
+    write(pathGraph, path, DEFAULT_COMPRESSION_LEVEL);
+  }
+
+  public static void write(PathGraph pathGraph, Path path, int compressionLevel)
+      throws IOException {
+    try (
+        OutputStream fos = Files.newOutputStream(path, StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        BufferedOutputStream bos = new BufferedOutputStream(fos);
+        GZIPOutputStream gzip = new GzipOutputQuickStream(bos, compressionLevel);
+        DataOutputStream dos = new DataOutputStream(gzip)) {
+      write(pathGraph, dos);
+    }
+  }
+
+  private static void write(PathGraph pathGraph, DataOutputStream dos) throws IOException {
+    dos.writeInt(EXTENDED);
+    dos.writeInt(pathGraph.roots().size());
+    Deque<String> stack = new ArrayDeque<>();
+    for (String root : pathGraph.roots()) {
+      stack.push(root);
+      while (!stack.isEmpty()) {
+        String path = stack.pop();
+        PathInfo pathInfo = pathGraph.pathInfos().get(path);
+        dos.writeUTF(path);
+        dos.writeUTF(pathInfo.name());
+        dos.writeUTF(pathInfo.fileType());
+        dos.writeLong(pathInfo.timestamp());
+        dos.writeLong(pathInfo.size());
+        dos.writeLong(pathInfo.diskSize());
+
+        List<String> children = pathInfo.children();
+        dos.writeInt(children.size());
+        for (int i = children.size() - 1; i >= 0; i--) {
+          stack.push(children.get(i));
+        }
+      }
+    }
+  }
+
+  public static PathGraph read(Path path) throws IOException {
+    try (DataInputStream dis = open(path)) {
+      return read(dis);
+    }
+  }
+
+  private static PathGraph read(DataInputStream dis) throws IOException {
+    int rootCount = dis.readInt();
+    boolean extended = rootCount == EXTENDED;
+    if (extended) {
+      rootCount = dis.readInt();
+    }
+    List<String> roots = new ArrayList<>(rootCount);
+    Map<String, PathInfo> paths = new HashMap<>();
+    for (int i = 0; i < rootCount; i++) {
+      roots.add(readTree(dis, paths, extended));
+    }
+    PathUtils.calculateTotals(roots, paths);
+    return new PathGraph(roots, paths);
+  }
+
+  public static CompactPathGraph readCompact(Path path) throws IOException {
+    try (DataInputStream dis = open(path)) {
+      return readCompact(dis);
+    }
+  }
+
+  private static CompactPathGraph readCompact(DataInputStream dis) throws IOException {
+    int rootCount = dis.readInt();
+    boolean extended = rootCount == EXTENDED;
+    if (extended) {
+      rootCount = dis.readInt();
+    }
+    CompactPathGraphBuilder builder = new CompactPathGraphBuilder();
+    Deque<int[]> stack = new ArrayDeque<>();
+    for (int i = 0; i < rootCount; i++) {
+      CacheEntry root = readEntry(dis, extended);
+      stack.push(new int[] {builder.add(NodeGraph.NO_PARENT, root.path(), root.fileType(),
+          root.timestamp(), root.size(), root.diskSize()), root.childCount()});
+      while (!stack.isEmpty()) {
+        int[] frame = stack.peek();
+        if (frame[1] == 0) {
+          stack.pop();
+          continue;
+        }
+        frame[1]--;
+        CacheEntry entry = readEntry(dis, extended);
+        stack.push(new int[] {builder.add(frame[0], entry.name(), entry.fileType(),
+            entry.timestamp(), entry.size(), entry.diskSize()), entry.childCount()});
+      }
+    }
+    return builder.build();
+  }
+
+  public static DataInputStream open(Path path) throws IOException {
+    InputStream fis = Files.newInputStream(path, StandardOpenOption.READ);
+    try {
+      return new DataInputStream(new GZIPInputStream(new BufferedInputStream(fis)));
+    } catch (IOException e) {
+      fis.close();
+      throw e;
+    }
+  }
+
+  public static CacheEntry readEntry(DataInputStream dis, boolean extended) throws IOException {
+    String path = dis.readUTF();
+    String name = dis.readUTF();
+    String fileType = dis.readUTF();
+    long timestamp = dis.readLong();
+    long size = dis.readLong();
+    long diskSize = extended ? dis.readLong() : size;
+    int childCount = dis.readInt();
+    return new CacheEntry(path, name, fileType, timestamp, size, diskSize, childCount);
+  }
+
+  private static String readTree(DataInputStream dis, Map<String, PathInfo> paths,
+      boolean extended) throws IOException {
+    Deque<TreeFrame> stack = new ArrayDeque<>();
+    CacheEntry root = readEntry(dis, extended);
+    stack.push(new TreeFrame(root, null));
+    while (!stack.isEmpty()) {
+      TreeFrame frame = stack.peek();
+      if (frame.children.size() < frame.entry.childCount()) {
+        stack.push(new TreeFrame(readEntry(dis, extended), frame.entry.path()));
+        continue;
+      }
+
+      stack.pop();
+      CacheEntry entry = frame.entry;
+      paths.put(entry.path(), new PathInfo(frame.parentPath, entry.fileType(), entry.name(),
+          entry.timestamp(), entry.size(), entry.diskSize(), frame.children));
+      if (!stack.isEmpty()) {
+        stack.peek().children.add(entry.path());
+      }
+    }
+    return root.path();
+  }
+
+  private static class TreeFrame {
+
+    private final CacheEntry entry;
+    private final String parentPath;
+    private final List<String> children;
+
+    public TreeFrame(CacheEntry entry, String parentPath) {
+      this.entry = entry;
+      this.parentPath = parentPath;
+      this.children = new ArrayList<>(entry.childCount());
+    }
+  }
+
+  static class GzipOutputQuickStream extends GZIPOutputStream {
+
+    public GzipOutputQuickStream(OutputStream out, int compressionLevel) throws IOException {
+      super(out);
+      super.def.setLevel(compressionLevel);
+    }
+  }
+
+}
@@ -0,0 +1,430 @@
+/*
+ * Copyright 2021 Voyta Krizek, https://github.com/NewTownData
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.newtowndata.disk.core.cache;
+
+import com.newtowndata.disk.core.PathUtils;
+import com.newtowndata.disk.core.compact.CompactPathGraph;
+import com.newtowndata.disk.core.compact.CompactPathGraphBuilder;
+import com.newtowndata.disk.core.compact.NodeGraph;
+import com.newtowndata.disk.core.entity.PathGraph;
+import com.newtowndata.disk.core.entity.PathInfo;
+import com.newtowndata.disk.core.entity.PathTotals;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Version 3 cache format: the tree is cut into subtrees which are grouped into independently
+ * gzipped segments, so saving and loading run on all cores.
+ *
+ * <pre>
+ * header     magic, version, root paths, segment count
+ * directory  offset, compressed length and node count of every segment
+ * segments   gzip streams of groups: parent path, subtree count, subtrees in v1 encoding
+ * </pre>
+ *
+ * Directories too large for one segment are stored in the first segment without their children.
+ * The children are attached on load through the parent path of the groups. Version 4 entries use
+ * the extended v1 encoding with the on-disk size, version 3 files are still read.
+ */
+public final class SegmentedCacheFormat {
+
+  public static final int MAGIC = 0x44415347;
+  public static final int VERSION = 4;
+
+  private static final int VERSION_APPARENT = 3;
+
+  private static final int DIRECTORY_ENTRY_SIZE = Long.BYTES + Long.BYTES + Integer.BYTES;
+
+  private SegmentedCacheFormat() {}
+
+  public static void write(PathGraph pathGraph, Path path, int compressionLevel, int segmentCount,
+      int parallelism) throws IOException {
+    List<List<String>> segments = partition(pathGraph, segmentCount);
+
+    ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+      ByteArrayOutputStream header = new ByteArrayOutputStream();
+      DataOutputStream dos = new DataOutputStream(header);
+      dos.writeInt(MAGIC);
+      dos.writeInt(VERSION);
+      dos.writeInt(pathGraph.roots().size());
+      for (String root : pathGraph.roots()) {
+        dos.writeUTF(root);
+      }
+      dos.writeInt(segments.size());
+      long directoryOffset = header.size();
+      long offset = directoryOffset + (long) DIRECTORY_ENTRY_SIZE * segments.size();
+      channel.write(ByteBuffer.wrap(header.toByteArray()), 0L);
+
+      Deque<Future<Segment>> window = new ArrayDeque<>();
+      ByteBuffer directory = ByteBuffer.allocate(DIRECTORY_ENTRY_SIZE * segments.size());
+      int next = 0;
+      while (next < segments.size() || !window.isEmpty()) {
+        while (next < segments.size() && window.size() < parallelism * 2) {
+          List<String> subtrees = segments.get(next);
+          boolean spine = next++ == 0;
+          window.add(
+              executor.submit(() -> compress(pathGraph, subtrees, spine, compressionLevel)));
+        }
+
+        Segment segment = get(window.poll());
+        directory.putLong(offset);
+        directory.putLong(segment.data().length);
+        directory.putInt(segment.nodeCount());
+        writeFully(channel, ByteBuffer.wrap(segment.data()), offset);
+        offset += segment.data().length;
+      }
+      directory.flip();
+      writeFully(channel, directory, directoryOffset);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  public static PathGraph read(Path path, int parallelism) throws IOException {
+    ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      Header header = readHeader(channel);
+      Map<String, PathInfo> paths = new ConcurrentHashMap<>();
+
+      List<Future<List<String[]>>> futures = new ArrayList<>();
+      for (long[] entry : header.directory()) {
+        futures.add(executor.submit(
+            () -> parse(inflate(channel, entry), paths, header.extended())));
+      }
+      List<String[]> links = new ArrayList<>();
+      for (Future<List<String[]>> future : futures) {
+        links.addAll(get(future));
+      }
+
+      for (String[] link : links) {
+        PathInfo parent = paths.get(link[0]);
+        if (parent != null) {
+          parent.children().add(link[1]);
+        }
+      }
+      PathUtils.calculateTotals(header.roots(), paths);
+      return new PathGraph(header.roots(), paths);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  public static CompactPathGraph readCompact(Path path, int parallelism) throws IOException {
+    ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      Header header = readHeader(channel);
+      CompactPathGraphBuilder builder = new CompactPathGraphBuilder();
+      Map<String, Integer> spineIds = new HashMap<>();
+
+      Deque<Future<byte[]>> window = new ArrayDeque<>();
+      int next = 0;
+      boolean spine = true;
+      while (next < header.directory().size() || !window.isEmpty()) {
+        while (next < header.directory().size() && window.size() < parallelism * 2) {
+          long[] entry = header.directory().get(next++);
+          window.add(executor.submit(() -> inflate(channel, entry)));
+        }
+        parseCompact(get(window.poll()), builder, spineIds, spine, header.extended());
+        spine = false;
+      }
+      return builder.build();
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private static List<List<String>> partition(PathGraph pathGraph, int segmentCount) {
+    long total = 0L;
+    for (String root : pathGraph.roots()) {
+      total += nodeCount(pathGraph.pathInfos().get(root).totals());
+    }
+    long target = Math.max(1L, (total + segmentCount - 1) / segmentCount);
+
+    List<String> spine = new ArrayList<>();
+    List<String> units = new ArrayList<>();
+    Deque<String> stack = new ArrayDeque<>();
+    for (int i = pathGraph.roots().size() - 1; i >= 0; i--) {
+      stack.push(pathGraph.roots().get(i));
+    }
+    while (!stack.isEmpty()) {
+      String path = stack.pop();
+      PathInfo pathInfo = pathGraph.pathInfos().get(path);
+      if (nodeCount(pathInfo.totals()) <= target || pathInfo.children().isEmpty()) {
+        units.add(path);
+      } else {
+        spine.add(path);
+        for (int i = pathInfo.children().size() - 1; i >= 0; i--) {
+          stack.push(pathInfo.children().get(i));
+        }
+      }
+    }
+
+    List<List<String>> segments = new ArrayList<>();
+    segments.add(spine);
+    List<String> current = new ArrayList<>();
+    long count = 0L;
+    for (String unit : units) {
+      current.add(unit);
+      count += nodeCount(pathGraph.pathInfos().get(unit).totals());
+      if (count >= target) {
+        segments.add(current);
+        current = new ArrayList<>();
+        count = 0L;
+      }
+    }
+    if (!current.isEmpty()) {
+      segments.add(current);
+    }
+    return segments;
+  }
+
+  private static long nodeCount(PathTotals totals) {
+    return totals.fileCount() + totals.directoryCount();
+  }
+
+  private static Segment compress(PathGraph pathGraph, List<String> subtrees, boolean spine,
+      int compressionLevel) throws IOException {
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    int nodeCount = 0;
+    try (GZIPOutputStream gzip = new GzipCacheFormat.GzipOutputQuickStream(bos, compressionLevel);
+        DataOutputStream dos = new DataOutputStream(gzip)) {
+      Deque<String> stack = new ArrayDeque<>();
+      int start = 0;
+      while (start < subtrees.size()) {
+        String parentPath = parentPath(pathGraph, subtrees.get(start));
+        int end = start + 1;
+        while (end < subtrees.size()
+            && Objects.equals(parentPath, parentPath(pathGraph, subtrees.get(end)))) {
+          end++;
+        }
+
+        dos.writeBoolean(true);
+        dos.writeBoolean(parentPath != null);
+        if (parentPath != null) {
+          dos.writeUTF(parentPath);
+        }
+        dos.writeInt(end - start);
+        for (String subtree : subtrees.subList(start, end)) {
+          stack.push(subtree);
+          while (!stack.isEmpty()) {
+            String path = stack.pop();
+            PathInfo pathInfo = pathGraph.pathInfos().get(path);
+            List<String> children = spine ? List.of() : pathInfo.children();
+            dos.writeUTF(path);
+            dos.writeUTF(pathInfo.name());
+            dos.writeUTF(pathInfo.fileType());
+            dos.writeLong(pathInfo.timestamp());
+            dos.writeLong(pathInfo.size());
+            dos.writeLong(pathInfo.diskSize());
+            dos.writeInt(children.size());
+            for (int i = children.size() - 1; i >= 0; i--) {
+              stack.push(children.get(i));
+            }
+            nodeCount++;
+          }
+        }
+        start = end;
+      }
+      dos.writeBoolean(false);
+    }
+    return new Segment(bos.toByteArray(), nodeCount);
+  }
+
+  private static String parentPath(PathGraph pathGraph, String path) {
+    if (pathGraph.roots().contains(path)) {
+      return null;
+    }
+    return pathGraph.pathInfos().get(path).parentPath();
+  }
+
+  private static List<String[]> parse(byte[] data, Map<String, PathInfo> paths,
+      boolean extended) throws IOException {
+    List<String[]> links = new ArrayList<>();
+    DataInputStream dis = new DataInputStream(new ByteArrayInputStream(data));
+    Deque<TreeFrame> stack = new ArrayDeque<>();
+    while (dis.readBoolean()) {
+      String parentPath = dis.readBoolean() ? dis.readUTF() : null;
+      int subtreeCount = dis.readInt();
+      for (int i = 0; i < subtreeCount; i++) {
+        CacheEntry root = GzipCacheFormat.readEntry(dis, extended);
+        if (parentPath != null) {
+          links.add(new String[] {parentPath, root.path()});
+        }
+
+        stack.push(new TreeFrame(root, parentPath));
+        while (!stack.isEmpty()) {
+          TreeFrame frame = stack.peek();
+          if (frame.children.size() < frame.entry.childCount()) {
+            stack.push(
+                new TreeFrame(GzipCacheFormat.readEntry(dis, extended), frame.entry.path()));
+            continue;
+          }
+
+          stack.pop();
+          CacheEntry entry = frame.entry;
+          paths.put(entry.path(), new PathInfo(frame.parentPath, entry.fileType(), entry.name(),
+              entry.timestamp(), entry.size(), entry.diskSize(), frame.children));
+          if (!stack.isEmpty()) {
+            stack.peek().children.add(entry.path());
+          }
+        }
+      }
+    }
+    return links;
+  }
+
+  private static void parseCompact(byte[] data, CompactPathGraphBuilder builder,
+      Map<String, Integer> spineIds, boolean spine, boolean extended) throws IOException {
+    DataInputStream dis = new DataInputStream(new ByteArrayInputStream(data));
+    Deque<int[]> stack = new ArrayDeque<>();
+    while (dis.readBoolean()) {
+      String parentPath = dis.readBoolean() ? dis.readUTF() : null;
+      int parentId = parentPath == null ? NodeGraph.NO_PARENT : spineIds.get(parentPath);
+      int subtreeCount = dis.readInt();
+      for (int i = 0; i < subtreeCount; i++) {
+        CacheEntry root = GzipCacheFormat.readEntry(dis, extended);
+        int rootId = builder.add(parentId, parentId == NodeGraph.NO_PARENT ? root.path()
+            : root.name(), root.fileType(), root.timestamp(), root.size(), root.diskSize());
+        if (spine) {
+          spineIds.put(root.path(), rootId);
+        }
+
+        stack.push(new int[] {rootId, root.childCount()});
+        while (!stack.isEmpty()) {
+          int[] frame = stack.peek();
+          if (frame[1] == 0) {
+            stack.pop();
+            continue;
+          }
+          frame[1]--;
+          CacheEntry entry = GzipCacheFormat.readEntry(dis, extended);
+          stack.push(new int[] {builder.add(frame[0], entry.name(), entry.fileType(),
+              entry.timestamp(), entry.size(), entry.diskSize()), entry.childCount()});
+        }
+      }
+    }
+  }
+
+  private static Header readHeader(FileChannel channel) throws IOException {
+    DataInputStream dis = new DataInputStream(
+        new BufferedInputStream(Channels.newInputStream(channel.position(0L))));
+    if (dis.readInt() != MAGIC) {
+      throw new IOException("Not a segmented cache file");
+    }
+    int version = dis.readInt();
+    if (version != VERSION && version != VERSION_APPARENT) {
+      throw new IOException("Unsupported cache version " + version);
+    }
+
+    int rootCount = dis.readInt();
+    List<String> roots = new ArrayList<>(rootCount);
+    for (int i = 0; i < rootCount; i++) {
+      roots.add(dis.readUTF());
+    }
+
+    int segmentCount = dis.readInt();
+    List<long[]> directory = new ArrayList<>(segmentCount);
+    for (int i = 0; i < segmentCount; i++) {
+      directory.add(new long[] {dis.readLong(), dis.readLong(), dis.readInt()});
+    }
+    return new Header(roots, directory, version == VERSION);
+  }
+
+  private static byte[] inflate(FileChannel channel, long[] entry) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate((int) entry[1]);
+    long position = entry[0];
+    while (buffer.hasRemaining()) {
+      int read = channel.read(buffer, position);
+      if (read < 0) {
+        throw new EOFException("Truncated segment at " + entry[0]);
+      }
+      position += read;
+    }
+
+    try (GZIPInputStream gzip =
+        new GZIPInputStream(new ByteArrayInputStream(buffer.array()), 1 << 16)) {
+      return gzip.readAllBytes();
+    }
+  }
+
+  private static void writeFully(FileChannel channel, ByteBuffer buffer, long position)
+      throws IOException {
+    long current = position;
+    while (buffer.hasRemaining()) {
+      current += channel.write(buffer, current);
+    }
+  }
+
+  private static <T> T get(Future<T> future) throws IOException {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted", e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException ioe) {
+        throw ioe;
+      }
+      throw new IllegalStateException(e.getCause());
+    }
+  }
+
+  private record Header(List<String> roots, List<long[]> directory, boolean extended) {
+
+  }
+
+  private record Segment(byte[] data, int nodeCount) {
+
+  }
+
+  private static class TreeFrame {
+
+    private final CacheEntry entry;
+    private final String parentPath;
+    private final List<String> children;
+
+    public TreeFrame(CacheEntry entry, String parentPath) {
+      this.entry = entry;
+      this.parentPath = parentPath;
+      this.children = new ArrayList<>(entry.childCount());
+    }
+  }
+
+}
@@ -0,0 +1,331 @@
+/*
+ * Copyright 2021 Voyta Krizek, https://github.com/NewTownData
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.newtowndata.disk.core.cache;
+
+import com.newtowndata.disk.core.compact.CompactPathGraph;
+import com.newtowndata.disk.core.compact.NodeGraph;
+import com.newtowndata.disk.core.compact.NodePathInfoMap;
+import com.newtowndata.disk.core.entity.OverlayPathInfoMap;
+import com.newtowndata.disk.core.entity.PathGraph;
+import com.newtowndata.disk.core.entity.PathInfo;
+import com.newtowndata.disk.core.entity.PathTotals;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.FileSystems;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Snapshots of a host graph pushed from an agent to an aggregator. A snapshot is either full or a
+ * delta against the previous snapshot the aggregator accepted. In a delta, a directory whose
+ * subtree is unchanged is written as a single entry with the child count {@link #UNCHANGED}, so
+ * only changed directories and the entries directly inside them travel.
+ *
+ * <pre>
+ * header  magic, version, host, sequence, base sequence (0 for a full snapshot)
+ * roots   root count, subtrees in extended v1 encoding, depth-first
+ * </pre>
+ *
+ * The whole stream is gzipped. Unchanged subtrees are recognized by a 64-bit digest of every
+ * entry, which the agent keeps by node id from its last accepted push.
+ */
+public final class SnapshotFormat {
+
+  public static final int MAGIC = 0x44414853;
+  public static final int VERSION = 1;
+
+  static final int UNCHANGED = -1;
+
+  private static final String SEPARATOR = FileSystems.getDefault().getSeparator();
+
+  private SnapshotFormat() {}
+
+  public record Header(String host, long sequence, long baseSequence) {
+
+    public boolean isFull() {
+      return baseSequence == 0L;
+    }
+  }
+
+  /**
+   * Writes a snapshot of the graph, as a delta when {@code base} holds the directory digests of the
+   * base snapshot. Returns the directory digests of this snapshot.
+   */
+  public static Digests write(PathGraph graph, Header header, Digests base, OutputStream out)
+      throws IOException {
+    Digests digests = digests(graph);
+    NodeGraph nodes = digests.graph;
+    GZIPOutputStream gzip = new GzipCacheFormat.GzipOutputQuickStream(
+        new BufferedOutputStream(out), GzipCacheFormat.DEFAULT_COMPRESSION_LEVEL);
+    DataOutputStream dos = new DataOutputStream(gzip);
+    dos.writeInt(MAGIC);
+    dos.writeInt(VERSION);
+    dos.writeUTF(header.host());
+    dos.writeLong(header.sequence());
+    dos.writeLong(header.baseSequence());
+
+    dos.writeInt(nodes.rootCount());
+    Deque<WriteFrame> stack = new ArrayDeque<>();
+    for (int i = 0; i < nodes.rootCount(); i++) {
+      int root = nodes.root(i);
+      String rootPath = nodes.name(root);
+      stack.push(new WriteFrame(root, rootPath,
+          base == null ? NodeGraph.NO_PARENT : base.graph.find(rootPath)));
+      while (!stack.isEmpty()) {
+        WriteFrame frame = stack.pop();
+        int id = frame.id();
+        int childCount = nodes.childCount(id);
+        boolean unchanged = frame.baseId() != NodeGraph.NO_PARENT && childCount > 0
+            && base.digests[frame.baseId()] == digests.digests[id];
+        dos.writeUTF(frame.path());
+        dos.writeUTF(id == root ? nodes.pathInfo(id).name() : nodes.name(id));
+        dos.writeUTF(nodes.fileType(id));
+        dos.writeLong(nodes.timestamp(id));
+        dos.writeLong(nodes.size(id));
+        dos.writeLong(diskSize(nodes, id));
+        dos.writeInt(unchanged ? UNCHANGED : childCount);
+        if (!unchanged) {
+          for (int c = childCount - 1; c >= 0; c--) {
+            int child = nodes.child(id, c);
+            String name = nodes.name(child);
+            stack.push(new WriteFrame(child, join(frame.path(), name),
+                frame.baseId() == NodeGraph.NO_PARENT ? NodeGraph.NO_PARENT
+                    : base.graph.findChild(frame.baseId(), name)));
+          }
+        }
+      }
+    }
+    gzip.finish();
+    dos.flush();
+    return digests;
+  }
+
+  public static DataInputStream open(InputStream in) throws IOException {
+    return new DataInputStream(new GZIPInputStream(new BufferedInputStream(in)));
+  }
+
+  public static Header readHeader(DataInputStream dis) throws IOException {
+    if (dis.readInt() != MAGIC) {
+      throw new IOException("Not a host snapshot");
+    }
+    int version = dis.readInt();
+    if (version != VERSION) {
+      throw new IOException("Unsupported snapshot version " + version);
+    }
+    return new Header(dis.readUTF(), dis.readLong(), dis.readLong());
+  }
+
+  /**
+   * Reads the rest of a snapshot after its header. A delta is applied as an overlay on
+   * {@code base}: the changed directories are replaced and the entries no longer present are
+   * removed, the unchanged subtrees are shared.
+   */
+  public static PathGraph readGraph(DataInputStream dis, PathGraph base) throws IOException {
+    int rootCount = dis.readInt();
+    List<String> roots = new ArrayList<>(rootCount);
+    Map<String, PathInfo> changes = new HashMap<>();
+    Set<String> removed = new HashSet<>();
+    for (int i = 0; i < rootCount; i++) {
+      roots.add(readTree(dis, base, changes, removed));
+    }
+    if (base == null) {
+      return new PathGraph(roots, changes);
+    }
+
+    for (String root : base.roots()) {
+      if (!roots.contains(root)) {
+        collectSubtree(base, root, removed);
+      }
+    }
+    return new PathGraph(roots, OverlayPathInfoMap.of(base.pathInfos(), changes, removed));
+  }
+
+  /**
+   * Digest of every entry over its own attributes and the digests of its children, so that equal
+   * digests mean equal subtrees.
+   */
+  static Digests digests(PathGraph graph) {
+    NodeGraph nodes = graph.pathInfos() instanceof NodePathInfoMap map ? map.graph()
+        : CompactPathGraph.from(graph);
+    long[] digests = new long[nodes.size()];
+    Deque<int[]> stack = new ArrayDeque<>();
+    for (int i = 0; i < nodes.rootCount(); i++) {
+      int root = nodes.root(i);
+      digests[root] = digest(nodes, root);
+      stack.push(new int[] {root, 0});
+      while (!stack.isEmpty()) {
+        int[] frame = stack.peek();
+        if (frame[1] < nodes.childCount(frame[0])) {
+          int child = nodes.child(frame[0], frame[1]++);
+          digests[child] = digest(nodes, child);
+          if (nodes.childCount(child) > 0) {
+            stack.push(new int[] {child, 0});
+          } else {
+            digests[frame[0]] = mix(digests[frame[0]], digests[child]);
+          }
+          continue;
+        }
+
+        stack.pop();
+        if (!stack.isEmpty()) {
+          int parent = stack.peek()[0];
+          digests[parent] = mix(digests[parent], digests[frame[0]]);
+        }
+      }
+    }
+    return new Digests(nodes, digests);
+  }
+
+  private static long digest(NodeGraph nodes, int id) {
+    long digest = mix(hash(nodes.name(id)), nodes.fileType(id).charAt(0));
+    digest = mix(digest, nodes.timestamp(id));
+    digest = mix(digest, nodes.size(id));
+    digest = mix(digest, diskSize(nodes, id));
+    return mix(digest, nodes.childCount(id));
+  }
+
+  /** Like {@link PathInfo#diskSize()}. */
+  private static long diskSize(NodeGraph nodes, int id) {
+    return nodes.childCount(id) == 0 ? nodes.totals(id).diskSize() : nodes.size(id);
+  }
+
+  /** FNV-1a hash over the chars of {@code name}. */
+  private static long hash(String name) {
+    long hash = 0xcbf29ce484222325L;
+    for (int i = 0; i < name.length(); i++) {
+      hash = (hash ^ name.charAt(i)) * 0x100000001b3L;
+    }
+    return hash;
+  }
+
+  private static long mix(long digest, long value) {
+    long mixed = (digest ^ value) * 0x9e3779b97f4a7c15L;
+    mixed ^= mixed >>> 32;
+    mixed *= 0xff51afd7ed558ccdL;
+    return mixed ^ (mixed >>> 29);
+  }
+
+  /** Joins like {@link NodeGraph#path(int)}. */
+  private static String join(String parent, String name) {
+    return parent.isEmpty() || parent.endsWith(SEPARATOR) ? parent + name
+        : parent + SEPARATOR + name;
+  }
+
+  private static String readTree(DataInputStream dis, PathGraph base,
+      Map<String, PathInfo> changes, Set<String> removed) throws IOException {
+    Deque<TreeFrame> stack = new ArrayDeque<>();
+    CacheEntry root = GzipCacheFormat.readEntry(dis, true);
+    stack.push(new TreeFrame(root, null));
+    while (!stack.isEmpty()) {
+      TreeFrame frame = stack.peek();
+      CacheEntry entry = frame.entry;
+      if (entry.childCount() != UNCHANGED && frame.children.size() < entry.childCount()) {
+        stack.push(new TreeFrame(GzipCacheFormat.readEntry(dis, true), entry.path()));
+        continue;
+      }
+
+      stack.pop();
+      PathTotals totals;
+      if (entry.childCount() == UNCHANGED) {
+        PathInfo previous = base == null ? null : base.pathInfos().get(entry.path());
+        if (previous == null) {
+          throw new IOException("Unchanged subtree " + entry.path() + " missing from the base");
+        }
+        totals = previous.totals();
+      } else {
+        totals = frame.totals;
+        changes.put(entry.path(), new PathInfo(frame.parentPath, entry.fileType(), entry.name(),
+            entry.timestamp(), entry.size(), frame.children, totals));
+        PathInfo previous = base == null ? null : base.pathInfos().get(entry.path());
+        if (previous != null && !previous.children().isEmpty()) {
+          Set<String> children = new HashSet<>(frame.children);
+          for (String child : previous.children()) {
+            if (!children.contains(child)) {
+              collectSubtree(base, child, removed);
+            }
+          }
+        }
+      }
+
+      if (!stack.isEmpty()) {
+        stack.peek().children.add(entry.path());
+        stack.peek().totals = stack.peek().totals.add(totals);
+      }
+    }
+    return root.path();
+  }
+
+  private static void collectSubtree(PathGraph graph, String path, Set<String> paths) {
+    Deque<String> stack = new ArrayDeque<>();
+    stack.push(path);
+    while (!stack.isEmpty()) {
+      String current = stack.pop();
+      paths.add(current);
+      PathInfo pathInfo = graph.pathInfos().get(current);
+      if (pathInfo != null) {
+        for (String child : pathInfo.children()) {
+          stack.push(child);
+        }
+      }
+    }
+  }
+
+  /**
+   * Digests of a snapshot by node id, with the graph they were computed over, so that the paths of
+   * the next snapshot can be matched against it.
+   */
+  public static final class Digests {
+
+    private final NodeGraph graph;
+    private final long[] digests;
+
+    private Digests(NodeGraph graph, long[] digests) {
+      this.graph = graph;
+      this.digests = digests;
+    }
+  }
+
+  private record WriteFrame(int id, String path, int baseId) {
+
+  }
+
+  private static class TreeFrame {
+
+    private final CacheEntry entry;
+    private final String parentPath;
+    private final List<String> children;
+    private PathTotals totals;
+
+    public TreeFrame(CacheEntry entry, String parentPath) {
+      this.entry = entry;
+      this.parentPath = parentPath;
+      this.children = new ArrayList<>(Math.max(0, entry.childCount()));
+      this.totals = PathTotals.of(entry.fileType(), entry.size(), entry.diskSize());
+    }
+  }
+
+}
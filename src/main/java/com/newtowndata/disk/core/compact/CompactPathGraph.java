@@ -0,0 +1,165 @@
+/*
+ * Copyright 2021 Voyta Krizek, https://github.com/NewTownData
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.newtowndata.disk.core.compact;
+
+import com.newtowndata.disk.core.entity.PathGraph;
+import com.newtowndata.disk.core.entity.PathInfo;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * {@link NodeGraph} kept on the heap in parallel primitive arrays, with names interned in a
+ * {@link NamePool}.
+ */
+public final class CompactPathGraph extends NodeGraph {
+
+  final int[] rootIds;
+  final int[] parents;
+  final int[] names;
+  final byte[] types;
+  final long[] timestamps;
+  final long[] sizes;
+  final long[] totalSizes;
+  final long[] totalDiskSizes;
+  final int[] fileCounts;
+  final int[] directoryCounts;
+  final int[] childOffsets;
+  final int[] childIds;
+  final NamePool namePool;
+
+  CompactPathGraph(int[] rootIds, int[] parents, int[] names, byte[] types, long[] timestamps,
+      long[] sizes, long[] totalSizes, long[] totalDiskSizes, int[] fileCounts,
+      int[] directoryCounts, int[] childOffsets, int[] childIds, NamePool namePool) {
+    this.rootIds = rootIds;
+    this.parents = parents;
+    this.names = names;
+    this.types = types;
+    this.timestamps = timestamps;
+    this.sizes = sizes;
+    this.totalSizes = totalSizes;
+    this.totalDiskSizes = totalDiskSizes;
+    this.fileCounts = fileCounts;
+    this.directoryCounts = directoryCounts;
+    this.childOffsets = childOffsets;
+    this.childIds = childIds;
+    this.namePool = namePool;
+  }
+
+  public static CompactPathGraph from(PathGraph pathGraph) {
+    if (pathGraph.pathInfos() instanceof NodePathInfoMap map
+        && map.graph() instanceof CompactPathGraph graph) {
+      return graph;
+    }
+
+    CompactPathGraphBuilder builder = new CompactPathGraphBuilder();
+    Deque<String> paths = new ArrayDeque<>();
+    Deque<Integer> parentIds = new ArrayDeque<>();
+    for (String root : pathGraph.roots()) {
+      paths.push(root);
+      parentIds.push(NO_PARENT);
+      while (!paths.isEmpty()) {
+        String path = paths.pop();
+        int parentId = parentIds.pop();
+        PathInfo pathInfo = pathGraph.pathInfos().get(path);
+        if (pathInfo == null) {
+          continue;
+        }
+
+        int id = builder.add(parentId, parentId == NO_PARENT ? path : pathInfo.name(),
+            pathInfo.fileType(), pathInfo.timestamp(), pathInfo.size(), pathInfo.diskSize());
+        for (String child : pathInfo.children()) {
+          paths.push(child);
+          parentIds.push(id);
+        }
+      }
+    }
+    return builder.build();
+  }
+
+  @Override
+  public int size() {
+    return parents.length;
+  }
+
+  @Override
+  public int rootCount() {
+    return rootIds.length;
+  }
+
+  @Override
+  public int root(int index) {
+    return rootIds[index];
+  }
+
+  @Override
+  public int parent(int id) {
+    return parents[id];
+  }
+
+  @Override
+  public String name(int id) {
+    return namePool.get(names[id]);
+  }
+
+  @Override
+  public long timestamp(int id) {
+    return timestamps[id];
+  }
+
+  @Override
+  public long size(int id) {
+    return sizes[id];
+  }
+
+  @Override
+  public int childCount(int id) {
+    return childOffsets[id + 1] - childOffsets[id];
+  }
+
+  @Override
+  public int child(int id, int index) {
+    return childIds[childOffsets[id] + index];
+  }
+
+  @Override
+  protected byte type(int id) {
+    return types[id];
+  }
+
+  @Override
+  protected long totalSize(int id) {
+    return totalSizes[id];
+  }
+
+  @Override
+  protected long totalDiskSize(int id) {
+    return totalDiskSizes[id];
+  }
+
+  @Override
+  protected int fileCount(int id) {
+    return fileCounts[id];
+  }
+
+  @Override
+  protected int directoryCount(int id) {
+    return directoryCounts[id];
+  }
+
+  @Override
+  protected int compareName(int id, byte[] name) {
+    return namePool.compare(names[id], name);
+  }
+
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2021 Voyta Krizek, https://github.com/NewTownData
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.newtowndata.disk.core.compact;
+
+import com.newtowndata.disk.core.PathConstants;
+import java.util.Arrays;
+
+/**
+ * Collects nodes for a {@link CompactPathGraph}. A parent must be added before its children, which
+ * lets {@link #build()} roll up the totals in a single reverse pass over the node ids. On-disk sizes
+ * are only kept in a separate array once one of them differs from the apparent size.
+ */
+public class CompactPathGraphBuilder {
+
+  private final NamePool namePool = new NamePool();
+
+  private int count;
+  private int[] parents = new int[1024];
+  private int[] names = new int[1024];
+  private byte[] types = new byte[1024];
+  private long[] timestamps = new long[1024];
+  private long[] sizes = new long[1024];
+  private long[] diskSizes;
+
+  public int add(int parentId, String name, String fileType, long timestamp, long size) {
+    return add(parentId, name, fileType, timestamp, size, size);
+  }
+
+  public int add(int parentId, String name, String fileType, long timestamp, long size,
+      long diskSize) {
+    if (parentId >= count) {
+      throw new IllegalArgumentException("Unknown parent " + parentId);
+    }
+    if (count == parents.length) {
+      int capacity = parents.length * 2;
+      parents = Arrays.copyOf(parents, capacity);
+      names = Arrays.copyOf(names, capacity);
+      types = Arrays.copyOf(types, capacity);
+      timestamps = Arrays.copyOf(timestamps, capacity);
+      sizes = Arrays.copyOf(sizes, capacity);
+      if (diskSizes != null) {
+        diskSizes = Arrays.copyOf(diskSizes, capacity);
+      }
+    }
+    if (diskSizes == null && diskSize != size) {
+      diskSizes = Arrays.copyOf(sizes, parents.length);
+    }
+
+    parents[count] = parentId;
+    names[count] = namePool.add(name);
+    types[count] = (byte) fileType.charAt(0);
+    timestamps[count] = timestamp;
+    sizes[count] = size;
+    if (diskSizes != null) {
+      diskSizes[count] = diskSize;
+    }
+    return count++;
+  }
+
+  public int size() {
+    return count;
+  }
+
+  public CompactPathGraph build() {
+    parents = Arrays.copyOf(parents, count);
+    names = Arrays.copyOf(names, count);
+    types = Arrays.copyOf(types, count);
+    timestamps = Arrays.copyOf(timestamps, count);
+    sizes = Arrays.copyOf(sizes, count);
+    namePool.freeze();
+
+    int rootCount = 0;
+    int[] childOffsets = new int[count + 1];
+    for (int id = 0; id < count; id++) {
+      if (parents[id] == NodeGraph.NO_PARENT) {
+        rootCount++;
+      } else {
+        childOffsets[parents[id] + 1]++;
+      }
+    }
+    for (int id = 0; id < count; id++) {
+      childOffsets[id + 1] += childOffsets[id];
+    }
+
+    int[] rootIds = new int[rootCount];
+    int[] childIds = new int[count - rootCount];
+    int[] positions = Arrays.copyOf(childOffsets, count);
+    int root = 0;
+    for (int id = 0; id < count; id++) {
+      if (parents[id] == NodeGraph.NO_PARENT) {
+        rootIds[root++] = id;
+      } else {
+        childIds[positions[parents[id]]++] = id;
+      }
+    }
+    for (int id = 0; id < count; id++) {
+      sortByName(childIds, childOffsets[id], childOffsets[id + 1]);
+    }
+
+    long[] totalSizes = Arrays.copyOf(sizes, count);
+    long[] totalDiskSizes = diskSizes == null ? null : Arrays.copyOf(diskSizes, count);
+    int[] fileCounts = new int[count];
+    int[] directoryCounts = new int[count];
+    for (int id = count - 1; id >= 0; id--) {
+      if (types[id] == PathConstants.FILE_TYPE_DIRECTORY.charAt(0)
+          || types[id] == PathConstants.FILE_TYPE_UNREADABLE_DIRECTORY.charAt(0)) {
+        directoryCounts[id]++;
+      } else {
+        fileCounts[id]++;
+      }
+      int parent = parents[id];
+      if (parent != NodeGraph.NO_PARENT) {
+        totalSizes[parent] += totalSizes[id];
+        if (totalDiskSizes != null) {
+          totalDiskSizes[parent] += totalDiskSizes[id];
+        }
+        fileCounts[parent] += fileCounts[id];
+        directoryCounts[parent] += directoryCounts[id];
+      }
+    }
+
+    return new CompactPathGraph(rootIds, parents, names, types, timestamps, sizes, totalSizes,
+        totalDiskSizes == null ? totalSizes : totalDiskSizes, fileCounts, directoryCounts,
+        childOffsets, childIds, namePool);
+  }
+
+  private void sortByName(int[] ids, int from, int to) {
+    if (to - from < 2) {
+      return;
+    }
+
+    Integer[] range = new Integer[to - from];
+    for (int i = from; i < to; i++) {
+      range[i - from] = ids[i];
+    }
+    Arrays.sort(range, (first, second) -> namePool.compare(names[first], names[second]));
+    for (int i = from; i < to; i++) {
+      ids[i] = range[i - from];
+    }
+  }
+
+}
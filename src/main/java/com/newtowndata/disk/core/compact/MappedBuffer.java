@@ -0,0 +1,88 @@
+/*
+ * Copyright 2021 Voyta Krizek, https://github.com/NewTownData
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.newtowndata.disk.core.compact;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Read-only memory mapping of a file of any size. The file is mapped in 1 GiB chunks that overlap
+ * by a few bytes, so a primitive value never straddles two chunks.
+ */
+class MappedBuffer {
+
+  private static final int CHUNK_BITS = 30;
+  private static final long CHUNK_SIZE = 1L << CHUNK_BITS;
+  private static final long CHUNK_MASK = CHUNK_SIZE - 1;
+  private static final int OVERLAP = Long.BYTES;
+
+  private final MappedByteBuffer[] chunks;
+  private final long length;
+
+  public MappedBuffer(FileChannel channel) throws IOException {
+    this.length = channel.size();
+    int count = (int) ((length + CHUNK_SIZE - 1) >>> CHUNK_BITS);
+    this.chunks = new MappedByteBuffer[Math.max(count, 1)];
+    for (int i = 0; i < chunks.length; i++) {
+      long start = (long) i << CHUNK_BITS;
+      long size = Math.min(CHUNK_SIZE + OVERLAP, length - start);
+      chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.max(size, 0));
+    }
+  }
+
+  public long length() {
+    return length;
+  }
+
+  public byte get(long position) {
+    return chunk(position).get(offset(position));
+  }
+
+  public int getInt(long position) {
+    return chunk(position).getInt(offset(position));
+  }
+
+  public long getLong(long position) {
+    return chunk(position).getLong(offset(position));
+  }
+
+  public byte[] getBytes(long position, int count) {
+    byte[] bytes = new byte[count];
+    for (int i = 0; i < count; i++) {
+      bytes[i] = get(position + i);
+    }
+    return bytes;
+  }
+
+  public int compareUnsigned(long position, int count, byte[] key) {
+    int length = Math.min(count, key.length);
+    for (int i = 0; i < length; i++) {
+      int cmp = Byte.compareUnsigned(get(position + i), key[i]);
+      if (cmp != 0) {
+        return cmp;
+      }
+    }
+    return count - key.length;
+  }
+
+  private MappedByteBuffer chunk(long position) {
+    return chunks[(int) (position >>> CHUNK_BITS)];
+  }
+
+  private static int offset(long position) {
+    return (int) (position & CHUNK_MASK);
+  }
+
+}
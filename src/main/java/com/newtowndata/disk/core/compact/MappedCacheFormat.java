@@ -0,0 +1,133 @@
+/*
+ * Copyright 2021 Voyta Krizek, https://github.com/NewTownData
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.newtowndata.disk.core.compact;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Version 2 cache format, designed to be opened with mmap instead of being read. Files written with
+ * format version 3 add the rolled up on-disk size to every node, version 2 files are still opened
+ * with the on-disk size equal to the apparent size.
+ *
+ * <pre>
+ * header      magic, version, node count, root count, name count, section offsets
+ * roots       int node id per root
+ * nodes       fixed-width node records, see NODE_SIZE
+ * children    int node ids, each node's children form a name-sorted range
+ * name index  int offset per name plus the end offset
+ * names       UTF-8 bytes of the deduplicated path segments
+ * </pre>
+ */
+public final class MappedCacheFormat {
+
+  public static final int MAGIC = 0x44414958;
+  public static final int VERSION = 3;
+
+  static final int VERSION_APPARENT = 2;
+
+  static final int HEADER_SIZE = 64;
+
+  static final int NODE_PARENT = 0;
+  static final int NODE_NAME = 4;
+  static final int NODE_CHILD_START = 8;
+  static final int NODE_CHILD_COUNT = 12;
+  static final int NODE_TIMESTAMP = 16;
+  static final int NODE_SIZE_BYTES = 24;
+  static final int NODE_TOTAL_SIZE = 32;
+  static final int NODE_FILE_COUNT = 40;
+  static final int NODE_DIRECTORY_COUNT = 44;
+  static final int NODE_TYPE = 48;
+  static final int NODE_TOTAL_DISK_SIZE = 56;
+  static final int NODE_SIZE = 64;
+  static final int NODE_SIZE_APPARENT = 56;
+
+  private MappedCacheFormat() {}
+
+  public static void write(CompactPathGraph graph, Path path) throws IOException {
+    int nodeCount = graph.size();
+    int rootCount = graph.rootCount();
+    int nameCount = graph.namePool.size();
+
+    long rootsOffset = HEADER_SIZE;
+    long nodesOffset = rootsOffset + (long) Integer.BYTES * rootCount;
+    long childrenOffset = nodesOffset + (long) NODE_SIZE * nodeCount;
+    long nameIndexOffset = childrenOffset + (long) Integer.BYTES * graph.childIds.length;
+    long namesOffset = nameIndexOffset + (long) Integer.BYTES * (nameCount + 1);
+
+    try (
+        OutputStream fos = Files.newOutputStream(path, StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        BufferedOutputStream bos = new BufferedOutputStream(fos, 1 << 16);
+        DataOutputStream dos = new DataOutputStream(bos)) {
+      dos.writeInt(MAGIC);
+      dos.writeInt(VERSION);
+      dos.writeInt(nodeCount);
+      dos.writeInt(rootCount);
+      dos.writeInt(nameCount);
+      dos.writeInt(0);
+      dos.writeLong(rootsOffset);
+      dos.writeLong(nodesOffset);
+      dos.writeLong(childrenOffset);
+      dos.writeLong(nameIndexOffset);
+      dos.writeLong(namesOffset);
+
+      for (int rootId : graph.rootIds) {
+        dos.writeInt(rootId);
+      }
+
+      for (int id = 0; id < nodeCount; id++) {
+        dos.writeInt(graph.parents[id]);
+        dos.writeInt(graph.names[id]);
+        dos.writeInt(graph.childOffsets[id]);
+        dos.writeInt(graph.childCount(id));
+        dos.writeLong(graph.timestamps[id]);
+        dos.writeLong(graph.sizes[id]);
+        dos.writeLong(graph.totalSizes[id]);
+        dos.writeInt(graph.fileCounts[id]);
+        dos.writeInt(graph.directoryCounts[id]);
+        dos.writeByte(graph.types[id]);
+        dos.write(new byte[NODE_TOTAL_DISK_SIZE - NODE_TYPE - 1]);
+        dos.writeLong(graph.totalDiskSizes[id]);
+      }
+
+      for (int childId : graph.childIds) {
+        dos.writeInt(childId);
+      }
+
+      graph.namePool.writeTo(dos);
+    }
+  }
+
+  public static MappedPathGraph open(Path path) throws IOException {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      MappedBuffer buffer = new MappedBuffer(channel);
+      if (buffer.length() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+        throw new IOException("Not a mapped cache file: " + path);
+      }
+      int version = buffer.getInt(4);
+      if (version != VERSION && version != VERSION_APPARENT) {
+        throw new IOException("Unsupported cache version " + version + " in " + path);
+      }
+      return new MappedPathGraph(buffer, version == VERSION);
+    }
+  }
+
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright 2021 Voyta Krizek, https://github.com/NewTownData
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.newtowndata.disk.core.compact;
+
+import static com.newtowndata.disk.core.compact.MappedCacheFormat.NODE_CHILD_COUNT;
+import static com.newtowndata.disk.core.compact.MappedCacheFormat.NODE_CHILD_START;
+import static com.newtowndata.disk.core.compact.MappedCacheFormat.NODE_DIRECTORY_COUNT;
+import static com.newtowndata.disk.core.compact.MappedCacheFormat.NODE_FILE_COUNT;
+import static com.newtowndata.disk.core.compact.MappedCacheFormat.NODE_NAME;
+import static com.newtowndata.disk.core.compact.MappedCacheFormat.NODE_PARENT;
+import static com.newtowndata.disk.core.compact.MappedCacheFormat.NODE_SIZE;
+import static com.newtowndata.disk.core.compact.MappedCacheFormat.NODE_SIZE_APPARENT;
+import static com.newtowndata.disk.core.compact.MappedCacheFormat.NODE_SIZE_BYTES;
+import static com.newtowndata.disk.core.compact.MappedCacheFormat.NODE_TIMESTAMP;
+import static com.newtowndata.disk.core.compact.MappedCacheFormat.NODE_TOTAL_DISK_SIZE;
+import static com.newtowndata.disk.core.compact.MappedCacheFormat.NODE_TOTAL_SIZE;
+import static com.newtowndata.disk.core.compact.MappedCacheFormat.NODE_TYPE;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * {@link NodeGraph} backed by a memory-mapped {@link MappedCacheFormat} file. Nothing is read up
+ * front: pages are faulted in by the OS as nodes are visited, so the graph can be larger than the
+ * heap.
+ */
+public final class MappedPathGraph extends NodeGraph {
+
+  private final MappedBuffer buffer;
+  private final int nodeCount;
+  private final int rootCount;
+  private final long rootsOffset;
+  private final long nodesOffset;
+  private final long childrenOffset;
+  private final long nameIndexOffset;
+  private final long namesOffset;
+  private final boolean diskSizes;
+  private final int nodeSize;
+
+  MappedPathGraph(MappedBuffer buffer, boolean diskSizes) {
+    this.buffer = buffer;
+    this.nodeCount = buffer.getInt(8);
+    this.rootCount = buffer.getInt(12);
+    this.rootsOffset = buffer.getLong(24);
+    this.nodesOffset = buffer.getLong(32);
+    this.childrenOffset = buffer.getLong(40);
+    this.nameIndexOffset = buffer.getLong(48);
+    this.namesOffset = buffer.getLong(56);
+    this.diskSizes = diskSizes;
+    this.nodeSize = diskSizes ? NODE_SIZE : NODE_SIZE_APPARENT;
+  }
+
+  @Override
+  public int size() {
+    return nodeCount;
+  }
+
+  @Override
+  public int rootCount() {
+    return rootCount;
+  }
+
+  @Override
+  public int root(int index) {
+    return buffer.getInt(rootsOffset + (long) Integer.BYTES * index);
+  }
+
+  @Override
+  public int parent(int id) {
+    return buffer.getInt(node(id) + NODE_PARENT);
+  }
+
+  @Override
+  public String name(int id) {
+    int nameId = buffer.getInt(node(id) + NODE_NAME);
+    int start = nameStart(nameId);
+    return new String(buffer.getBytes(namesOffset + start, nameStart(nameId + 1) - start),
+        StandardCharsets.UTF_8);
+  }
+
+  @Override
+  public long timestamp(int id) {
+    return buffer.getLong(node(id) + NODE_TIMESTAMP);
+  }
+
+  @Override
+  public long size(int id) {
+    return buffer.getLong(node(id) + NODE_SIZE_BYTES);
+  }
+
+  @Override
+  public int childCount(int id) {
+    return buffer.getInt(node(id) + NODE_CHILD_COUNT);
+  }
+
+  @Override
+  public int child(int id, int index) {
+    int start = buffer.getInt(node(id) + NODE_CHILD_START);
+    return buffer.getInt(childrenOffset + (long) Integer.BYTES * (start + index));
+  }
+
+  @Override
+  protected byte type(int id) {
+    return buffer.get(node(id) + NODE_TYPE);
+  }
+
+  @Override
+  protected long totalSize(int id) {
+    return buffer.getLong(node(id) + NODE_TOTAL_SIZE);
+  }
+
+  @Override
+  protected long totalDiskSize(int id) {
+    return diskSizes ? buffer.getLong(node(id) + NODE_TOTAL_DISK_SIZE) : totalSize(id);
+  }
+
+  @Override
+  protected int fileCount(int id) {
+    return buffer.getInt(node(id) + NODE_FILE_COUNT);
+  }
+
+  @Override
+  protected int directoryCount(int id) {
+    return buffer.getInt(node(id) + NODE_DIRECTORY_COUNT);
+  }
+
+  @Override
+  protected int compareName(int id, byte[] name) {
+    int nameId = buffer.getInt(node(id) + NODE_NAME);
+    int start = nameStart(nameId);
+    return buffer.compareUnsigned(namesOffset + start, nameStart(nameId + 1) - start, name);
+  }
+
+  private long node(int id) {
+    return nodesOffset + (long) nodeSize * id;
+  }
+
+  private int nameStart(int nameId) {
+    return buffer.getInt(nameIndexOffset + (long) Integer.BYTES * nameId);
+  }
+
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2021 Voyta Krizek, https://github.com/NewTownData
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.newtowndata.disk.core.compact;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Deduplicated pool of UTF-8 encoded path segments. Names are compared as unsigned bytes, so lookups
+ * never need to decode the pool.
+ */
+public class NamePool {
+
+  private byte[] data = new byte[1024];
+  private int[] offsets = new int[64];
+  private int count;
+  private int length;
+  private Map<String, Integer> index = new HashMap<>();
+
+  public int add(String name) {
+    Integer id = index.get(name);
+    if (id != null) {
+      return id;
+    }
+
+    byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+    if ((long) length + bytes.length > Integer.MAX_VALUE - 8) {
+      throw new IllegalStateException("Name pool is full");
+    }
+    if (length + bytes.length > data.length) {
+      data = Arrays.copyOf(data, Math.max(length + bytes.length, data.length * 2));
+    }
+    if (count + 2 > offsets.length) {
+      offsets = Arrays.copyOf(offsets, offsets.length * 2);
+    }
+    System.arraycopy(bytes, 0, data, length, bytes.length);
+    length += bytes.length;
+    offsets[count + 1] = length;
+
+    index.put(name, count);
+    return count++;
+  }
+
+  public void freeze() {
+    data = Arrays.copyOf(data, length);
+    offsets = Arrays.copyOf(offsets, count + 1);
+    index = null;
+  }
+
+  public String get(int id) {
+    return new String(data, offsets[id], offsets[id + 1] - offsets[id], StandardCharsets.UTF_8);
+  }
+
+  public int compare(int id, byte[] key) {
+    return Arrays.compareUnsigned(data, offsets[id], offsets[id + 1], key, 0, key.length);
+  }
+
+  public int compare(int first, int second) {
+    return Arrays.compareUnsigned(data, offsets[first], offsets[first + 1], data, offsets[second],
+        offsets[second + 1]);
+  }
+
+  public int size() {
+    return count;
+  }
+
+  void writeTo(DataOutputStream dos) throws IOException {
+    for (int i = 0; i <= count; i++) {
+      dos.writeInt(offsets[i]);
+    }
+    dos.write(data, 0, length);
+  }
+
+  public int byteSize() {
+    return length;
+  }
+
+}
@@ -0,0 +1,226 @@
+/*
+ * Copyright 2021 Voyta Krizek, https://github.com/NewTownData
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.newtowndata.disk.core.compact;
+
+import com.newtowndata.disk.core.PathConstants;
+import com.newtowndata.disk.core.entity.PathGraph;
+import com.newtowndata.disk.core.entity.PathInfo;
+import com.newtowndata.disk.core.entity.PathTotals;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.util.AbstractList;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Path graph addressed by int node ids. Children of a node are a contiguous, name-sorted range of
+ * the child index and full paths are rebuilt from the parent chain on demand. Subclasses decide
+ * where the node table lives.
+ */
+public abstract class NodeGraph {
+
+  public static final int NO_PARENT = -1;
+
+  protected static final String SEPARATOR = FileSystems.getDefault().getSeparator();
+
+  public abstract int size();
+
+  public abstract int rootCount();
+
+  public abstract int root(int index);
+
+  public abstract int parent(int id);
+
+  public abstract String name(int id);
+
+  public abstract long timestamp(int id);
+
+  public abstract long size(int id);
+
+  public abstract int childCount(int id);
+
+  public abstract int child(int id, int index);
+
+  protected abstract byte type(int id);
+
+  protected abstract long totalSize(int id);
+
+  protected abstract long totalDiskSize(int id);
+
+  protected abstract int fileCount(int id);
+
+  protected abstract int directoryCount(int id);
+
+  protected abstract int compareName(int id, byte[] name);
+
+  public PathGraph toPathGraph() {
+    List<String> roots = new ArrayList<>(rootCount());
+    for (int i = 0; i < rootCount(); i++) {
+      roots.add(path(root(i)));
+    }
+    return new PathGraph(roots, new NodePathInfoMap(this));
+  }
+
+  public String fileType(int id) {
+    byte type = type(id);
+    return switch (type) {
+      case 'F' -> PathConstants.FILE_TYPE_FILE;
+      case 'D' -> PathConstants.FILE_TYPE_DIRECTORY;
+      case 'L' -> PathConstants.FILE_TYPE_SYMLINK;
+      case 'X' -> PathConstants.FILE_TYPE_UNREADABLE_FILE;
+      case 'U' -> PathConstants.FILE_TYPE_UNREADABLE_DIRECTORY;
+      default -> String.valueOf((char) type);
+    };
+  }
+
+  public PathTotals totals(int id) {
+    return new PathTotals(totalSize(id), fileCount(id), directoryCount(id), totalDiskSize(id));
+  }
+
+  public String path(int id) {
+    if (parent(id) == NO_PARENT) {
+      return name(id);
+    }
+
+    Deque<String> segments = new ArrayDeque<>();
+    int current = id;
+    while (parent(current) != NO_PARENT) {
+      segments.push(name(current));
+      current = parent(current);
+    }
+
+    String root = name(current);
+    StringBuilder sb = new StringBuilder(root);
+    // names never contain the separator, only a root such as "/" can end with it
+    boolean open = root.isEmpty() || root.endsWith(SEPARATOR);
+    for (String segment : segments) {
+      if (!open) {
+        sb.append(SEPARATOR);
+      }
+      sb.append(segment);
+      open = false;
+    }
+    return sb.toString();
+  }
+
+  public int find(String path) {
+    for (int i = 0; i < rootCount(); i++) {
+      int rootId = root(i);
+      String root = name(rootId);
+      if (!path.startsWith(root)) {
+        continue;
+      }
+      if (path.length() == root.length()) {
+        return rootId;
+      }
+
+      int start;
+      if (root.endsWith(SEPARATOR)) {
+        start = root.length();
+      } else if (path.startsWith(SEPARATOR, root.length())) {
+        start = root.length() + SEPARATOR.length();
+      } else {
+        continue;
+      }
+
+      int id = findRelative(rootId, path, start);
+      if (id != NO_PARENT) {
+        return id;
+      }
+    }
+    return NO_PARENT;
+  }
+
+  public PathInfo pathInfo(int id) {
+    int parent = parent(id);
+    return new PathInfo(parent == NO_PARENT ? null : path(parent), fileType(id),
+        parent == NO_PARENT ? rootName(id) : name(id), timestamp(id), size(id),
+        new ChildList(id), totals(id));
+  }
+
+  private String rootName(int id) {
+    String path = name(id);
+    int index = path.lastIndexOf(SEPARATOR, path.length() - SEPARATOR.length() - 1);
+    if (index < 0 || path.endsWith(SEPARATOR)) {
+      return path;
+    }
+    return path.substring(index + SEPARATOR.length());
+  }
+
+  private int findRelative(int id, String path, int start) {
+    int current = id;
+    int position = start;
+    while (position < path.length()) {
+      int end = path.indexOf(SEPARATOR, position);
+      if (end < 0) {
+        end = path.length();
+      }
+      if (end > position) {
+        current = findChild(current,
+            path.substring(position, end).getBytes(StandardCharsets.UTF_8));
+        if (current == NO_PARENT) {
+          return NO_PARENT;
+        }
+      }
+      position = end + SEPARATOR.length();
+    }
+    return current;
+  }
+
+  /** @return the child of {@code id} named {@code name}, or {@link #NO_PARENT} */
+  public int findChild(int id, String name) {
+    return findChild(id, name.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private int findChild(int id, byte[] name) {
+    int low = 0;
+    int high = childCount(id) - 1;
+    while (low <= high) {
+      int middle = (low + high) >>> 1;
+      int child = child(id, middle);
+      int cmp = compareName(child, name);
+      if (cmp < 0) {
+        low = middle + 1;
+      } else if (cmp > 0) {
+        high = middle - 1;
+      } else {
+        return child;
+      }
+    }
+    return NO_PARENT;
+  }
+
+  private class ChildList extends AbstractList<String> implements RandomAccess {
+
+    private final int id;
+
+    public ChildList(int id) {
+      this.id = id;
+    }
+
+    @Override
+    public String get(int index) {
+      return path(child(id, index));
+    }
+
+    @Override
+    public int size() {
+      return childCount(id);
+    }
+  }
+
+}
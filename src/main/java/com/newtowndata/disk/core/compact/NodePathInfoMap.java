@@ -0,0 +1,92 @@
+/*
+ * Copyright 2021 Voyta Krizek, https://github.com/NewTownData
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.newtowndata.disk.core.compact;
+
+import com.newtowndata.disk.core.entity.PathInfo;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Read-only {@link Map} view of a {@link NodeGraph} keyed by full path. Values are created
+ * on each lookup.
+ */
+public class NodePathInfoMap extends AbstractMap<String, PathInfo> {
+
+  private final NodeGraph graph;
+
+  public NodePathInfoMap(NodeGraph graph) {
+    this.graph = graph;
+  }
+
+  public NodeGraph graph() {
+    return graph;
+  }
+
+  @Override
+  public PathInfo get(Object key) {
+    if (!(key instanceof String path)) {
+      return null;
+    }
+    int id = graph.find(path);
+    return id == NodeGraph.NO_PARENT ? null : graph.pathInfo(id);
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    return key instanceof String path && graph.find(path) != NodeGraph.NO_PARENT;
+  }
+
+  @Override
+  public int size() {
+    return graph.size();
+  }
+
+  @Override
+  public Set<Entry<String, PathInfo>> entrySet() {
+    return new AbstractSet<>() {
+
+      @Override
+      public Iterator<Entry<String, PathInfo>> iterator() {
+        return new Iterator<>() {
+
+          private int next;
+
+          @Override
+          public boolean hasNext() {
+            return next < graph.size();
+          }
+
+          @Override
+          public Entry<String, PathInfo> next() {
+            if (!hasNext()) {
+              throw new NoSuchElementException();
+            }
+            int id = next++;
+            return new SimpleImmutableEntry<>(graph.path(id), graph.pathInfo(id));
+          }
+        };
+      }
+
+      @Override
+      public int size() {
+        return graph.size();
+      }
+    };
+  }
+
+}
@@ -0,0 +1,264 @@
+/*
+ * Copyright 2021 Voyta Krizek, https://github.com/NewTownData
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.newtowndata.disk.core.duplicate;
+
+import com.newtowndata.disk.core.PathConstants;
+import com.newtowndata.disk.core.entity.PathGraph;
+import com.newtowndata.disk.core.entity.PathInfo;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Finds duplicate files in stages, each only looking at the candidates left by the previous one:
+ * files are grouped by exact size, hard links to the same file are collapsed into one candidate,
+ * then files are grouped by a hash of their first and last 4 KiB, and only then hashed completely
+ * with memory-mapped reads. Hashing runs on a fork-join pool, one file per task.
+ */
+public class DuplicateFinder {
+
+  private static final Logger LOG = LoggerFactory.getLogger(DuplicateFinder.class);
+
+  static final int EDGE_SIZE = 4096;
+  private static final long MAP_CHUNK_SIZE = 64L * 1024L * 1024L;
+  private static final Comparator<DuplicateReport.DuplicateSet> BY_RECLAIMABLE =
+      Comparator.comparingLong(DuplicateReport.DuplicateSet::reclaimableBytes).reversed()
+          .thenComparing(DuplicateReport.DuplicateSet::hash);
+
+  private final HashCache hashCache;
+  private final int parallelism;
+
+  private final LongAdder partialHashes = new LongAdder();
+  private final LongAdder fullHashes = new LongAdder();
+  private final LongAdder cacheHits = new LongAdder();
+
+  public DuplicateFinder(HashCache hashCache, int parallelism) {
+    this.hashCache = hashCache;
+    this.parallelism = parallelism;
+  }
+
+  public DuplicateReport find(PathGraph pathGraph, long minSize) {
+    Map<Long, List<Candidate>> bySize = new HashMap<>();
+    for (Map.Entry<String, PathInfo> entry : pathGraph.pathInfos().entrySet()) {
+      PathInfo pathInfo = entry.getValue();
+      if (PathConstants.FILE_TYPE_FILE.equals(pathInfo.fileType())
+          && pathInfo.size() >= Math.max(1L, minSize)) {
+        bySize.computeIfAbsent(pathInfo.size(), size -> new ArrayList<>(2))
+            .add(new Candidate(entry.getKey(), pathInfo.size(), pathInfo.timestamp()));
+      }
+    }
+    List<List<Candidate>> groups = duplicates(bySize.values());
+    long candidateFiles = groups.stream().mapToLong(List::size).sum();
+    LOG.info("Found {} files in {} size groups", candidateFiles, groups.size());
+
+    ForkJoinPool pool = new ForkJoinPool(parallelism);
+    try {
+      List<List<Candidate>> sized = groups;
+      groups = submit(pool, () -> duplicates(sized.parallelStream()
+          .map(DuplicateFinder::distinctFiles).toList()));
+      LOG.info("{} files left after collapsing hard links",
+          groups.stream().mapToLong(List::size).sum());
+      groups = regroup(pool, groups, this::partialHash);
+      LOG.info("{} files left after hashing the first and last {} bytes",
+          groups.stream().mapToLong(List::size).sum(), EDGE_SIZE);
+      groups = regroup(pool, groups, this::fullHash);
+    } finally {
+      pool.shutdown();
+    }
+
+    List<DuplicateReport.DuplicateSet> sets = new ArrayList<>(groups.size());
+    long reclaimable = 0L;
+    for (List<Candidate> group : groups) {
+      long size = group.get(0).size();
+      long groupReclaimable = size * (group.size() - 1);
+      reclaimable += groupReclaimable;
+      sets.add(new DuplicateReport.DuplicateSet(size, group.get(0).hash(), groupReclaimable,
+          group.stream().map(Candidate::path).sorted().toList()));
+    }
+    sets.sort(BY_RECLAIMABLE);
+
+    return new DuplicateReport(System.currentTimeMillis(), candidateFiles, partialHashes.sum(),
+        fullHashes.sum(), cacheHits.sum(), reclaimable, sets);
+  }
+
+  private List<List<Candidate>> regroup(ForkJoinPool pool, List<List<Candidate>> groups,
+      Function<Candidate, Candidate> hasher) {
+    return submit(pool, () -> duplicates(groups.parallelStream()
+        .flatMap(group -> group.stream().map(hasher).filter(candidate -> candidate != null)
+            .collect(Collectors.groupingBy(Candidate::hash)).values().stream())
+        .toList()));
+  }
+
+  private static <T> T submit(ForkJoinPool pool, Callable<T> task) {
+    try {
+      return pool.submit(task).get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted", e);
+    } catch (ExecutionException e) {
+      throw new IllegalStateException(e.getCause());
+    }
+  }
+
+  private static List<List<Candidate>> duplicates(Collection<List<Candidate>> groups) {
+    return groups.stream().filter(group -> group.size() > 1).toList();
+  }
+
+  /**
+   * Keeps one candidate per file key, so hard links to the same inode are not reported as
+   * duplicates of each other; the link with the first path is kept. Candidates without a file key
+   * are all kept.
+   */
+  private static List<Candidate> distinctFiles(List<Candidate> group) {
+    Map<Object, Candidate> byKey = new HashMap<>();
+    List<Candidate> distinct = new ArrayList<>(group.size());
+    for (Candidate candidate : group.stream().sorted(Comparator.comparing(Candidate::path))
+        .toList()) {
+      Object key = fileKey(candidate);
+      if (key == null || byKey.putIfAbsent(key, candidate) == null) {
+        distinct.add(candidate);
+      }
+    }
+    return distinct;
+  }
+
+  private static Object fileKey(Candidate candidate) {
+    try {
+      return Files.readAttributes(Path.of(candidate.path()), BasicFileAttributes.class).fileKey();
+    } catch (IOException e) {
+      return null;
+    }
+  }
+
+  private Candidate partialHash(Candidate candidate) {
+    String cached = hashCache.getPartial(candidate.path(), candidate.size(),
+        candidate.timestamp());
+    if (cached != null) {
+      cacheHits.increment();
+      return candidate.withHash(cached);
+    }
+
+    try (FileChannel channel = FileChannel.open(Path.of(candidate.path()),
+        StandardOpenOption.READ)) {
+      if (channel.size() != candidate.size()) {
+        return null;
+      }
+      MessageDigest digest = digest();
+      if (candidate.size() <= 2L * EDGE_SIZE) {
+        digest.update(read(channel, 0L, (int) candidate.size()));
+      } else {
+        digest.update(read(channel, 0L, EDGE_SIZE));
+        digest.update(read(channel, candidate.size() - EDGE_SIZE, EDGE_SIZE));
+      }
+      String hash = HexFormat.of().formatHex(digest.digest());
+      hashCache.putPartial(candidate.path(), candidate.size(), candidate.timestamp(), hash);
+      partialHashes.increment();
+      if (candidate.size() <= 2L * EDGE_SIZE) {
+        hashCache.putFull(candidate.path(), candidate.size(), candidate.timestamp(), hash);
+      }
+      return candidate.withHash(hash);
+    } catch (IOException e) {
+      LOG.warn("Cannot read file {}: {}", candidate.path(), e.toString());
+      return null;
+    }
+  }
+
+  private Candidate fullHash(Candidate candidate) {
+    if (candidate.size() <= 2L * EDGE_SIZE) {
+      return candidate;
+    }
+    String cached = hashCache.getFull(candidate.path(), candidate.size(), candidate.timestamp());
+    if (cached != null) {
+      cacheHits.increment();
+      return candidate.withHash(cached);
+    }
+
+    try (FileChannel channel = FileChannel.open(Path.of(candidate.path()),
+        StandardOpenOption.READ)) {
+      if (channel.size() != candidate.size()) {
+        return null;
+      }
+      MessageDigest digest = digest();
+      for (long position = 0L; position < candidate.size(); position += MAP_CHUNK_SIZE) {
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position,
+            Math.min(MAP_CHUNK_SIZE, candidate.size() - position));
+        digest.update(buffer);
+      }
+      String hash = HexFormat.of().formatHex(digest.digest());
+      hashCache.putFull(candidate.path(), candidate.size(), candidate.timestamp(), hash);
+      fullHashes.increment();
+      return candidate.withHash(hash);
+    } catch (IOException | UncheckedIOException e) {
+      LOG.warn("Cannot read file {}: {}", candidate.path(), e.toString());
+      return null;
+    }
+  }
+
+  private static ByteBuffer read(FileChannel channel, long position, int length)
+      throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(length);
+    long current = position;
+    while (buffer.hasRemaining()) {
+      int read = channel.read(buffer, current);
+      if (read < 0) {
+        break;
+      }
+      current += read;
+    }
+    return buffer.flip();
+  }
+
+  private static MessageDigest digest() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private record Candidate(String path, long size, long timestamp, String hash) {
+
+    Candidate(String path, long size, long timestamp) {
+      this(path, size, timestamp, null);
+    }
+
+    Candidate withHash(String hash) {
+      return new Candidate(path, size, timestamp, hash);
+    }
+  }
+
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright 2021 Voyta Krizek, https://github.com/NewTownData
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.newtowndata.disk.core.duplicate;
+
+import java.util.List;
+
+/**
+ * Sets of identical files, largest reclaimable size first.
+ */
+public record DuplicateReport(long createdAt, long candidateFiles, long partialHashes,
+    long fullHashes, long cacheHits, long reclaimableBytes, List<DuplicateSet> sets) {
+
+  /**
+   * Files with the same size and content. Keeping one copy frees {@code reclaimableBytes}.
+   */
+  public record DuplicateSet(long size, String hash, long reclaimableBytes, List<String> paths) {
+
+  }
+
+  public DuplicateReport limit(int count) {
+    return new DuplicateReport(createdAt, candidateFiles, partialHashes, fullHashes, cacheHits,
+        reclaimableBytes, sets.subList(0, Math.min(count, sets.size())));
+  }
+
+}
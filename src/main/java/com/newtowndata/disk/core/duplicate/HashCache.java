@@ -0,0 +1,125 @@
+/*
+ * Copyright 2021 Voyta Krizek, https://github.com/NewTownData
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.newtowndata.disk.core.duplicate;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * File hashes keyed by path and valid while the size and modification time match. Only the
+ * entries used since the cache was read are written back, so files that disappeared drop out.
+ */
+public class HashCache {
+
+  public static final int MAGIC = 0x44414843;
+  public static final int VERSION = 1;
+
+  private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+  private final Map<String, Entry> used = new ConcurrentHashMap<>();
+
+  /** Hashes of a file; {@code full} is null until the file was hashed completely. */
+  public record Entry(long size, long timestamp, String partial, String full) {
+
+  }
+
+  public String getPartial(String path, long size, long timestamp) {
+    Entry entry = lookup(path, size, timestamp);
+    return entry == null ? null : entry.partial();
+  }
+
+  public String getFull(String path, long size, long timestamp) {
+    Entry entry = lookup(path, size, timestamp);
+    return entry == null ? null : entry.full();
+  }
+
+  public void putPartial(String path, long size, long timestamp, String partial) {
+    Entry entry = new Entry(size, timestamp, partial, null);
+    entries.put(path, entry);
+    used.put(path, entry);
+  }
+
+  public void putFull(String path, long size, long timestamp, String full) {
+    Entry entry = new Entry(size, timestamp, getPartial(path, size, timestamp), full);
+    entries.put(path, entry);
+    used.put(path, entry);
+  }
+
+  public int size() {
+    return entries.size();
+  }
+
+  private Entry lookup(String path, long size, long timestamp) {
+    Entry entry = entries.get(path);
+    if (entry == null || entry.size() != size || entry.timestamp() != timestamp) {
+      return null;
+    }
+    used.put(path, entry);
+    return entry;
+  }
+
+  public void write(Path path) throws IOException {
+    try (DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(
+        new GZIPOutputStream(Files.newOutputStream(path, StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE), 1 << 16)))) {
+      dos.writeInt(MAGIC);
+      dos.writeInt(VERSION);
+      dos.writeInt(used.size());
+      for (Map.Entry<String, Entry> mapEntry : used.entrySet()) {
+        Entry entry = mapEntry.getValue();
+        dos.writeUTF(mapEntry.getKey());
+        dos.writeLong(entry.size());
+        dos.writeLong(entry.timestamp());
+        dos.writeUTF(entry.partial() == null ? "" : entry.partial());
+        dos.writeUTF(entry.full() == null ? "" : entry.full());
+      }
+    }
+  }
+
+  /** Reads a cache written by {@link #write(Path)}, or returns an empty one. */
+  public static HashCache read(Path path) throws IOException {
+    HashCache cache = new HashCache();
+    if (!Files.exists(path)) {
+      return cache;
+    }
+
+    try (DataInputStream dis = new DataInputStream(new BufferedInputStream(
+        new GZIPInputStream(Files.newInputStream(path, StandardOpenOption.READ), 1 << 16)))) {
+      if (dis.readInt() != MAGIC || dis.readInt() != VERSION) {
+        return cache;
+      }
+      int count = dis.readInt();
+      for (int i = 0; i < count; i++) {
+        String file = dis.readUTF();
+        long size = dis.readLong();
+        long timestamp = dis.readLong();
+        String partial = dis.readUTF();
+        String full = dis.readUTF();
+        cache.entries.put(file, new Entry(size, timestamp, partial.isEmpty() ? null : partial,
+            full.isEmpty() ? null : full));
+      }
+    }
+    return cache;
+  }
+
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright 2021 Voyta Krizek, https://github.com/NewTownData
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.newtowndata.disk.core.entity;
+
+import com.newtowndata.disk.core.PathConstants;
+import java.util.AbstractList;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Read-only view of the graphs of several hosts as one map. Every host gets a virtual root
+ * {@code [host]}, and its paths are prefixed with it, so {@code /var} of host {@code web1} is
+ * {@code [web1]/var}. Entries are translated on access, the host graphs are not copied.
+ */
+public class HostPathInfoMap extends AbstractMap<String, PathInfo> {
+
+  private static final String PREFIX = "[";
+  private static final String SUFFIX = "]";
+
+  private final Map<String, PathGraph> hosts;
+  private final Map<String, PathInfo> virtualRoots = new LinkedHashMap<>();
+  private final int size;
+
+  private HostPathInfoMap(Map<String, PathGraph> hosts) {
+    this.hosts = hosts;
+
+    int count = 0;
+    for (Map.Entry<String, PathGraph> host : hosts.entrySet()) {
+      String prefix = root(host.getKey());
+      PathTotals totals = PathTotals.of(PathConstants.FILE_TYPE_DIRECTORY, 0L);
+      long timestamp = 0L;
+      for (String root : host.getValue().roots()) {
+        PathInfo rootInfo = host.getValue().pathInfos().get(root);
+        totals = totals.add(rootInfo.totals());
+        timestamp = Math.max(timestamp, rootInfo.timestamp());
+      }
+      virtualRoots.put(prefix, new PathInfo(null, PathConstants.FILE_TYPE_DIRECTORY,
+          host.getKey(), timestamp, 0L, new PrefixedList(prefix, host.getValue().roots()),
+          totals));
+      count += host.getValue().pathInfos().size() + 1;
+    }
+    this.size = count;
+  }
+
+  /**
+   * Merges the host graphs, in the iteration order of {@code hosts}, into one graph with a virtual
+   * root per host.
+   */
+  public static PathGraph merge(Map<String, PathGraph> hosts) {
+    HostPathInfoMap pathInfos = new HostPathInfoMap(new LinkedHashMap<>(hosts));
+    return new PathGraph(new ArrayList<>(pathInfos.virtualRoots.keySet()), pathInfos);
+  }
+
+  public static String root(String host) {
+    return PREFIX + host + SUFFIX;
+  }
+
+  @Override
+  public PathInfo get(Object key) {
+    if (!(key instanceof String path) || !path.startsWith(PREFIX)) {
+      return null;
+    }
+    int end = path.indexOf(SUFFIX);
+    if (end < 0) {
+      return null;
+    }
+    if (end == path.length() - 1) {
+      return virtualRoots.get(path);
+    }
+
+    PathGraph graph = hosts.get(path.substring(PREFIX.length(), end));
+    String prefix = path.substring(0, end + 1);
+    return graph == null ? null
+        : translate(prefix, graph.pathInfos().get(path.substring(end + 1)));
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    return get(key) != null;
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public Set<Entry<String, PathInfo>> entrySet() {
+    return new AbstractSet<>() {
+
+      @Override
+      public Iterator<Entry<String, PathInfo>> iterator() {
+        return new HostIterator();
+      }
+
+      @Override
+      public int size() {
+        return size;
+      }
+    };
+  }
+
+  private static PathInfo translate(String prefix, PathInfo pathInfo) {
+    if (pathInfo == null) {
+      return null;
+    }
+    return new PathInfo(pathInfo.parentPath() == null ? prefix : prefix + pathInfo.parentPath(),
+        pathInfo.fileType(), pathInfo.name(), pathInfo.timestamp(), pathInfo.size(),
+        pathInfo.children().isEmpty() ? List.of() : new PrefixedList(prefix, pathInfo.children()),
+        pathInfo.totals());
+  }
+
+  private static class PrefixedList extends AbstractList<String> {
+
+    private final String prefix;
+    private final List<String> paths;
+
+    public PrefixedList(String prefix, List<String> paths) {
+      this.prefix = prefix;
+      this.paths = paths;
+    }
+
+    @Override
+    public String get(int index) {
+      return prefix + paths.get(index);
+    }
+
+    @Override
+    public int size() {
+      return paths.size();
+    }
+  }
+
+  private class HostIterator implements Iterator<Entry<String, PathInfo>> {
+
+    private final Iterator<Map.Entry<String, PathGraph>> hostIterator =
+        hosts.entrySet().iterator();
+    private Iterator<Entry<String, PathInfo>> entries;
+    private String prefix;
+    private Entry<String, PathInfo> next;
+
+    @Override
+    public boolean hasNext() {
+      while (next == null) {
+        if (entries != null && entries.hasNext()) {
+          Entry<String, PathInfo> entry = entries.next();
+          next = Map.entry(prefix + entry.getKey(), translate(prefix, entry.getValue()));
+        } else if (hostIterator.hasNext()) {
+          Map.Entry<String, PathGraph> host = hostIterator.next();
+          prefix = root(host.getKey());
+          entries = host.getValue().pathInfos().entrySet().iterator();
+          next = Map.entry(prefix, virtualRoots.get(prefix));
+        } else {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    @Override
+    public Entry<String, PathInfo> next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      Entry<String, PathInfo> entry = next;
+      next = null;
+      return entry;
+    }
+  }
+
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright 2021 Voyta Krizek, https://github.com/NewTownData
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.newtowndata.disk.core.entity;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Read-only view of a base map with a set of replaced and removed entries on top. Used to publish an
+ * updated graph without copying the unchanged nodes. Overlays never nest: an overlay of an overlay
+ * merges its changes into a single layer over the original base.
+ */
+public class OverlayPathInfoMap extends AbstractMap<String, PathInfo> {
+
+  private static final int MAX_CHANGE_DIVISOR = 4;
+
+  private final Map<String, PathInfo> base;
+  private final Map<String, PathInfo> changes;
+  private final Set<String> removed;
+  private final int size;
+
+  private OverlayPathInfoMap(Map<String, PathInfo> base, Map<String, PathInfo> changes,
+      Set<String> removed) {
+    this.base = base;
+    this.changes = changes;
+    this.removed = removed;
+
+    int count = base.size();
+    for (String key : changes.keySet()) {
+      if (!base.containsKey(key)) {
+        count++;
+      }
+    }
+    for (String key : removed) {
+      if (base.containsKey(key)) {
+        count--;
+      }
+    }
+    this.size = count;
+  }
+
+  /**
+   * Lays {@code changes} and {@code removed} over {@code base}. Removals of keys the base does not
+   * have are dropped. Once the changes exceed a quarter of the base, they are merged into a plain
+   * map instead, so a long series of refreshes neither copies an ever growing layer nor slows down
+   * lookups.
+   */
+  public static Map<String, PathInfo> of(Map<String, PathInfo> base,
+      Map<String, PathInfo> changes, Set<String> removed) {
+    OverlayPathInfoMap overlay;
+    if (base instanceof OverlayPathInfoMap previous) {
+      Map<String, PathInfo> mergedChanges = new HashMap<>(previous.changes);
+      mergedChanges.keySet().removeAll(removed);
+      mergedChanges.putAll(changes);
+
+      Set<String> mergedRemoved = new HashSet<>(previous.removed);
+      for (String key : removed) {
+        if (previous.base.containsKey(key)) {
+          mergedRemoved.add(key);
+        }
+      }
+      mergedRemoved.removeAll(changes.keySet());
+      overlay = new OverlayPathInfoMap(previous.base, mergedChanges, mergedRemoved);
+    } else {
+      Set<String> effectiveRemoved = new HashSet<>();
+      for (String key : removed) {
+        if (base.containsKey(key) && !changes.containsKey(key)) {
+          effectiveRemoved.add(key);
+        }
+      }
+      overlay = new OverlayPathInfoMap(base, new HashMap<>(changes), effectiveRemoved);
+    }
+
+    if (overlay.changeCount() > overlay.base.size() / MAX_CHANGE_DIVISOR) {
+      return new HashMap<>(overlay);
+    }
+    return overlay;
+  }
+
+  public Map<String, PathInfo> base() {
+    return base;
+  }
+
+  public int changeCount() {
+    return changes.size() + removed.size();
+  }
+
+  @Override
+  public PathInfo get(Object key) {
+    PathInfo pathInfo = changes.get(key);
+    if (pathInfo != null) {
+      return pathInfo;
+    }
+    if (removed.contains(key)) {
+      return null;
+    }
+    return base.get(key);
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    return get(key) != null;
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public Set<Entry<String, PathInfo>> entrySet() {
+    return new AbstractSet<>() {
+
+      @Override
+      public Iterator<Entry<String, PathInfo>> iterator() {
+        return new OverlayIterator();
+      }
+
+      @Override
+      public int size() {
+        return size;
+      }
+    };
+  }
+
+  private class OverlayIterator implements Iterator<Entry<String, PathInfo>> {
+
+    private final Iterator<Entry<String, PathInfo>> baseIterator = base.entrySet().iterator();
+    private final Iterator<Entry<String, PathInfo>> changesIterator =
+        changes.entrySet().iterator();
+    private Entry<String, PathInfo> next;
+
+    @Override
+    public boolean hasNext() {
+      while (next == null && baseIterator.hasNext()) {
+        Entry<String, PathInfo> entry = baseIterator.next();
+        if (!changes.containsKey(entry.getKey()) && !removed.contains(entry.getKey())) {
+          next = entry;
+        }
+      }
+      if (next == null && changesIterator.hasNext()) {
+        next = changesIterator.next();
+      }
+      return next != null;
+    }
+
+    @Override
+    public Entry<String, PathInfo> next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      Entry<String, PathInfo> entry = next;
+      next = null;
+      return entry;
+    }
+  }
+
+}
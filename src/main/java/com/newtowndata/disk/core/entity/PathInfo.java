@@ -16,6 +16,29 @@ package com.newtowndata.disk.core.entity;
 import java.util.List;
 
 public record PathInfo(String parentPath, String fileType, String name, long timestamp, long size,
-        List<String> children) {
+        List<String> children, PathTotals totals) {
+
+  public PathInfo(String parentPath, String fileType, String name, long timestamp, long size,
+      List<String> children) {
+    this(parentPath, fileType, name, timestamp, size, children, PathTotals.of(fileType, size));
+  }
+
+  public PathInfo(String parentPath, String fileType, String name, long timestamp, long size,
+      long diskSize, List<String> children) {
+    this(parentPath, fileType, name, timestamp, size, children,
+        PathTotals.of(fileType, size, diskSize));
+  }
+
+  /**
+   * Allocated size of this entry alone. Only leaves carry their own on-disk size, a directory with
+   * children is accounted at its apparent size.
+   */
+  public long diskSize() {
+    return children.isEmpty() ? totals.diskSize() : size;
+  }
+
+  public PathInfo withTotals(PathTotals totals) {
+    return new PathInfo(parentPath, fileType, name, timestamp, size, children, totals);
+  }
 
 }
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2021 Voyta Krizek, https://github.com/NewTownData
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.newtowndata.disk.core.entity;
+
+import com.newtowndata.disk.core.PathConstants;
+
+/**
+ * Rolled up sizes and counts of a subtree. {@code size} adds up the apparent file sizes, while
+ * {@code diskSize} counts allocated space with every hard-linked inode counted once.
+ */
+public record PathTotals(long size, long fileCount, long directoryCount, long diskSize) {
+
+  public static final PathTotals EMPTY = new PathTotals(0L, 0L, 0L, 0L);
+
+  public PathTotals(long size, long fileCount, long directoryCount) {
+    this(size, fileCount, directoryCount, size);
+  }
+
+  public static PathTotals of(String fileType, long size) {
+    return of(fileType, size, size);
+  }
+
+  public static PathTotals of(String fileType, long size, long diskSize) {
+    if (PathConstants.FILE_TYPE_DIRECTORY.equals(fileType)
+        || PathConstants.FILE_TYPE_UNREADABLE_DIRECTORY.equals(fileType)) {
+      return new PathTotals(size, 0L, 1L, diskSize);
+    }
+    return new PathTotals(size, 1L, 0L, diskSize);
+  }
+
+  public PathTotals add(PathTotals other) {
+    return new PathTotals(size + other.size, fileCount + other.fileCount,
+        directoryCount + other.directoryCount, diskSize + other.diskSize);
+  }
+
+  public PathTotals subtract(PathTotals other) {
+    return new PathTotals(size - other.size, fileCount - other.fileCount,
+        directoryCount - other.directoryCount, diskSize - other.diskSize);
+  }
+
+}
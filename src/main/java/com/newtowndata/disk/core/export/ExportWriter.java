@@ -0,0 +1,105 @@
+/*
+ * Copyright 2021 Voyta Krizek, https://github.com/NewTownData
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.newtowndata.disk.core.export;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writes export rows one at a time to a writer: path, file type, own size, aggregate size of the
+ * subtree and modification time in epoch milliseconds. Nothing is buffered besides the writer.
+ */
+public final class ExportWriter implements Flushable {
+
+  private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+  private final Writer writer;
+  private final ExportFormat format;
+  private long rowCount;
+
+  public ExportWriter(Writer writer, ExportFormat format) throws IOException {
+    this.writer = writer;
+    this.format = format;
+    if (format == ExportFormat.CSV) {
+      writer.write("path,type,size,totalSize,timestamp\n");
+    }
+  }
+
+  public void row(String path, String fileType, long size, long totalSize, long timestamp)
+      throws IOException {
+    if (format == ExportFormat.CSV) {
+      writeCsv(path);
+      writer.write(',');
+      writeCsv(fileType);
+      writer.write(',' + Long.toString(size) + ',' + totalSize + ',' + timestamp + '\n');
+    } else {
+      writer.write("{\"path\":");
+      writeJson(path);
+      writer.write(",\"type\":");
+      writeJson(fileType);
+      writer.write(",\"size\":" + size + ",\"totalSize\":" + totalSize + ",\"timestamp\":"
+          + timestamp + "}\n");
+    }
+    rowCount++;
+  }
+
+  public long rowCount() {
+    return rowCount;
+  }
+
+  @Override
+  public void flush() throws IOException {
+    writer.flush();
+  }
+
+  private void writeCsv(String value) throws IOException {
+    boolean quote = false;
+    for (int i = 0; i < value.length() && !quote; i++) {
+      char c = value.charAt(i);
+      quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+    }
+    if (!quote) {
+      writer.write(value);
+      return;
+    }
+
+    writer.write('"');
+    writer.write(value.replace("\"", "\"\""));
+    writer.write('"');
+  }
+
+  private void writeJson(String value) throws IOException {
+    writer.write('"');
+    int start = 0;
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (c == '"' || c == '\\' || c < 0x20) {
+        writer.write(value, start, i - start);
+        if (c == '"' || c == '\\') {
+          writer.write('\\');
+          writer.write(c);
+        } else {
+          writer.write("\\u00");
+          writer.write(HEX[c >> 4]);
+          writer.write(HEX[c & 0xf]);
+        }
+        start = i + 1;
+      }
+    }
+    writer.write(value, start, value.length() - start);
+    writer.write('"');
+  }
+
+}
@@ -0,0 +1,260 @@
+/*
+ * Copyright 2021 Voyta Krizek, https://github.com/NewTownData
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.newtowndata.disk.core.export;
+
+import com.newtowndata.disk.core.cache.CacheEntry;
+import com.newtowndata.disk.core.cache.CacheFormat;
+import com.newtowndata.disk.core.cache.GzipCacheFormat;
+import com.newtowndata.disk.core.cache.SegmentedCacheFormat;
+import com.newtowndata.disk.core.compact.MappedCacheFormat;
+import com.newtowndata.disk.core.compact.NodeGraph;
+import com.newtowndata.disk.core.entity.PathGraph;
+import com.newtowndata.disk.core.entity.PathInfo;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Streams a graph or a cache file as export rows in depth-first post-order, every directory after
+ * its subtree like {@code du -a}. Only the current path from the root is held in memory, so a
+ * gzip or mapped cache file is exported without loading the graph. Segmented caches are not in
+ * depth-first order on disk and are read into the compact graph first.
+ *
+ * <p>{@code path} limits the export to one subtree, {@code minSize} to entries whose aggregate
+ * size is at least that many bytes. Subtrees below {@code minSize} are skipped as a whole when the
+ * aggregate sizes are known up front.
+ *
+ * <pre>
+ * java -cp target/classes com.newtowndata.disk.core.export.TreeExporter cache.idx CSV path=/home
+ * </pre>
+ */
+public final class TreeExporter {
+
+  private static final String SEPARATOR = FileSystems.getDefault().getSeparator();
+
+  private TreeExporter() {}
+
+  public static void main(String[] args) throws IOException {
+    if (args.length < 1) {
+      System.err.println("Usage: TreeExporter <cache file> [NDJSON|CSV] [path=<directory>]"
+          + " [min-size=<bytes>]");
+      System.exit(1);
+    }
+
+    ExportFormat format = ExportFormat.NDJSON;
+    String path = null;
+    long minSize = 0L;
+    for (int i = 1; i < args.length; i++) {
+      if (args[i].startsWith("path=")) {
+        path = args[i].substring("path=".length());
+      } else if (args[i].startsWith("min-size=")) {
+        minSize = Long.parseLong(args[i].substring("min-size=".length()));
+      } else {
+        format = ExportFormat.valueOf(args[i]);
+      }
+    }
+
+    BufferedWriter out = new BufferedWriter(
+        new OutputStreamWriter(System.out, StandardCharsets.UTF_8), 1 << 16);
+    ExportWriter writer = new ExportWriter(out, format);
+    export(Path.of(args[0]), path, minSize, writer);
+    writer.flush();
+  }
+
+  /** @return false when {@code path} is not in the cache file */
+  public static boolean export(Path cachePath, String path, long minSize, ExportWriter writer)
+      throws IOException {
+    CacheFormat format = CacheFormat.detect(cachePath)
+        .orElseThrow(() -> new IOException("No cache file " + cachePath));
+    return switch (format) {
+      case MAPPED -> export(MappedCacheFormat.open(cachePath), path, minSize, writer);
+      case SEGMENTED -> export(SegmentedCacheFormat.readCompact(cachePath,
+          Runtime.getRuntime().availableProcessors()), path, minSize, writer);
+      default -> exportStream(cachePath, path, minSize, writer);
+    };
+  }
+
+  /** @return false when {@code path} is not in the graph */
+  public static boolean export(PathGraph graph, String path, long minSize, ExportWriter writer)
+      throws IOException {
+    if (path != null && !graph.pathInfos().containsKey(path)) {
+      return false;
+    }
+
+    Deque<PathFrame> stack = new ArrayDeque<>();
+    for (String start : path == null ? graph.roots() : List.of(path)) {
+      PathInfo startInfo = graph.pathInfos().get(start);
+      if (startInfo == null || startInfo.totals().size() < minSize) {
+        continue;
+      }
+
+      stack.push(new PathFrame(start, startInfo));
+      while (!stack.isEmpty()) {
+        PathFrame frame = stack.peek();
+        if (frame.next < frame.pathInfo.children().size()) {
+          String child = frame.pathInfo.children().get(frame.next++);
+          PathInfo childInfo = graph.pathInfos().get(child);
+          if (childInfo != null && childInfo.totals().size() >= minSize) {
+            stack.push(new PathFrame(child, childInfo));
+          }
+          continue;
+        }
+
+        stack.pop();
+        PathInfo pathInfo = frame.pathInfo;
+        writer.row(frame.path, pathInfo.fileType(), pathInfo.size(), pathInfo.totals().size(),
+            pathInfo.timestamp());
+      }
+    }
+    return true;
+  }
+
+  /** @return false when {@code path} is not in the graph */
+  public static boolean export(NodeGraph graph, String path, long minSize, ExportWriter writer)
+      throws IOException {
+    List<Integer> starts = new ArrayList<>();
+    if (path == null) {
+      for (int i = 0; i < graph.rootCount(); i++) {
+        starts.add(graph.root(i));
+      }
+    } else {
+      int start = graph.find(path);
+      if (start < 0) {
+        return false;
+      }
+      starts.add(start);
+    }
+
+    Deque<NodeFrame> stack = new ArrayDeque<>();
+    for (int start : starts) {
+      if (graph.totals(start).size() < minSize) {
+        continue;
+      }
+
+      stack.push(new NodeFrame(start, graph.path(start)));
+      while (!stack.isEmpty()) {
+        NodeFrame frame = stack.peek();
+        if (frame.next < graph.childCount(frame.id)) {
+          int child = graph.child(frame.id, frame.next++);
+          if (graph.totals(child).size() >= minSize) {
+            stack.push(new NodeFrame(child, join(frame.path, graph.name(child))));
+          }
+          continue;
+        }
+
+        stack.pop();
+        writer.row(frame.path, graph.fileType(frame.id), graph.size(frame.id),
+            graph.totals(frame.id).size(), graph.timestamp(frame.id));
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Exports a gzip cache while reading it. Aggregate sizes are summed on the way back up, so
+   * entries below {@code minSize} are filtered one by one rather than skipped by subtree.
+   */
+  private static boolean exportStream(Path cachePath, String path, long minSize,
+      ExportWriter writer) throws IOException {
+    try (DataInputStream dis = GzipCacheFormat.open(cachePath)) {
+      int rootCount = dis.readInt();
+      boolean extended = rootCount == GzipCacheFormat.EXTENDED;
+      if (extended) {
+        rootCount = dis.readInt();
+      }
+
+      Deque<EntryFrame> stack = new ArrayDeque<>();
+      for (int i = 0; i < rootCount; i++) {
+        stack.push(new EntryFrame(GzipCacheFormat.readEntry(dis, extended)));
+        while (!stack.isEmpty()) {
+          EntryFrame frame = stack.peek();
+          if (frame.remaining > 0) {
+            frame.remaining--;
+            stack.push(new EntryFrame(GzipCacheFormat.readEntry(dis, extended)));
+            continue;
+          }
+
+          stack.pop();
+          if (!stack.isEmpty()) {
+            stack.peek().totalSize += frame.totalSize;
+          }
+          CacheEntry entry = frame.entry;
+          if (frame.totalSize >= minSize && (path == null || contains(path, entry.path()))) {
+            writer.row(entry.path(), entry.fileType(), entry.size(), frame.totalSize,
+                entry.timestamp());
+          }
+          if (entry.path().equals(path)) {
+            return true;
+          }
+        }
+      }
+    }
+    return path == null;
+  }
+
+  private static boolean contains(String directory, String path) {
+    return path.startsWith(directory) && (path.length() == directory.length()
+        || directory.endsWith(SEPARATOR) || path.startsWith(SEPARATOR, directory.length()));
+  }
+
+  private static String join(String parent, String name) {
+    return parent.endsWith(SEPARATOR) ? parent + name : parent + SEPARATOR + name;
+  }
+
+  private static class PathFrame {
+
+    private final String path;
+    private final PathInfo pathInfo;
+    private int next;
+
+    public PathFrame(String path, PathInfo pathInfo) {
+      this.path = path;
+      this.pathInfo = pathInfo;
+    }
+  }
+
+  private static class NodeFrame {
+
+    private final int id;
+    private final String path;
+    private int next;
+
+    public NodeFrame(int id, String path) {
+      this.id = id;
+      this.path = path;
+    }
+  }
+
+  private static class EntryFrame {
+
+    private final CacheEntry entry;
+    private int remaining;
+    private long totalSize;
+
+    public EntryFrame(CacheEntry entry) {
+      this.entry = entry;
+      this.remaining = entry.childCount();
+      this.totalSize = entry.size();
+    }
+  }
+
+}
@@ -0,0 +1,34 @@
+/*
+ * Copyright 2021 Voyta Krizek, https://github.com/NewTownData
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.newtowndata.disk.core.index;
+
+import java.util.List;
+
+/**
+ * Bytes and file counts of a directory per file extension: the largest extensions by bytes plus
+ * an "other" bucket for the rest. Files without an extension use the empty extension.
+ */
+public record ExtensionHistogram(List<Bucket> buckets, long otherBytes, long otherCount) {
+
+  public static final ExtensionHistogram EMPTY = new ExtensionHistogram(List.of(), 0L, 0L);
+
+  public record Bucket(String extension, long bytes, long count) {
+
+  }
+
+  public long totalBytes() {
+    return otherBytes + buckets.stream().mapToLong(Bucket::bytes).sum();
+  }
+
+}
@@ -0,0 +1,257 @@
+/*
+ * Copyright 2021 Voyta Krizek, https://github.com/NewTownData
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.newtowndata.disk.core.index;
+
+import com.newtowndata.disk.core.PathConstants;
+import com.newtowndata.disk.core.entity.PathGraph;
+import com.newtowndata.disk.core.entity.PathInfo;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Extension histograms of every directory, rolled up bottom-up like the totals. Each directory
+ * merges the histograms of its children and keeps only the top K extensions, so memory per
+ * directory is bounded no matter how many extensions the subtree holds. Directories are kept by id
+ * in a {@link PathTable} and found by the hash of their path, so no full path is held.
+ */
+public final class ExtensionIndex {
+
+  public static final int MAGIC = 0x44414558;
+  public static final int VERSION = 2;
+
+  private static final int MAX_EXTENSION_LENGTH = 16;
+  private static final Comparator<ExtensionHistogram.Bucket> BY_BYTES =
+      Comparator.comparingLong(ExtensionHistogram.Bucket::bytes).reversed()
+          .thenComparing(ExtensionHistogram.Bucket::extension);
+
+  private final int size;
+  private final PathTable table;
+  private final ExtensionHistogram[] histograms;
+  private final long[] hashes;
+  private final int[] slots;
+
+  private ExtensionIndex(int size, PathTable table, ExtensionHistogram[] histograms) {
+    this.size = size;
+    this.table = table;
+    this.histograms = histograms;
+    this.hashes = table.hashes();
+    this.slots = new int[Integer.highestOneBit(Math.max(1, histograms.length) * 2) * 2];
+    int mask = slots.length - 1;
+    for (int id = 0; id < histograms.length; id++) {
+      int slot = (int) hashes[id] & mask;
+      while (slots[slot] != 0) {
+        slot = (slot + 1) & mask;
+      }
+      slots[slot] = id + 1;
+    }
+  }
+
+  public static ExtensionIndex build(PathGraph pathGraph, int size) {
+    PathTable table = new PathTable();
+    List<ExtensionHistogram> histograms = new ArrayList<>();
+    Map<String, String> extensions = new HashMap<>();
+    Deque<Frame> stack = new ArrayDeque<>();
+    for (String root : pathGraph.roots()) {
+      PathInfo rootInfo = pathGraph.pathInfos().get(root);
+      if (rootInfo == null || !PathConstants.FILE_TYPE_DIRECTORY.equals(rootInfo.fileType())) {
+        continue;
+      }
+
+      stack.push(new Frame(table.add(PathTable.NO_PARENT, null, root, rootInfo.name()), root,
+          rootInfo));
+      histograms.add(null);
+      while (!stack.isEmpty()) {
+        Frame frame = stack.peek();
+        if (frame.next < frame.pathInfo.children().size()) {
+          String child = frame.pathInfo.children().get(frame.next++);
+          PathInfo childInfo = pathGraph.pathInfos().get(child);
+          if (childInfo == null) {
+            continue;
+          }
+          if (PathConstants.FILE_TYPE_DIRECTORY.equals(childInfo.fileType())) {
+            stack.push(new Frame(table.add(frame.id, frame.path, child, childInfo.name()), child,
+                childInfo));
+            histograms.add(null);
+          } else if (PathConstants.FILE_TYPE_FILE.equals(childInfo.fileType())) {
+            String extension = extensions.computeIfAbsent(extension(childInfo.name()),
+                value -> value);
+            frame.add(extension, childInfo.size(), 1L);
+          }
+        } else {
+          stack.pop();
+          ExtensionHistogram histogram = frame.toHistogram(size);
+          histograms.set(frame.id, histogram);
+          if (!stack.isEmpty()) {
+            stack.peek().merge(histogram);
+          }
+        }
+      }
+    }
+    return new ExtensionIndex(size, table.freeze(),
+        histograms.toArray(new ExtensionHistogram[0]));
+  }
+
+  /** Lower-cased extension of a file name, empty when there is none. */
+  public static String extension(String name) {
+    int dot = name.lastIndexOf('.');
+    if (dot <= 0 || dot == name.length() - 1 || name.length() - dot - 1 > MAX_EXTENSION_LENGTH) {
+      return "";
+    }
+    return name.substring(dot + 1).toLowerCase(Locale.ROOT);
+  }
+
+  public int size() {
+    return size;
+  }
+
+  /** @return null when the path is not a directory of the graph */
+  public ExtensionHistogram get(String path) {
+    long hash = PathTable.hash(path);
+    int mask = slots.length - 1;
+    for (int slot = (int) hash & mask; slots[slot] != 0; slot = (slot + 1) & mask) {
+      int id = slots[slot] - 1;
+      if (hashes[id] == hash && table.path(id).equals(path)) {
+        return histograms[id];
+      }
+    }
+    return null;
+  }
+
+  public void write(Path path, long cacheFingerprint) throws IOException {
+    try (DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(
+        new GZIPOutputStream(Files.newOutputStream(path, StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE), 1 << 16)))) {
+      dos.writeInt(MAGIC);
+      dos.writeInt(VERSION);
+      dos.writeLong(cacheFingerprint);
+      dos.writeInt(size);
+      table.write(dos);
+      for (ExtensionHistogram histogram : histograms) {
+        dos.writeInt(histogram.buckets().size());
+        for (ExtensionHistogram.Bucket bucket : histogram.buckets()) {
+          dos.writeUTF(bucket.extension());
+          dos.writeLong(bucket.bytes());
+          dos.writeLong(bucket.count());
+        }
+        dos.writeLong(histogram.otherBytes());
+        dos.writeLong(histogram.otherCount());
+      }
+    }
+  }
+
+  /**
+   * @return null when the file is missing, was written for another cache file or with another
+   *         size
+   */
+  public static ExtensionIndex read(Path path, long cacheFingerprint, int size)
+      throws IOException {
+    if (!Files.exists(path)) {
+      return null;
+    }
+
+    try (DataInputStream dis = new DataInputStream(new BufferedInputStream(
+        new GZIPInputStream(Files.newInputStream(path, StandardOpenOption.READ), 1 << 16)))) {
+      if (dis.readInt() != MAGIC || dis.readInt() != VERSION
+          || dis.readLong() != cacheFingerprint || dis.readInt() != size) {
+        return null;
+      }
+
+      PathTable table = PathTable.read(dis);
+      Map<String, String> extensions = new HashMap<>();
+      ExtensionHistogram[] histograms = new ExtensionHistogram[table.size()];
+      for (int id = 0; id < histograms.length; id++) {
+        int bucketCount = dis.readInt();
+        List<ExtensionHistogram.Bucket> buckets = new ArrayList<>(bucketCount);
+        for (int b = 0; b < bucketCount; b++) {
+          String extension = extensions.computeIfAbsent(dis.readUTF(), value -> value);
+          buckets.add(new ExtensionHistogram.Bucket(extension, dis.readLong(), dis.readLong()));
+        }
+        histograms[id] = new ExtensionHistogram(List.copyOf(buckets), dis.readLong(),
+            dis.readLong());
+      }
+      return new ExtensionIndex(size, table, histograms);
+    }
+  }
+
+  private static class Frame {
+
+    private final int id;
+    private final String path;
+    private final PathInfo pathInfo;
+    private final Map<String, long[]> buckets = new HashMap<>();
+    private long otherBytes;
+    private long otherCount;
+    private int next;
+
+    public Frame(int id, String path, PathInfo pathInfo) {
+      this.id = id;
+      this.path = path;
+      this.pathInfo = pathInfo;
+    }
+
+    private void add(String extension, long bytes, long count) {
+      long[] bucket = buckets.computeIfAbsent(extension, key -> new long[2]);
+      bucket[0] += bytes;
+      bucket[1] += count;
+    }
+
+    private void merge(ExtensionHistogram histogram) {
+      for (ExtensionHistogram.Bucket bucket : histogram.buckets()) {
+        add(bucket.extension(), bucket.bytes(), bucket.count());
+      }
+      otherBytes += histogram.otherBytes();
+      otherCount += histogram.otherCount();
+    }
+
+    private ExtensionHistogram toHistogram(int size) {
+      if (buckets.isEmpty() && otherCount == 0L) {
+        return ExtensionHistogram.EMPTY;
+      }
+
+      List<ExtensionHistogram.Bucket> all = new ArrayList<>(buckets.size());
+      for (Map.Entry<String, long[]> entry : buckets.entrySet()) {
+        all.add(new ExtensionHistogram.Bucket(entry.getKey(), entry.getValue()[0],
+            entry.getValue()[1]));
+      }
+      all.sort(BY_BYTES);
+
+      long restBytes = otherBytes;
+      long restCount = otherCount;
+      for (ExtensionHistogram.Bucket bucket : all.subList(Math.min(size, all.size()),
+          all.size())) {
+        restBytes += bucket.bytes();
+        restCount += bucket.count();
+      }
+      return new ExtensionHistogram(List.copyOf(all.subList(0, Math.min(size, all.size()))),
+          restBytes, restCount);
+    }
+  }
+
+}
@@ -0,0 +1,379 @@
+/*
+ * Copyright 2021 Voyta Krizek, https://github.com/NewTownData
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.newtowndata.disk.core.index;
+
+import com.newtowndata.disk.core.entity.PathGraph;
+import com.newtowndata.disk.core.entity.PathInfo;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Trigram index over the distinct lower-cased file names of a graph.
+ *
+ * <p>
+ * Names are sorted, so a prefix is a binary-searched range. Every trigram of a name is hashed to 32
+ * bits and mapped to a sorted posting list of name ids; substring and glob queries intersect the
+ * posting lists of the trigrams they contain and verify the remaining candidates. Queries shorter
+ * than a trigram fall back to a scan of the distinct names, which are far fewer than the paths.
+ * Every name maps to the entries carrying it, kept as parent id plus name; full paths are only
+ * built for the matches.
+ */
+public final class NameIndex {
+
+  public static final int MAGIC = 0x44414e49;
+  public static final int VERSION = 2;
+
+  private static final int GRAM = 3;
+
+  private final String[] names;
+  private final int[] entryOffsets;
+  private final int[] entries;
+  private final PathTable table;
+  private final int[] gramKeys;
+  private final int[] gramOffsets;
+  private final int[] postings;
+
+  private NameIndex(String[] names, int[] entryOffsets, int[] entries, PathTable table,
+      int[] gramKeys, int[] gramOffsets, int[] postings) {
+    this.names = names;
+    this.entryOffsets = entryOffsets;
+    this.entries = entries;
+    this.table = table;
+    this.gramKeys = gramKeys;
+    this.gramOffsets = gramOffsets;
+    this.postings = postings;
+  }
+
+  public static NameIndex build(PathGraph pathGraph) {
+    PathTable table = new PathTable();
+    Map<String, Integer> nameIds = new HashMap<>();
+    int[] entryNames = new int[Math.max(16, pathGraph.pathInfos().size())];
+    Deque<String> paths = new ArrayDeque<>();
+    Deque<String> parentPaths = new ArrayDeque<>();
+    Deque<Integer> parentIds = new ArrayDeque<>();
+    for (String root : pathGraph.roots()) {
+      paths.push(root);
+      parentPaths.push("");
+      parentIds.push(PathTable.NO_PARENT);
+      while (!paths.isEmpty()) {
+        String path = paths.pop();
+        String parentPath = parentPaths.pop();
+        int parentId = parentIds.pop();
+        PathInfo pathInfo = pathGraph.pathInfos().get(path);
+        if (pathInfo == null) {
+          continue;
+        }
+
+        int id = table.add(parentId, parentPath, path, pathInfo.name());
+        if (id == entryNames.length) {
+          entryNames = Arrays.copyOf(entryNames, id * 2);
+        }
+        String name = normalize(pathInfo.name());
+        Integer nameId = nameIds.putIfAbsent(name, nameIds.size());
+        entryNames[id] = nameId == null ? nameIds.size() - 1 : nameId;
+        for (String child : pathInfo.children()) {
+          paths.push(child);
+          parentPaths.push(path);
+          parentIds.push(id);
+        }
+      }
+    }
+    table.freeze();
+
+    String[] names = nameIds.keySet().toArray(String[]::new);
+    Arrays.parallelSort(names);
+    int[] sortedIds = new int[names.length];
+    for (int i = 0; i < names.length; i++) {
+      sortedIds[nameIds.get(names[i])] = i;
+    }
+    int[] entryOffsets = new int[names.length + 1];
+    for (int id = 0; id < table.size(); id++) {
+      entryOffsets[sortedIds[entryNames[id]] + 1]++;
+    }
+    for (int i = 0; i < names.length; i++) {
+      entryOffsets[i + 1] += entryOffsets[i];
+    }
+    int[] entries = new int[table.size()];
+    int[] next = Arrays.copyOf(entryOffsets, names.length);
+    for (int id = 0; id < table.size(); id++) {
+      entries[next[sortedIds[entryNames[id]]]++] = id;
+    }
+
+    long[] pairs = new long[16];
+    int pairCount = 0;
+    for (int id = 0; id < names.length; id++) {
+      String name = names[id];
+      for (int i = 0; i + GRAM <= name.length(); i++) {
+        if (pairCount == pairs.length) {
+          pairs = Arrays.copyOf(pairs, pairs.length * 2);
+        }
+        pairs[pairCount++] = ((long) gram(name, i) << 32) | id;
+      }
+    }
+    Arrays.parallelSort(pairs, 0, pairCount);
+
+    int keyCount = 0;
+    int[] gramKeys = new int[pairCount];
+    int[] gramOffsets = new int[pairCount + 1];
+    int[] postings = new int[pairCount];
+    int postingCount = 0;
+    for (int i = 0; i < pairCount; i++) {
+      if (i > 0 && pairs[i] == pairs[i - 1]) {
+        continue;
+      }
+      int key = (int) (pairs[i] >>> 32);
+      if (keyCount == 0 || gramKeys[keyCount - 1] != key) {
+        gramKeys[keyCount] = key;
+        gramOffsets[keyCount] = postingCount;
+        keyCount++;
+      }
+      postings[postingCount++] = (int) pairs[i];
+    }
+    gramOffsets[keyCount] = postingCount;
+
+    return new NameIndex(names, entryOffsets, entries, table, Arrays.copyOf(gramKeys, keyCount),
+        Arrays.copyOf(gramOffsets, keyCount + 1), Arrays.copyOf(postings, postingCount));
+  }
+
+  public int nameCount() {
+    return names.length;
+  }
+
+  /**
+   * Calls the consumer with every path whose name matches the query, case-insensitively.
+   */
+  public void search(SearchMode mode, String query, Consumer<String> consumer) {
+    String normalized = normalize(query);
+    IntConsumer emit = id -> {
+      for (int i = entryOffsets[id]; i < entryOffsets[id + 1]; i++) {
+        consumer.accept(table.path(entries[i]));
+      }
+    };
+
+    switch (mode) {
+      case PREFIX -> {
+        for (int id = lowerBound(normalized); id < names.length
+            && names[id].startsWith(normalized); id++) {
+          emit.accept(id);
+        }
+      }
+      case SUBSTRING -> candidates(List.of(normalized), id -> {
+        if (names[id].contains(normalized)) {
+          emit.accept(id);
+        }
+      });
+      case GLOB -> {
+        Pattern pattern = globPattern(normalized);
+        candidates(globLiterals(normalized), id -> {
+          if (pattern.matcher(names[id]).matches()) {
+            emit.accept(id);
+          }
+        });
+      }
+    }
+  }
+
+  private void candidates(List<String> literals, IntConsumer consumer) {
+    List<int[]> ranges = new ArrayList<>();
+    for (String literal : literals) {
+      for (int i = 0; i + GRAM <= literal.length(); i++) {
+        int index = Arrays.binarySearch(gramKeys, gram(literal, i));
+        if (index < 0) {
+          return;
+        }
+        ranges.add(new int[] {gramOffsets[index], gramOffsets[index + 1]});
+      }
+    }
+
+    if (ranges.isEmpty()) {
+      for (int id = 0; id < names.length; id++) {
+        consumer.accept(id);
+      }
+      return;
+    }
+
+    ranges.sort((a, b) -> Integer.compare(a[1] - a[0], b[1] - b[0]));
+    int[] shortest = ranges.get(0);
+    candidates: for (int i = shortest[0]; i < shortest[1]; i++) {
+      int id = postings[i];
+      for (int r = 1; r < ranges.size(); r++) {
+        int[] range = ranges.get(r);
+        if (Arrays.binarySearch(postings, range[0], range[1], id) < 0) {
+          continue candidates;
+        }
+      }
+      consumer.accept(id);
+    }
+  }
+
+  private int lowerBound(String prefix) {
+    int low = 0;
+    int high = names.length;
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      if (names[middle].compareTo(prefix) < 0) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+    return low;
+  }
+
+  private static String normalize(String name) {
+    return name.toLowerCase(Locale.ROOT);
+  }
+
+  private static int gram(String value, int index) {
+    long gram = ((long) value.charAt(index) << 32) | ((long) value.charAt(index + 1) << 16)
+        | value.charAt(index + 2);
+    gram *= 0x9e3779b97f4a7c15L;
+    return (int) (gram >>> 32);
+  }
+
+  private static Pattern globPattern(String glob) {
+    StringBuilder regex = new StringBuilder();
+    StringBuilder literal = new StringBuilder();
+    for (char c : glob.toCharArray()) {
+      if (c == '*' || c == '?') {
+        if (literal.length() > 0) {
+          regex.append(Pattern.quote(literal.toString()));
+          literal.setLength(0);
+        }
+        regex.append(c == '*' ? ".*" : ".");
+      } else {
+        literal.append(c);
+      }
+    }
+    if (literal.length() > 0) {
+      regex.append(Pattern.quote(literal.toString()));
+    }
+    return Pattern.compile(regex.toString(), Pattern.DOTALL);
+  }
+
+  private static List<String> globLiterals(String glob) {
+    List<String> literals = new ArrayList<>();
+    for (String literal : glob.split("[*?]")) {
+      if (literal.length() >= GRAM) {
+        literals.add(literal);
+      }
+    }
+    return literals;
+  }
+
+  public void write(Path path, long cacheFingerprint) throws IOException {
+    try (DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(
+        new GZIPOutputStream(Files.newOutputStream(path, StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE), 1 << 16)))) {
+      dos.writeInt(MAGIC);
+      dos.writeInt(VERSION);
+      dos.writeLong(cacheFingerprint);
+      table.write(dos);
+      dos.writeInt(names.length);
+      for (int id = 0; id < names.length; id++) {
+        dos.writeUTF(names[id]);
+        dos.writeInt(entryOffsets[id + 1] - entryOffsets[id]);
+        for (int i = entryOffsets[id]; i < entryOffsets[id + 1]; i++) {
+          dos.writeInt(entries[i]);
+        }
+      }
+      dos.writeInt(gramKeys.length);
+      for (int i = 0; i < gramKeys.length; i++) {
+        dos.writeInt(gramKeys[i]);
+        dos.writeInt(gramOffsets[i + 1] - gramOffsets[i]);
+        for (int p = gramOffsets[i]; p < gramOffsets[i + 1]; p++) {
+          dos.writeInt(postings[p]);
+        }
+      }
+    }
+  }
+
+  /**
+   * @return null when the file is missing or was written for another cache file
+   */
+  public static NameIndex read(Path path, long cacheFingerprint) throws IOException {
+    if (!Files.exists(path)) {
+      return null;
+    }
+
+    try (DataInputStream dis = new DataInputStream(new BufferedInputStream(
+        new GZIPInputStream(Files.newInputStream(path, StandardOpenOption.READ), 1 << 16)))) {
+      if (dis.readInt() != MAGIC || dis.readInt() != VERSION
+          || dis.readLong() != cacheFingerprint) {
+        return null;
+      }
+
+      PathTable table = PathTable.read(dis);
+      int nameCount = dis.readInt();
+      String[] names = new String[nameCount];
+      int[] entryOffsets = new int[nameCount + 1];
+      int[] entries = new int[table.size()];
+      for (int id = 0; id < nameCount; id++) {
+        names[id] = dis.readUTF();
+        int count = dis.readInt();
+        if (entryOffsets[id] + count > entries.length) {
+          throw new IOException("Corrupt name index " + path);
+        }
+        for (int i = 0; i < count; i++) {
+          int entry = dis.readInt();
+          if (entry < 0 || entry >= table.size()) {
+            throw new IOException("Corrupt name index " + path);
+          }
+          entries[entryOffsets[id] + i] = entry;
+        }
+        entryOffsets[id + 1] = entryOffsets[id] + count;
+      }
+
+      int keyCount = dis.readInt();
+      int[] gramKeys = new int[keyCount];
+      int[] gramOffsets = new int[keyCount + 1];
+      int[] postings = new int[16];
+      for (int i = 0; i < keyCount; i++) {
+        gramKeys[i] = dis.readInt();
+        int count = dis.readInt();
+        int offset = gramOffsets[i];
+        if (offset + count > postings.length) {
+          postings = Arrays.copyOf(postings, Math.max(postings.length * 2, offset + count));
+        }
+        for (int p = 0; p < count; p++) {
+          postings[offset + p] = dis.readInt();
+        }
+        gramOffsets[i + 1] = offset + count;
+      }
+
+      return new NameIndex(names, entryOffsets, Arrays.copyOf(entries, entryOffsets[nameCount]),
+          table, gramKeys, gramOffsets, Arrays.copyOf(postings, gramOffsets[keyCount]));
+    }
+  }
+
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright 2021 Voyta Krizek, https://github.com/NewTownData
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.newtowndata.disk.core.index;
+
+import com.newtowndata.disk.core.compact.NamePool;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+
+/**
+ * Entries of a side index stored as parent id plus name, so an index neither holds nor writes the
+ * full path of every entry. Names are kept once in a {@link NamePool}. Roots, and entries whose
+ * path is not their parent's path joined with their name, carry their full path as their name.
+ * Paths are joined like {@code NodeGraph} joins them, only for the entries asked for.
+ */
+final class PathTable {
+
+  static final int NO_PARENT = -1;
+
+  private static final String SEPARATOR = FileSystems.getDefault().getSeparator();
+  private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+  private static final long FNV_PRIME = 0x100000001b3L;
+
+  private final NamePool names;
+  private int[] parents;
+  private int[] nameIds;
+  private int size;
+
+  PathTable() {
+    this(new NamePool(), new int[64], new int[64], 0);
+  }
+
+  private PathTable(NamePool names, int[] parents, int[] nameIds, int size) {
+    this.names = names;
+    this.parents = parents;
+    this.nameIds = nameIds;
+    this.size = size;
+  }
+
+  /**
+   * Adds an entry below {@code parent}, which is {@link #NO_PARENT} for a root, and returns its id.
+   */
+  int add(int parent, String parentPath, String path, String name) {
+    if (parent == NO_PARENT || !joins(parentPath, path, name)) {
+      return add(NO_PARENT, path);
+    }
+    return add(parent, name);
+  }
+
+  private int add(int parent, String name) {
+    if (size == parents.length) {
+      parents = Arrays.copyOf(parents, size * 2);
+      nameIds = Arrays.copyOf(nameIds, size * 2);
+    }
+    parents[size] = parent;
+    nameIds[size] = names.add(name);
+    return size++;
+  }
+
+  PathTable freeze() {
+    names.freeze();
+    parents = Arrays.copyOf(parents, size);
+    nameIds = Arrays.copyOf(nameIds, size);
+    return this;
+  }
+
+  int size() {
+    return size;
+  }
+
+  String path(int id) {
+    if (parents[id] == NO_PARENT) {
+      return names.get(nameIds[id]);
+    }
+
+    Deque<String> segments = new ArrayDeque<>();
+    int current = id;
+    while (parents[current] != NO_PARENT) {
+      segments.push(names.get(nameIds[current]));
+      current = parents[current];
+    }
+
+    String root = names.get(nameIds[current]);
+    StringBuilder sb = new StringBuilder(root);
+    // names never contain the separator, only a root such as "/" can end with it
+    boolean open = root.isEmpty() || root.endsWith(SEPARATOR);
+    for (String segment : segments) {
+      if (!open) {
+        sb.append(SEPARATOR);
+      }
+      sb.append(segment);
+      open = false;
+    }
+    return sb.toString();
+  }
+
+  /**
+   * 64-bit hashes of the paths of all entries, equal to {@link #hash(String)} of {@link #path(int)}
+   * but computed from the parent's hash without joining any path.
+   */
+  long[] hashes() {
+    long[] hashes = new long[size];
+    boolean[] open = new boolean[size];
+    for (int id = 0; id < size; id++) {
+      String name = names.get(nameIds[id]);
+      int parent = parents[id];
+      long hash = FNV_OFFSET;
+      if (parent != NO_PARENT) {
+        hash = hashes[parent];
+        if (!open[parent]) {
+          hash = hash(hash, SEPARATOR);
+        }
+      }
+      hashes[id] = hash(hash, name);
+      open[id] = name.isEmpty() || name.endsWith(SEPARATOR);
+    }
+    return hashes;
+  }
+
+  /** FNV-1a hash over the chars of {@code path}. */
+  static long hash(String path) {
+    return hash(FNV_OFFSET, path);
+  }
+
+  private static long hash(long hash, String value) {
+    for (int i = 0; i < value.length(); i++) {
+      hash = (hash ^ value.charAt(i)) * FNV_PRIME;
+    }
+    return hash;
+  }
+
+  private static boolean joins(String parentPath, String path, String name) {
+    if (!path.startsWith(parentPath) || !path.endsWith(name)) {
+      return false;
+    }
+    int gap = path.length() - parentPath.length() - name.length();
+    if (parentPath.isEmpty() || parentPath.endsWith(SEPARATOR)) {
+      return gap == 0;
+    }
+    return gap == SEPARATOR.length() && path.startsWith(SEPARATOR, parentPath.length());
+  }
+
+  void write(DataOutputStream dos) throws IOException {
+    dos.writeInt(names.size());
+    for (int i = 0; i < names.size(); i++) {
+      dos.writeUTF(names.get(i));
+    }
+    dos.writeInt(size);
+    for (int id = 0; id < size; id++) {
+      dos.writeInt(parents[id]);
+      dos.writeInt(nameIds[id]);
+    }
+  }
+
+  static PathTable read(DataInputStream dis) throws IOException {
+    NamePool names = new NamePool();
+    int nameCount = dis.readInt();
+    for (int i = 0; i < nameCount; i++) {
+      if (names.add(dis.readUTF()) != i) {
+        throw new IOException("Duplicate name in path table");
+      }
+    }
+    names.freeze();
+
+    int size = dis.readInt();
+    int[] parents = new int[size];
+    int[] nameIds = new int[size];
+    for (int id = 0; id < size; id++) {
+      parents[id] = dis.readInt();
+      nameIds[id] = dis.readInt();
+      if (parents[id] >= id || nameIds[id] < 0 || nameIds[id] >= nameCount) {
+        throw new IOException("Corrupt path table entry " + id);
+      }
+    }
+    return new PathTable(names, parents, nameIds, size);
+  }
+
+}
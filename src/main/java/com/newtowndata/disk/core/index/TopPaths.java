@@ -0,0 +1,140 @@
+/*
+ * Copyright 2021 Voyta Krizek, https://github.com/NewTownData
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.newtowndata.disk.core.index;
+
+import com.newtowndata.disk.core.PathConstants;
+import com.newtowndata.disk.core.TopN;
+import com.newtowndata.disk.core.entity.PathGraph;
+import com.newtowndata.disk.core.entity.PathInfo;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The largest files, the largest directories by aggregate size and the most recently modified
+ * large files of a graph. Built with bounded heaps in one pass over the rolled-up graph and stored
+ * in a small file next to the cache, so serving it never walks the tree.
+ */
+public record TopPaths(int count, long recentMinSize, List<Entry> largestFiles,
+    List<Entry> largestDirectories, List<Entry> recentLargeFiles) {
+
+  public static final int MAGIC = 0x44415450;
+  public static final int VERSION = 1;
+
+  private static final Comparator<Entry> BY_SIZE =
+      Comparator.comparingLong(Entry::size).reversed().thenComparing(Entry::path);
+  private static final Comparator<Entry> BY_TIMESTAMP =
+      Comparator.comparingLong(Entry::timestamp).reversed().thenComparing(Entry::path);
+
+  public record Entry(String path, String fileType, long size, long timestamp) {
+
+  }
+
+  public static TopPaths build(PathGraph pathGraph, int count, long recentMinSize) {
+    TopN<Entry> files = new TopN<>(count, BY_SIZE);
+    TopN<Entry> directories = new TopN<>(count, BY_SIZE);
+    TopN<Entry> recent = new TopN<>(count, BY_TIMESTAMP);
+    for (Map.Entry<String, PathInfo> entry : pathGraph.pathInfos().entrySet()) {
+      PathInfo pathInfo = entry.getValue();
+      switch (pathInfo.fileType()) {
+        case PathConstants.FILE_TYPE_FILE -> {
+          Entry file = new Entry(entry.getKey(), pathInfo.fileType(), pathInfo.size(),
+              pathInfo.timestamp());
+          files.add(file);
+          if (pathInfo.size() >= recentMinSize) {
+            recent.add(file);
+          }
+        }
+        case PathConstants.FILE_TYPE_DIRECTORY -> directories.add(new Entry(entry.getKey(),
+            pathInfo.fileType(), pathInfo.totals().size(), pathInfo.timestamp()));
+        default -> {
+          // links and unreadable entries are not ranked
+        }
+      }
+    }
+    return new TopPaths(count, recentMinSize, files.toList(), directories.toList(),
+        recent.toList());
+  }
+
+  /**
+   * Writes the lists together with a fingerprint of the cache file they were built for.
+   */
+  public void write(Path path, long cacheFingerprint) throws IOException {
+    try (DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(
+        Files.newOutputStream(path, StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)))) {
+      dos.writeInt(MAGIC);
+      dos.writeInt(VERSION);
+      dos.writeLong(cacheFingerprint);
+      dos.writeInt(count);
+      dos.writeLong(recentMinSize);
+      writeEntries(dos, largestFiles);
+      writeEntries(dos, largestDirectories);
+      writeEntries(dos, recentLargeFiles);
+    }
+  }
+
+  /**
+   * Reads the lists if the file exists and was written for the same cache file and settings.
+   *
+   * @return null when the file is missing or stale
+   */
+  public static TopPaths read(Path path, long cacheFingerprint, int count, long recentMinSize)
+      throws IOException {
+    if (!Files.exists(path)) {
+      return null;
+    }
+
+    try (DataInputStream dis = new DataInputStream(new BufferedInputStream(
+        Files.newInputStream(path, StandardOpenOption.READ)))) {
+      if (dis.readInt() != MAGIC || dis.readInt() != VERSION
+          || dis.readLong() != cacheFingerprint || dis.readInt() != count
+          || dis.readLong() != recentMinSize) {
+        return null;
+      }
+      return new TopPaths(count, recentMinSize, readEntries(dis), readEntries(dis),
+          readEntries(dis));
+    }
+  }
+
+  private static void writeEntries(DataOutputStream dos, List<Entry> entries)
+      throws IOException {
+    dos.writeInt(entries.size());
+    for (Entry entry : entries) {
+      dos.writeUTF(entry.path());
+      dos.writeUTF(entry.fileType());
+      dos.writeLong(entry.size());
+      dos.writeLong(entry.timestamp());
+    }
+  }
+
+  private static List<Entry> readEntries(DataInputStream dis) throws IOException {
+    int size = dis.readInt();
+    List<Entry> entries = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      entries.add(new Entry(dis.readUTF(), dis.readUTF(), dis.readLong(), dis.readLong()));
+    }
+    return entries;
+  }
+
+}
@@ -0,0 +1,33 @@
+/*
+ * Copyright 2021 Voyta Krizek, https://github.com/NewTownData
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.newtowndata.disk.core.treemap;
+
+import java.util.List;
+
+/**
+ * Treemap of a directory in a {@code width} x {@code height} viewport. Tiles are listed parents
+ * first, every tile nested in the tile of its directory.
+ */
+public record Treemap(String path, long size, int depth, double width, double height,
+    List<Tile> tiles) {
+
+  /**
+   * One rectangle of the treemap. An {@code other} tile stands for the {@code count} entries of
+   * its directory too small to be drawn on their own; its path is the directory.
+   */
+  public record Tile(String path, String name, String fileType, long size, int depth,
+      boolean other, int count, double x, double y, double width, double height) {
+  }
+
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright 2021 Voyta Krizek, https://github.com/NewTownData
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.newtowndata.disk.core.treemap;
+
+import com.newtowndata.disk.core.PathConstants;
+import com.newtowndata.disk.core.TopN;
+import com.newtowndata.disk.core.entity.PathGraph;
+import com.newtowndata.disk.core.entity.PathInfo;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Squarified treemap layout (Bruls, Huizing and van Wijk) over the aggregate sizes of the graph.
+ * Only the directories down to the requested depth are visited, and of every directory only the
+ * children large enough to cover {@code minArea} are selected with a bounded heap, so the cost
+ * depends on the viewport rather than on the number of descendants. The remaining children of a
+ * directory are merged into one "other" tile.
+ */
+public final class TreemapLayout {
+
+  /** Space left around the children of a directory so that nested tiles stay distinguishable. */
+  static final double PADDING = 1.0;
+
+  /** Upper bound on the tiles of one layout, whatever the viewport and minimum area. */
+  static final int MAX_TILES = 20_000;
+
+  private static final Comparator<Map.Entry<String, PathInfo>> LARGEST_FIRST =
+      Comparator.comparingLong((Map.Entry<String, PathInfo> entry) -> entry.getValue().totals()
+          .size()).reversed().thenComparing(Map.Entry::getKey);
+
+  private TreemapLayout() {}
+
+  /**
+   * Lays out {@code path}, or all roots when it is null, down to {@code depth} levels.
+   */
+  public static Treemap layout(PathGraph graph, String path, int depth, double width,
+      double height, double minArea) {
+    List<String> top;
+    long size;
+    if (path == null) {
+      top = graph.roots();
+      size = 0L;
+      for (String root : top) {
+        size += graph.pathInfos().get(root).totals().size();
+      }
+    } else {
+      PathInfo pathInfo = graph.pathInfos().get(path);
+      if (pathInfo == null) {
+        throw new IllegalArgumentException("Unknown path " + path);
+      }
+      top = pathInfo.children();
+      size = pathInfo.totals().size();
+    }
+
+    List<Treemap.Tile> tiles = new ArrayList<>();
+    Deque<Frame> queue = new ArrayDeque<>();
+    queue.add(new Frame(path, top, size, 1, 0.0, 0.0, width, height));
+    while (!queue.isEmpty()) {
+      Frame frame = queue.poll();
+      for (Treemap.Tile tile : layoutChildren(graph, frame, minArea, MAX_TILES - tiles.size())) {
+        tiles.add(tile);
+        if (tile.depth() < depth && !tile.other() && tiles.size() < MAX_TILES
+            && PathConstants.FILE_TYPE_DIRECTORY.equals(tile.fileType())
+            && tile.width() > 2 * PADDING && tile.height() > 2 * PADDING) {
+          PathInfo pathInfo = graph.pathInfos().get(tile.path());
+          queue.add(new Frame(tile.path(), pathInfo.children(), tile.size(), tile.depth() + 1,
+              tile.x() + PADDING, tile.y() + PADDING, tile.width() - 2 * PADDING,
+              tile.height() - 2 * PADDING));
+        }
+      }
+    }
+    return new Treemap(path, size, depth, width, height, tiles);
+  }
+
+  private static List<Treemap.Tile> layoutChildren(PathGraph graph, Frame frame,
+      double minArea, int budget) {
+    double area = frame.width * frame.height;
+    if (frame.size <= 0L || area <= 0.0 || budget <= 0) {
+      return List.of();
+    }
+
+    // every selected tile covers at least minArea, so no more than area / minArea fit; one tile
+    // of the budget is kept for other
+    int limit = (int) Math.min(budget - 1, Math.floor(area / minArea));
+    double scale = area / frame.size;
+    TopN<Map.Entry<String, PathInfo>> topN = new TopN<>(limit, LARGEST_FIRST);
+    for (String child : frame.children) {
+      PathInfo childInfo = graph.pathInfos().get(child);
+      if (childInfo != null && childInfo.totals().size() * scale >= minArea) {
+        topN.add(Map.entry(child, childInfo));
+      }
+    }
+
+    List<Item> items = new ArrayList<>();
+    long selectedSize = 0L;
+    for (Map.Entry<String, PathInfo> entry : topN.toList()) {
+      items.add(new Item(entry.getKey(), entry.getValue(), entry.getValue().totals().size()));
+      selectedSize += entry.getValue().totals().size();
+    }
+    int otherCount = frame.children.size() - items.size();
+    long otherSize = frame.size - selectedSize;
+    if (otherSize > 0L && otherCount > 0) {
+      items.add(new Item(frame.path, null, otherSize));
+    }
+    items.sort(Comparator.comparingLong((Item item) -> item.size).reversed());
+    if (otherCount == 0 && selectedSize > 0L) {
+      // the own size of the directory is not drawn, its children fill it
+      scale = area / selectedSize;
+    }
+
+    List<Treemap.Tile> tiles = new ArrayList<>(items.size());
+    squarify(items, scale, frame, (item, x, y, width, height) -> tiles.add(item.pathInfo == null
+        ? new Treemap.Tile(item.path, "(other)", null, item.size, frame.depth, true, otherCount,
+            x, y, width, height)
+        : new Treemap.Tile(item.path, item.pathInfo.name(), item.pathInfo.fileType(), item.size,
+            frame.depth, false, 1, x, y, width, height)));
+    return tiles;
+  }
+
+  /**
+   * Fills the frame with rows of items along its shorter side, adding items to a row for as long
+   * as that does not make the worst aspect ratio of the row worse. Items are sorted largest first.
+   */
+  private static void squarify(List<Item> items, double scale, Frame frame, Placement placement) {
+    double x = frame.x;
+    double y = frame.y;
+    double width = frame.width;
+    double height = frame.height;
+    int start = 0;
+    while (start < items.size()) {
+      double side = Math.min(width, height);
+      int end = start + 1;
+      double rowArea = items.get(start).size * scale;
+      double worst = worst(rowArea, rowArea, rowArea, side);
+      while (end < items.size()) {
+        double area = items.get(end).size * scale;
+        double next = worst(rowArea + area, items.get(start).size * scale, area, side);
+        if (next > worst) {
+          break;
+        }
+        worst = next;
+        rowArea += area;
+        end++;
+      }
+
+      // the last row takes up whatever is left, so rounding never leaves a gap
+      boolean last = end == items.size();
+      if (width >= height) {
+        double thickness = last ? width : rowArea / side;
+        double offset = y;
+        for (int i = start; i < end; i++) {
+          double length = i == end - 1 ? y + height - offset
+              : items.get(i).size * scale / rowArea * height;
+          placement.place(items.get(i), x, offset, thickness, length);
+          offset += length;
+        }
+        x += thickness;
+        width -= thickness;
+      } else {
+        double thickness = last ? height : rowArea / side;
+        double offset = x;
+        for (int i = start; i < end; i++) {
+          double length = i == end - 1 ? x + width - offset
+              : items.get(i).size * scale / rowArea * width;
+          placement.place(items.get(i), offset, y, length, thickness);
+          offset += length;
+        }
+        y += thickness;
+        height -= thickness;
+      }
+      start = end;
+    }
+  }
+
+  /** Worst aspect ratio of a row of the given total, largest and smallest area along side. */
+  private static double worst(double rowArea, double largest, double smallest, double side) {
+    double sideSquared = side * side;
+    double rowSquared = rowArea * rowArea;
+    return Math.max(sideSquared * largest / rowSquared, rowSquared / (sideSquared * smallest));
+  }
+
+  @FunctionalInterface
+  private interface Placement {
+
+    void place(Item item, double x, double y, double width, double height);
+  }
+
+  private record Item(String path, PathInfo pathInfo, long size) {
+  }
+
+  private record Frame(String path, List<String> children, long size, int depth, double x,
+      double y, double width, double height) {
+  }
+
+}
@@ -1,48 +0,0 @@
-/*
- * Copyright 2021 Voyta Krizek, https://github.com/NewTownData
- *
- * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
- * in compliance with the License. You may obtain a copy of the License at
- *
- * http://www.apache.org/licenses/LICENSE-2.0
- *
- * Unless required by applicable law or agreed to in writing, software distributed under the License
- * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
- * or implied. See the License for the specific language governing permissions and limitations under
- * the License.
- */
-package com.newtowndata.disk.logic.utils;
-
-import java.util.concurrent.atomic.AtomicReference;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-
-public class InfoThread extends Thread implements AutoCloseable {
-
-	private static final Logger LOG = LoggerFactory.getLogger(InfoThread.class);
-
-	private final AtomicReference<String> lastDirectory = new AtomicReference<>();
-
-	public InfoThread() {}
-
-	public void setLastPath(String dir) {
-		lastDirectory.set(dir);
-	}
-
-	@Override
-	public void run() {
-		try {
-			while (true) {
-				Thread.sleep(1000);
-				LOG.info("Dir: {}", lastDirectory.get());
-			}
-		} catch (InterruptedException e) {
-			LOG.info("InfoThread stopped.");
-		}
-	}
-
-	@Override
-	public void close() {
-		this.interrupt();
-	}
-}
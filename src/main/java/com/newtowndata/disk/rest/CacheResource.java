@@ -13,10 +13,22 @@
  */
 package com.newtowndata.disk.rest;
 
+import com.newtowndata.disk.core.entity.PathGraph;
+import com.newtowndata.disk.core.entity.PathInfo;
 import com.newtowndata.disk.service.CacheService;
+import com.newtowndata.disk.service.ScanStatus;
+import com.newtowndata.disk.service.UnknownPathException;
+import java.io.IOException;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.util.UriComponentsBuilder;
 
 @Controller
 @RequestMapping("/cache")
@@ -34,4 +46,41 @@ public class CacheResource {
 		return "redirect:/";
 	}
 
+	@GetMapping("/rescan")
+	public String rescan() {
+		cacheService.rescan();
+		return "redirect:/";
+	}
+
+	@GetMapping("/status")
+	@ResponseBody
+	public ScanStatus status() {
+		return cacheService.getScanStatus();
+	}
+
+	@GetMapping("/refresh")
+	public String refresh(@RequestParam("path") String requestedPath) throws IOException {
+		String path;
+		try {
+			path = Path.of(requestedPath).normalize().toString();
+		} catch (InvalidPathException e) {
+			throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Unknown path " + requestedPath);
+		}
+		try {
+			cacheService.refresh(path);
+		} catch (UnknownPathException e) {
+			throw new ResponseStatusException(HttpStatus.NOT_FOUND, e.getMessage());
+		} catch (IllegalStateException e) {
+			throw new ResponseStatusException(HttpStatus.CONFLICT, e.getMessage());
+		}
+
+		PathGraph graph = cacheService.getPathGraph();
+		PathInfo pathInfo = graph.pathInfos().get(path);
+		if (graph.roots().contains(path) || pathInfo == null || pathInfo.parentPath() == null) {
+			return "redirect:/";
+		}
+		return "redirect:" + UriComponentsBuilder.fromPath("/")
+				.queryParam("path", pathInfo.parentPath()).encode().toUriString();
+	}
+
 }
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2021 Voyta Krizek, https://github.com/NewTownData
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.newtowndata.disk.rest;
+
+import com.newtowndata.disk.rest.entity.DuplicatesEntity;
+import com.newtowndata.disk.service.DuplicateService;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+@RestController
+@RequestMapping("/api/duplicates")
+public class DuplicateResource {
+
+  private final DuplicateService duplicateService;
+
+  public DuplicateResource(DuplicateService duplicateService) {
+    this.duplicateService = duplicateService;
+  }
+
+  @GetMapping
+  public DuplicatesEntity getReport(@RequestParam(defaultValue = "50") int limit) {
+    if (limit < 1 || limit > ListingResource.MAX_LIMIT) {
+      throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+          "Expected 1 <= limit <= " + ListingResource.MAX_LIMIT);
+    }
+    return new DuplicatesEntity(duplicateService.isRunning(),
+        duplicateService.getReport().map(report -> report.limit(limit)).orElse(null));
+  }
+
+  @PostMapping
+  public DuplicatesEntity find(@RequestParam(defaultValue = "1048576") long minSize) {
+    duplicateService.find(minSize);
+    return getReport(50);
+  }
+
+}
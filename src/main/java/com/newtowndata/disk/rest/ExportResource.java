@@ -0,0 +1,99 @@
+/*
+ * Copyright 2021 Voyta Krizek, https://github.com/NewTownData
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.newtowndata.disk.rest;
+
+import com.newtowndata.disk.core.entity.PathGraph;
+import com.newtowndata.disk.core.export.ExportFormat;
+import com.newtowndata.disk.core.export.ExportWriter;
+import com.newtowndata.disk.core.export.TreeExporter;
+import com.newtowndata.disk.service.CacheService;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Locale;
+import javax.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+@RestController
+@RequestMapping("/api/export")
+public class ExportResource {
+
+  private final CacheService cacheService;
+
+  public ExportResource(CacheService cacheService) {
+    this.cacheService = cacheService;
+  }
+
+  /**
+   * Streams the current graph, or with {@code source=cache} the cache file, straight into the
+   * response. Rows are written as they are visited, so the response is sent in chunks.
+   */
+  @GetMapping
+  public void export(@RequestParam(defaultValue = "ndjson") String format,
+      @RequestParam(required = false) String path,
+      @RequestParam(defaultValue = "0") long minSize,
+      @RequestParam(defaultValue = "graph") String source,
+      HttpServletResponse response) throws IOException {
+    ExportFormat exportFormat = parseFormat(format);
+    boolean fromCache = switch (source.toLowerCase(Locale.ROOT)) {
+      case "graph" -> false;
+      case "cache" -> true;
+      default -> throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+          "Unknown source " + source);
+    };
+
+    PathGraph graph = fromCache ? null : cacheService.getPathGraph();
+    if (graph != null && path != null && !graph.pathInfos().containsKey(path)) {
+      throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Unknown path " + path);
+    }
+    if (fromCache && !Files.exists(cacheService.getCachePath())) {
+      throw new ResponseStatusException(HttpStatus.NOT_FOUND, "No cache file");
+    }
+
+    response.setContentType(exportFormat.contentType());
+    response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+    response.setHeader(HttpHeaders.CONTENT_DISPOSITION,
+        "attachment; filename=\"export." + exportFormat.extension() + "\"");
+    ExportWriter writer = new ExportWriter(new BufferedWriter(
+        new OutputStreamWriter(response.getOutputStream(), StandardCharsets.UTF_8), 1 << 16),
+        exportFormat);
+    if (fromCache) {
+      // nothing has been flushed to the response when the path is not found in the cache file
+      if (!TreeExporter.export(cacheService.getCachePath(), path, minSize, writer)) {
+        response.reset();
+        throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Unknown path " + path);
+      }
+    } else {
+      TreeExporter.export(graph, path, minSize, writer);
+    }
+    writer.flush();
+  }
+
+  private static ExportFormat parseFormat(String format) {
+    try {
+      return ExportFormat.valueOf(format.toUpperCase(Locale.ROOT));
+    } catch (IllegalArgumentException e) {
+      throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Unknown format " + format);
+    }
+  }
+
+}
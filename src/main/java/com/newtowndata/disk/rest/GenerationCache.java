@@ -0,0 +1,55 @@
+/*
+ * Copyright 2021 Voyta Krizek, https://github.com/NewTownData
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.newtowndata.disk.rest;
+
+import com.newtowndata.disk.core.LruCache;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+/**
+ * Results computed from one graph generation, dropped as soon as a request sees a newer one. A late
+ * request for an older generation computes its result without caching it.
+ */
+class GenerationCache<K, V> {
+
+  private final LruCache<K, V> cache;
+  private long generation;
+
+  GenerationCache(long capacity, ToLongFunction<? super V> weigher) {
+    this.cache = new LruCache<>(capacity, weigher);
+  }
+
+  V get(long generation, K key, Function<? super K, ? extends V> loader) {
+    synchronized (this) {
+      if (generation > this.generation) {
+        cache.clear();
+        this.generation = generation;
+      } else if (generation == this.generation) {
+        V value = cache.getIfPresent(key);
+        if (value != null) {
+          return value;
+        }
+      }
+    }
+
+    V value = loader.apply(key);
+    synchronized (this) {
+      if (generation == this.generation) {
+        cache.put(key, value);
+      }
+    }
+    return value;
+  }
+
+}
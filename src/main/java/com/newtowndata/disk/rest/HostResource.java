@@ -0,0 +1,66 @@
+/*
+ * Copyright 2021 Voyta Krizek, https://github.com/NewTownData
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.newtowndata.disk.rest;
+
+import com.newtowndata.disk.service.HostService;
+import com.newtowndata.disk.service.HostStatus;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+@RestController
+@RequestMapping("/api/hosts")
+public class HostResource {
+
+  private final HostService hostService;
+
+  public HostResource(HostService hostService) {
+    this.hostService = hostService;
+  }
+
+  @GetMapping
+  public List<HostStatus> hosts() {
+    checkEnabled();
+    return hostService.getHosts();
+  }
+
+  /**
+   * Accepts a snapshot pushed by an agent. Answers 409 when a delta does not match the last
+   * snapshot of its host, the agent then pushes a full snapshot.
+   */
+  @PostMapping("/snapshot")
+  public HostStatus snapshot(InputStream body) {
+    checkEnabled();
+    try {
+      return hostService.receive(body);
+    } catch (IllegalStateException e) {
+      throw new ResponseStatusException(HttpStatus.CONFLICT, e.getMessage());
+    } catch (IllegalArgumentException | IOException e) {
+      throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+    }
+  }
+
+  private void checkEnabled() {
+    if (!hostService.isEnabled()) {
+      throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Aggregator is not enabled");
+    }
+  }
+
+}
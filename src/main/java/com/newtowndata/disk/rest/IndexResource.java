@@ -13,21 +13,30 @@
  */
 package com.newtowndata.disk.rest;
 
-import com.newtowndata.disk.core.PathConstants;
 import com.newtowndata.disk.core.entity.PathGraph;
 import com.newtowndata.disk.core.entity.PathInfo;
+import com.newtowndata.disk.core.index.ExtensionHistogram;
 import com.newtowndata.disk.logic.utils.FileUtils;
+import com.newtowndata.disk.rest.entity.ExtensionEntity;
 import com.newtowndata.disk.rest.entity.PathEntity;
 import com.newtowndata.disk.service.CacheService;
+import com.newtowndata.disk.service.ScanStatus;
+import io.micrometer.core.annotation.Timed;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.server.ResponseStatusException;
 
 @Controller
 @RequestMapping("/")
@@ -36,33 +45,63 @@ public class IndexResource {
   private static final Logger LOG = LoggerFactory.getLogger(IndexResource.class);
 
   private final CacheService cacheService;
+  private final GenerationCache<ListingKey, Listing> listings;
 
-  public IndexResource(CacheService cacheService) {
+  @Autowired
+  public IndexResource(CacheService cacheService,
+      @Value("${disk-analysis.listing.cache-entries:100000}") long cacheEntries) {
     this.cacheService = cacheService;
+    this.listings = new GenerationCache<>(cacheEntries, listing -> listing.list().size() + 1L);
   }
 
   @GetMapping
+  @Timed(value = "disk.listing", description = "Time to build a directory listing",
+      percentiles = {0.5, 0.99})
   public String getIndex(@RequestParam(required = false) String path,
-      @RequestParam(required = false) String action, Map<String, Object> model) {
-    PathGraph graph = cacheService.getPathGraph();
+      @RequestParam(required = false) String action, Map<String, Object> model,
+      WebRequest request) {
+    // read before the graph, see CacheService.getGeneration()
+    long generation = cacheService.getGeneration();
+    ScanStatus scan = cacheService.getScanStatus();
+    if (request != null && request.checkNotModified(etag(generation, path, scan.isRunning()))) {
+      return null;
+    }
 
     LOG.info("Listing {}", path);
 
-    List<PathResult> results;
-    if (path == null) {
-      results = list(graph, graph.roots());
-      path = "<root>";
-      model.put("parent", null);
-    } else {
-      results = list(graph, path);
-      model.put("parent", graph.pathInfos().get(path).parentPath());
-    }
+    Listing listing =
+        listings.get(generation, new ListingKey(generation, path), this::createListing);
+    model.put("path", path == null ? "<root>" : path);
+    model.put("parent", listing.parent());
+    model.put("extensions", listing.extensions());
+    model.put("scan", scan);
+    model.put("list", listing.list());
+    return "index";
+  }
 
-    model.put("path", path);
+  /**
+   * Weak validator of a listing: the graph generation and the path, plus whether the scan banner is
+   * shown. Weak since the same listing is served with and without compression.
+   */
+  static String etag(long generation, String path, boolean scanning) {
+    return "W/\"" + Long.toHexString(generation) + "-"
+        + Integer.toHexString(Objects.hashCode(path)) + (scanning ? "-scan" : "") + "\"";
+  }
 
-    List<PathEntity> list = convertResults(results);
-    model.put("list", list);
-    return "index";
+  private Listing createListing(ListingKey key) {
+    PathGraph graph = cacheService.getPathGraph();
+    if (key.path() == null) {
+      return new Listing(null, List.of(), convertResults(list(graph, graph.roots())));
+    }
+    PathInfo pathInfo = graph.pathInfos().get(key.path());
+    if (pathInfo == null) {
+      throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Unknown path " + key.path());
+    }
+    // a profile root's parent is outside the graph, link it back to the roots
+    String parent = pathInfo.parentPath() != null
+        && graph.pathInfos().containsKey(pathInfo.parentPath()) ? pathInfo.parentPath() : null;
+    return new Listing(parent, convertHistogram(cacheService.getExtensionIndex().get(key.path())),
+        convertResults(list(graph, key.path())));
   }
 
   private List<PathEntity> convertResults(List<PathResult> results) {
@@ -72,6 +111,25 @@ public class IndexResource {
         result.totalSize, calculatePercentSize(totalSize, result.totalSize))).toList();
   }
 
+  private List<ExtensionEntity> convertHistogram(ExtensionHistogram histogram) {
+    if (histogram == null) {
+      return List.of();
+    }
+
+    long totalBytes = histogram.totalBytes();
+    List<ExtensionEntity> list = new ArrayList<>();
+    for (ExtensionHistogram.Bucket bucket : histogram.buckets()) {
+      list.add(new ExtensionEntity(bucket.extension().isEmpty() ? "(none)" : bucket.extension(),
+          FileUtils.renderFileSize(bucket.bytes()), bucket.count(),
+          calculatePercentSize(totalBytes, bucket.bytes())));
+    }
+    if (histogram.otherCount() > 0L) {
+      list.add(new ExtensionEntity("(other)", FileUtils.renderFileSize(histogram.otherBytes()),
+          histogram.otherCount(), calculatePercentSize(totalBytes, histogram.otherBytes())));
+    }
+    return list;
+  }
+
   private int calculatePercentSize(long total, long current) {
     if (total == 0L) {
       return 0;
@@ -83,7 +141,7 @@ public class IndexResource {
     List<PathResult> results = new ArrayList<>();
     for (String currentPath : currentPaths) {
       PathInfo pathInfo = graph.pathInfos().get(currentPath);
-      results.add(calculateResult(graph, currentPath, pathInfo));
+      results.add(calculateResult(currentPath, pathInfo));
     }
     return results;
   }
@@ -101,33 +159,22 @@ public class IndexResource {
       int percentSize) {
     return new PathEntity(path, pathInfo.fileType(), pathInfo.name(),
         FileUtils.renderFileSize(totalSize), FileUtils.renderTimestamp(pathInfo.timestamp()),
-        percentSize);
+        percentSize, pathInfo.totals().fileCount(),
+        FileUtils.renderFileSize(pathInfo.totals().diskSize()));
   }
 
-  private long calculateTotalSize(PathGraph graph, String path) {
-    return calculateTotalSize(graph, graph.pathInfos().get(path));
+  private PathResult calculateResult(PathGraph graph, String path) {
+    return calculateResult(path, graph.pathInfos().get(path));
   }
 
-  private long calculateTotalSize(PathGraph graph, PathInfo pathInfo) {
-    long size = pathInfo.size();
-    for (String childPath : pathInfo.children()) {
-      size += calculateTotalSize(graph, childPath);
-    }
-    return size;
+  private PathResult calculateResult(String path, PathInfo pathInfo) {
+    return new PathResult(path, pathInfo, pathInfo.totals().size());
   }
 
-  private PathResult calculateResult(PathGraph graph, String path) {
-    return calculateResult(graph, path, graph.pathInfos().get(path));
+  private record ListingKey(long generation, String path) {
   }
 
-  private PathResult calculateResult(PathGraph graph, String path, PathInfo pathInfo) {
-    long size;
-    if (PathConstants.FILE_TYPE_DIRECTORY.equals(pathInfo.fileType())) {
-      size = calculateTotalSize(graph, pathInfo);
-    } else {
-      size = pathInfo.size();
-    }
-    return new PathResult(path, pathInfo, size);
+  private record Listing(String parent, List<ExtensionEntity> extensions, List<PathEntity> list) {
   }
 
   private static class PathResult {
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2021 Voyta Krizek, https://github.com/NewTownData
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.newtowndata.disk.rest;
+
+import com.newtowndata.disk.core.TopN;
+import com.newtowndata.disk.core.entity.PathGraph;
+import com.newtowndata.disk.core.entity.PathInfo;
+import com.newtowndata.disk.core.index.ExtensionHistogram;
+import com.newtowndata.disk.rest.entity.ListingEntity;
+import com.newtowndata.disk.rest.entity.ListingEntryEntity;
+import com.newtowndata.disk.service.CacheService;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.server.ResponseStatusException;
+
+/**
+ * JSON listing of a directory. Only the requested page is selected from the children with a
+ * bounded heap, so large directories are never sorted or rendered as a whole.
+ */
+@RestController
+@RequestMapping("/api")
+public class ListingResource {
+
+  static final int MAX_LIMIT = 1000;
+
+  private final CacheService cacheService;
+
+  public ListingResource(CacheService cacheService) {
+    this.cacheService = cacheService;
+  }
+
+  @GetMapping("/list")
+  public ListingEntity list(@RequestParam(required = false) String path,
+      @RequestParam(defaultValue = "size") String sort,
+      @RequestParam(required = false) String order,
+      @RequestParam(defaultValue = "0") int offset,
+      @RequestParam(defaultValue = "50") int limit, WebRequest request) {
+    if (offset < 0 || limit < 1 || limit > MAX_LIMIT) {
+      throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+          "Expected offset >= 0 and 1 <= limit <= " + MAX_LIMIT);
+    }
+    if (request != null && request.checkNotModified(
+        IndexResource.etag(cacheService.getGeneration(), path, false))) {
+      return null;
+    }
+
+    PathGraph graph = cacheService.getPathGraph();
+    List<String> children;
+    String parent = null;
+    if (path == null) {
+      children = graph.roots();
+    } else {
+      PathInfo pathInfo = graph.pathInfos().get(path);
+      if (pathInfo == null) {
+        throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Unknown path " + path);
+      }
+      children = pathInfo.children();
+      parent = graph.roots().contains(path) ? null : pathInfo.parentPath();
+    }
+
+    Comparator<PathInfo> comparator = parseSort(sort).comparator(parseOrder(order));
+    TopN<Map.Entry<String, PathInfo>> topN =
+        new TopN<>((int) Math.min((long) offset + limit, Integer.MAX_VALUE),
+            Map.Entry.comparingByValue(comparator));
+    for (String child : children) {
+      PathInfo childInfo = graph.pathInfos().get(child);
+      if (childInfo != null) {
+        topN.add(Map.entry(child, childInfo));
+      }
+    }
+
+    List<Map.Entry<String, PathInfo>> selected = topN.toList();
+    List<ListingEntryEntity> entries = selected.subList(Math.min(offset, selected.size()),
+        selected.size()).stream().map(ListingResource::createEntry).toList();
+    Integer nextOffset = offset + limit < children.size() ? offset + limit : null;
+    return new ListingEntity(path, parent, children.size(), offset, limit, nextOffset, entries);
+  }
+
+  @GetMapping("/extensions")
+  public ExtensionHistogram extensions(@RequestParam String path) {
+    ExtensionHistogram histogram = cacheService.getExtensionIndex().get(path);
+    if (histogram == null) {
+      throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Unknown directory " + path);
+    }
+    return histogram;
+  }
+
+  static ListingEntryEntity createEntry(Map.Entry<String, PathInfo> entry) {
+    PathInfo pathInfo = entry.getValue();
+    return new ListingEntryEntity(entry.getKey(), pathInfo.fileType(), pathInfo.name(),
+        pathInfo.totals().size(), pathInfo.totals().diskSize(), pathInfo.timestamp(),
+        pathInfo.totals().fileCount(), pathInfo.totals().directoryCount());
+  }
+
+  private static ListingSort parseSort(String sort) {
+    try {
+      return ListingSort.valueOf(sort.toUpperCase(Locale.ROOT));
+    } catch (IllegalArgumentException e) {
+      throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Unknown sort " + sort);
+    }
+  }
+
+  private static Boolean parseOrder(String order) {
+    if (order == null) {
+      return null;
+    }
+    return switch (order.toLowerCase(Locale.ROOT)) {
+      case "asc" -> Boolean.FALSE;
+      case "desc" -> Boolean.TRUE;
+      default -> throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+          "Unknown order " + order);
+    };
+  }
+
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2021 Voyta Krizek, https://github.com/NewTownData
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.newtowndata.disk.rest;
+
+import com.newtowndata.disk.core.entity.PathInfo;
+import java.util.Comparator;
+
+public enum ListingSort {
+
+  /** Aggregate size, largest first by default. */
+  SIZE(Comparator.comparingLong(pathInfo -> pathInfo.totals().size()), true),
+
+  /** Name, alphabetical by default. */
+  NAME(Comparator.comparing(PathInfo::name), false),
+
+  /** Modification time, newest first by default. */
+  MODIFIED(Comparator.comparingLong(PathInfo::timestamp), true);
+
+  private final Comparator<PathInfo> comparator;
+  private final boolean descending;
+
+  ListingSort(Comparator<PathInfo> comparator, boolean descending) {
+    this.comparator = comparator;
+    this.descending = descending;
+  }
+
+  /**
+   * Order of the listing. Ties are broken by name so that pages do not overlap.
+   *
+   * @param descending overrides the default direction when not null
+   */
+  public Comparator<PathInfo> comparator(Boolean descending) {
+    Comparator<PathInfo> order = comparator;
+    if (descending == null ? this.descending : descending) {
+      order = order.reversed();
+    }
+    return order.thenComparing(PathInfo::name).thenComparing(PathInfo::parentPath,
+        Comparator.nullsFirst(Comparator.naturalOrder()));
+  }
+
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2021 Voyta Krizek, https://github.com/NewTownData
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.newtowndata.disk.rest;
+
+import com.newtowndata.disk.core.TopN;
+import com.newtowndata.disk.core.entity.PathGraph;
+import com.newtowndata.disk.core.entity.PathInfo;
+import com.newtowndata.disk.core.index.SearchMode;
+import com.newtowndata.disk.rest.entity.ListingEntryEntity;
+import com.newtowndata.disk.service.CacheService;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+/**
+ * File name search over the name index, largest matches first.
+ */
+@RestController
+@RequestMapping("/api")
+public class SearchResource {
+
+  private static final Comparator<Map.Entry<String, PathInfo>> BY_SIZE =
+      Comparator.comparing(Map.Entry<String, PathInfo>::getValue,
+          Comparator.comparingLong((PathInfo pathInfo) -> pathInfo.totals().size()).reversed())
+          .thenComparing(Map.Entry::getKey);
+
+  private final CacheService cacheService;
+
+  public SearchResource(CacheService cacheService) {
+    this.cacheService = cacheService;
+  }
+
+  @GetMapping("/search")
+  public List<ListingEntryEntity> search(@RequestParam String q,
+      @RequestParam(defaultValue = "substring") String mode,
+      @RequestParam(defaultValue = "50") int limit) {
+    if (q.isEmpty() || limit < 1 || limit > ListingResource.MAX_LIMIT) {
+      throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+          "Expected a query and 1 <= limit <= " + ListingResource.MAX_LIMIT);
+    }
+    SearchMode searchMode;
+    try {
+      searchMode = SearchMode.valueOf(mode.toUpperCase(Locale.ROOT));
+    } catch (IllegalArgumentException e) {
+      throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Unknown mode " + mode);
+    }
+
+    PathGraph graph = cacheService.getPathGraph();
+    TopN<Map.Entry<String, PathInfo>> topN = new TopN<>(limit, BY_SIZE);
+    cacheService.getNameIndex().search(searchMode, q, path -> {
+      PathInfo pathInfo = graph.pathInfos().get(path);
+      if (pathInfo != null) {
+        topN.add(Map.entry(path, pathInfo));
+      }
+    });
+    return topN.toList().stream().map(ListingResource::createEntry).toList();
+  }
+
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2021 Voyta Krizek, https://github.com/NewTownData
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.newtowndata.disk.rest;
+
+import com.newtowndata.disk.rest.entity.ThrottleEntity;
+import com.newtowndata.disk.service.DeviceLimits;
+import com.newtowndata.disk.service.ScanScheduler;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+@RestController
+@RequestMapping("/api/scan/throttle")
+public class ThrottleResource {
+
+  private final ScanScheduler scanScheduler;
+
+  public ThrottleResource(ScanScheduler scanScheduler) {
+    this.scanScheduler = scanScheduler;
+  }
+
+  @GetMapping
+  public ThrottleEntity getThrottle() {
+    return new ThrottleEntity(scanScheduler.isEnabled(), scanScheduler.getDefaults(),
+        scanScheduler.getDevices());
+  }
+
+  @PostMapping
+  public ThrottleEntity setThrottle(@RequestParam(required = false) String device,
+      @RequestParam(required = false) Integer parallelism,
+      @RequestParam(required = false) Integer statsPerSecond) {
+    if ((parallelism != null && parallelism < 0)
+        || (statsPerSecond != null && statsPerSecond < 0)) {
+      throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Expected limits >= 0");
+    }
+
+    DeviceLimits current = scanScheduler.getLimits(device);
+    scanScheduler.setLimits(device, new DeviceLimits(
+        parallelism == null ? current.parallelism() : parallelism,
+        statsPerSecond == null ? current.statsPerSecond() : statsPerSecond));
+    return getThrottle();
+  }
+
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2021 Voyta Krizek, https://github.com/NewTownData
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.newtowndata.disk.rest;
+
+import com.newtowndata.disk.core.index.TopPaths;
+import com.newtowndata.disk.logic.utils.FileUtils;
+import com.newtowndata.disk.rest.entity.TopEntity;
+import com.newtowndata.disk.service.CacheService;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+/**
+ * Largest files, largest directories and recently modified large files of the whole graph.
+ */
+@Controller
+public class TopResource {
+
+  private final CacheService cacheService;
+
+  public TopResource(CacheService cacheService) {
+    this.cacheService = cacheService;
+  }
+
+  @GetMapping("/top")
+  public String getTop(Map<String, Object> model) {
+    TopPaths topPaths = cacheService.getTopPaths();
+    model.put("count", topPaths.count());
+    model.put("recentMinSize", FileUtils.renderFileSize(topPaths.recentMinSize()));
+    model.put("largestFiles", convert(topPaths.largestFiles()));
+    model.put("largestDirectories", convert(topPaths.largestDirectories()));
+    model.put("recentLargeFiles", convert(topPaths.recentLargeFiles()));
+    return "top";
+  }
+
+  @GetMapping("/api/top")
+  @ResponseBody
+  public TopPaths getTopJson() {
+    return cacheService.getTopPaths();
+  }
+
+  private static List<TopEntity> convert(List<TopPaths.Entry> entries) {
+    return entries.stream().map(entry -> {
+      Path parent = Path.of(entry.path()).getParent();
+      return new TopEntity(entry.path(), parent == null ? null : parent.toString(),
+          entry.fileType(), FileUtils.renderFileSize(entry.size()),
+          FileUtils.renderTimestamp(entry.timestamp()));
+    }).toList();
+  }
+
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2021 Voyta Krizek, https://github.com/NewTownData
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.newtowndata.disk.rest;
+
+import com.newtowndata.disk.core.entity.PathGraph;
+import com.newtowndata.disk.core.treemap.Treemap;
+import com.newtowndata.disk.core.treemap.TreemapLayout;
+import com.newtowndata.disk.service.CacheService;
+import io.micrometer.core.annotation.Timed;
+import java.util.Map;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.server.ResponseStatusException;
+
+/**
+ * Squarified treemap of a directory, computed on the server for the viewport of the client.
+ */
+@Controller
+public class TreemapResource {
+
+  static final int MAX_DEPTH = 8;
+  static final int MAX_VIEWPORT = 8192;
+
+  private final CacheService cacheService;
+  private final GenerationCache<TreemapKey, Treemap> treemaps;
+
+  public TreemapResource(CacheService cacheService,
+      @Value("${disk-analysis.treemap.cache-tiles:100000}") long cacheTiles) {
+    this.cacheService = cacheService;
+    this.treemaps = new GenerationCache<>(cacheTiles, treemap -> treemap.tiles().size() + 1L);
+  }
+
+  @GetMapping("/treemap")
+  public String getTreemap(@RequestParam(required = false) String path,
+      Map<String, Object> model) {
+    PathGraph graph = cacheService.getPathGraph();
+    if (path != null && !graph.pathInfos().containsKey(path)) {
+      throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Unknown path " + path);
+    }
+    // a profile root's parent is outside the graph, link it back to the roots
+    String parent = path == null ? null : graph.pathInfos().get(path).parentPath();
+    model.put("path", path);
+    model.put("parent", parent != null && graph.pathInfos().containsKey(parent) ? parent : null);
+    return "treemap";
+  }
+
+  @GetMapping("/api/treemap")
+  @ResponseBody
+  @Timed(value = "disk.treemap", description = "Time to lay out a treemap",
+      percentiles = {0.5, 0.99})
+  public Treemap getTreemapJson(@RequestParam(required = false) String path,
+      @RequestParam(defaultValue = "3") int depth,
+      @RequestParam(defaultValue = "1024") int width,
+      @RequestParam(defaultValue = "768") int height,
+      @RequestParam(defaultValue = "64") int minArea) {
+    if (depth < 1 || depth > MAX_DEPTH || width < 1 || width > MAX_VIEWPORT || height < 1
+        || height > MAX_VIEWPORT || minArea < 1) {
+      throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Expected 1 <= depth <= "
+          + MAX_DEPTH + ", 1 <= width, height <= " + MAX_VIEWPORT + " and minArea >= 1");
+    }
+
+    // read before the graph, see CacheService.getGeneration()
+    long generation = cacheService.getGeneration();
+    TreemapKey treemapKey = new TreemapKey(generation, path, depth, width, height, minArea);
+    return treemaps.get(generation, treemapKey, key -> {
+      PathGraph graph = cacheService.getPathGraph();
+      if (path != null && !graph.pathInfos().containsKey(path)) {
+        throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Unknown path " + path);
+      }
+      return TreemapLayout.layout(graph, path, depth, width, height, minArea);
+    });
+  }
+
+  private record TreemapKey(long generation, String path, int depth, int width, int height,
+      int minArea) {
+  }
+
+}
@@ -14,6 +14,6 @@
 package com.newtowndata.disk.rest.entity;
 
 public record PathEntity(String path, String fileType, String name, String size, String timestamp,
-        int percentSize) {
+        int percentSize, long fileCount, String diskSize) {
 
 }
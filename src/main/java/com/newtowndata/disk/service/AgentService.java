@@ -0,0 +1,168 @@
+/*
+ * Copyright 2021 Voyta Krizek, https://github.com/NewTownData
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.newtowndata.disk.service;
+
+import com.newtowndata.disk.core.cache.SnapshotFormat;
+import com.newtowndata.disk.core.entity.PathGraph;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+/**
+ * Agent side of the agent mode. Pushes the local graph to an aggregator whenever it changed, as a
+ * delta against the last snapshot the aggregator accepted. When the aggregator lost that snapshot,
+ * it answers 409 and the agent falls back to a full snapshot.
+ */
+@Service
+public class AgentService {
+
+  private static final Logger LOG = LoggerFactory.getLogger(AgentService.class);
+
+  private static final Duration TIMEOUT = Duration.ofMinutes(5);
+
+  private final CacheService cacheService;
+  private final URI endpoint;
+  private final String host;
+  private final HttpClient client;
+
+  private final AtomicBoolean pushing = new AtomicBoolean();
+
+  // written by one push at a time, handed over through pushing
+  private long sequence;
+  private SnapshotFormat.Digests digests;
+  private long pushedGeneration = -1L;
+
+  public AgentService(CacheService cacheService,
+      @Value("${disk-analysis.agent.server:}") String server,
+      @Value("${disk-analysis.agent.host:}") String host) {
+    this.cacheService = cacheService;
+    this.endpoint = server.isBlank() ? null
+        : URI.create(server.replaceAll("/+$", "") + "/api/hosts/snapshot");
+    this.host = host.isBlank() ? localHostName() : host;
+    this.client = endpoint == null ? null
+        : HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(30)).build();
+  }
+
+  /**
+   * Pushes the graph when it changed since the last accepted push. Never blocks the scheduler: while
+   * no graph is loaded it starts the load and pushes once that finished, and the snapshot is sent
+   * asynchronously. A push is skipped while the previous one is still being sent.
+   */
+  @Scheduled(initialDelay = 0L, fixedDelayString = "${disk-analysis.agent.push-interval:300000}")
+  public void push() {
+    if (endpoint == null) {
+      return;
+    }
+    if (cacheService.getLoadedPathGraph().isEmpty()) {
+      cacheService.load().thenRunAsync(this::push);
+      return;
+    }
+    if (!pushing.compareAndSet(false, true)) {
+      return;
+    }
+
+    // read before the graph, see CacheService.getGeneration()
+    long generation = cacheService.getGeneration();
+    PathGraph graph = cacheService.getPathGraph();
+    if (generation == pushedGeneration) {
+      pushing.set(false);
+      return;
+    }
+
+    push(graph).thenCompose(status -> {
+      if (status != 409) {
+        return CompletableFuture.completedFuture(status);
+      }
+      LOG.info("Aggregator {} does not have snapshot {}, pushing a full snapshot", endpoint,
+          sequence);
+      sequence = 0L;
+      digests = null;
+      return push(graph);
+    }).whenComplete((status, error) -> {
+      if (error != null) {
+        LOG.warn("Failed to push snapshot of host {} to {}", host, endpoint, error);
+      } else if (status == 200) {
+        pushedGeneration = generation;
+      } else {
+        LOG.warn("Aggregator {} rejected snapshot of host {} with status {}", endpoint, host,
+            status);
+      }
+      pushing.set(false);
+    });
+  }
+
+  private CompletableFuture<Integer> push(PathGraph graph) {
+    SnapshotFormat.Header header = new SnapshotFormat.Header(host,
+        Math.max(sequence + 1L, System.currentTimeMillis()), sequence);
+    Path cachePath = cacheService.getCachePath();
+    Path tempPath = cachePath.resolveSibling(cachePath.getFileName() + ".push");
+    SnapshotFormat.Digests pushedDigests;
+    long length;
+    HttpRequest request;
+    try {
+      try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(tempPath))) {
+        pushedDigests = SnapshotFormat.write(graph, header, digests, out);
+      }
+      length = Files.size(tempPath);
+      request = HttpRequest.newBuilder(endpoint).timeout(TIMEOUT)
+          .header("Content-Type", "application/octet-stream")
+          .POST(HttpRequest.BodyPublishers.ofFile(tempPath)).build();
+    } catch (IOException e) {
+      deleteQuietly(tempPath);
+      return CompletableFuture.failedFuture(e);
+    }
+
+    return client.sendAsync(request, HttpResponse.BodyHandlers.ofString()).thenApply(response -> {
+      if (response.statusCode() == 200) {
+        LOG.info("Pushed {} snapshot {} of host {} ({} bytes)", header.isFull() ? "full" : "delta",
+            header.sequence(), host, length);
+        sequence = header.sequence();
+        digests = pushedDigests;
+      }
+      return response.statusCode();
+    }).whenComplete((status, error) -> deleteQuietly(tempPath));
+  }
+
+  private static void deleteQuietly(Path path) {
+    try {
+      Files.deleteIfExists(path);
+    } catch (IOException e) {
+      LOG.warn("Failed to delete {}", path, e);
+    }
+  }
+
+  private static String localHostName() {
+    try {
+      return InetAddress.getLocalHost().getHostName().replaceAll("[^A-Za-z0-9._-]", "_");
+    } catch (IOException e) {
+      return "localhost";
+    }
+  }
+
+}
@@ -13,29 +13,38 @@
  */
 package com.newtowndata.disk.service;
 
+import com.newtowndata.disk.core.cache.CacheFormat;
+import com.newtowndata.disk.core.cache.GzipCacheFormat;
+import com.newtowndata.disk.core.cache.SegmentedCacheFormat;
+import com.newtowndata.disk.core.compact.CompactPathGraph;
+import com.newtowndata.disk.core.compact.MappedCacheFormat;
+import com.newtowndata.disk.core.entity.OverlayPathInfoMap;
 import com.newtowndata.disk.core.entity.PathGraph;
-import com.newtowndata.disk.core.entity.PathInfo;
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
-import java.io.DataInputStream;
-import java.io.DataOutputStream;
+import com.newtowndata.disk.core.index.ExtensionIndex;
+import com.newtowndata.disk.core.index.NameIndex;
+import com.newtowndata.disk.core.index.TopPaths;
+import io.micrometer.core.instrument.Timer;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.StandardOpenOption;
-import java.util.ArrayList;
-import java.util.HashMap;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.Collection;
 import java.util.List;
-import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
-import java.util.zip.GZIPInputStream;
-import java.util.zip.GZIPOutputStream;
+import java.util.function.Supplier;
+import javax.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
 @Service
@@ -44,128 +53,416 @@ public class CacheService {
   private static final Logger LOG = LoggerFactory.getLogger(CacheService.class);
 
   private final PathService pathService;
+  private final ScanMetrics metrics;
   private final Path cachePath;
+  private final boolean compact;
+  private final CacheFormat format;
+  private final int compressionLevel;
+  private final int segmentCount;
+  private final int parallelism;
+  private final SideIndex<TopPaths> topPaths;
+  private final SideIndex<NameIndex> nameIndex;
+  private final SideIndex<ExtensionIndex> extensionIndex;
 
   private final AtomicReference<PathGraph> reference = new AtomicReference<>();
+  private final AtomicLong generation = new AtomicLong();
+  private final AtomicBoolean dirty = new AtomicBoolean();
+  private final AtomicReference<CompletableFuture<PathGraph>> job = new AtomicReference<>();
+  private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+    Thread thread = new Thread(runnable, "cache-scan");
+    thread.setDaemon(true);
+    return thread;
+  });
+  private final ExecutorService indexExecutor = Executors.newSingleThreadExecutor(runnable -> {
+    Thread thread = new Thread(runnable, "side-index");
+    thread.setDaemon(true);
+    return thread;
+  });
+  private final Object publishLock = new Object();
+  private long publications;
+  private volatile ScanStatus status = ScanStatus.IDLE;
+  /**
+   * When the scan that built the current graph started, stored as the modification time of the
+   * cache file. Zero when unknown, so a rescan trusts no directory of a published graph.
+   */
+  private volatile long scannedAt;
+  private volatile Supplier<PathGraph> source;
 
-  public CacheService(PathService pathService, @Value("${disk-analysis.cache}") Path cachePath) {
+  public CacheService(PathService pathService, ScanMetrics metrics,
+      @Value("${disk-analysis.cache}") Path cachePath,
+      @Value("${disk-analysis.graph.compact:false}") boolean compact,
+      @Value("${disk-analysis.cache.format:GZIP}") CacheFormat format,
+      @Value("${disk-analysis.cache.compression-level:5}") int compressionLevel,
+      @Value("${disk-analysis.cache.segments:0}") int segmentCount,
+      @Value("${disk-analysis.top.count:100}") int topCount,
+      @Value("${disk-analysis.top.recent-min-size:104857600}") long topRecentMinSize,
+      @Value("${disk-analysis.extensions.size:8}") int extensionCount) {
     this.pathService = pathService;
+    this.metrics = metrics;
     this.cachePath = cachePath;
+    this.compact = compact;
+    this.format = format;
+    this.compressionLevel = compressionLevel;
+    this.parallelism = Runtime.getRuntime().availableProcessors();
+    this.segmentCount = segmentCount > 0 ? segmentCount : parallelism * 4;
+    this.topPaths = new SideIndex<>(sidePath(".top"),
+        graph -> TopPaths.build(graph, topCount, topRecentMinSize),
+        (path, fingerprint) -> TopPaths.read(path, fingerprint, topCount, topRecentMinSize),
+        TopPaths::write, indexExecutor, () -> { });
+    this.nameIndex = new SideIndex<>(sidePath(".names"), NameIndex::build, NameIndex::read,
+        NameIndex::write, indexExecutor, () -> { });
+    this.extensionIndex = new SideIndex<>(sidePath(".ext"),
+        graph -> ExtensionIndex.build(graph, extensionCount),
+        (path, fingerprint) -> ExtensionIndex.read(path, fingerprint, extensionCount),
+        ExtensionIndex::write, indexExecutor, generation::incrementAndGet);
   }
 
   public PathGraph getPathGraph() {
     PathGraph graph = reference.get();
-    if (graph == null) {
-      graph = deserialize().orElse(null);
-      reference.set(graph);
+    if (graph != null) {
+      return graph;
+    }
+
+    try {
+      return load().join();
+    } catch (CompletionException e) {
+      throw new IllegalArgumentException("Graph is empty", e.getCause());
     }
+  }
 
-    if (graph == null) {
+  /**
+   * Starts loading the graph in the background, from the cache file or with a scan, unless it is
+   * loaded already. Returns the running job if there is one already.
+   */
+  public CompletableFuture<PathGraph> load() {
+    PathGraph graph = reference.get();
+    return graph != null ? CompletableFuture.completedFuture(graph) : submit(ScanType.LOAD);
+  }
+
+  public Optional<PathGraph> getLoadedPathGraph() {
+    return Optional.ofNullable(reference.get());
+  }
+
+  /**
+   * Counts the graphs swapped in by loads, scans and refreshes. The generation is only bumped after
+   * the new graph is visible, so reading the generation before the graph never pairs a newer
+   * generation with an older graph.
+   */
+  public long getGeneration() {
+    return generation.get();
+  }
+
+  public void refresh(String path) throws IOException {
+    refresh(List.of(path));
+  }
+
+  /**
+   * Scans the paths again and swaps the result in. Refreshes that leave the graph as it is, with no
+   * paths or only pruned ones, neither advance the generation nor mark the cache dirty. Throws
+   * {@link UnknownPathException} for a path outside of the graph and {@link IllegalStateException}
+   * when there is no local graph to refresh.
+   */
+  public void refresh(Collection<String> paths) throws IOException {
+    if (source != null) {
+      throw new IllegalStateException("Graph is not scanned locally, cannot refresh " + paths);
+    }
+    if (paths.isEmpty()) {
+      return;
+    }
+    PathGraph graph;
+    PathGraph refreshed;
+    do {
       try {
-        graph = pathService.create();
-        serialize(graph);
-        reference.set(graph);
-      } catch (IOException e) {
-        LOG.warn("Failed to load graph", e);
+        graph = getPathGraph();
+      } catch (IllegalArgumentException e) {
+        throw new IllegalStateException("Graph is empty, cannot refresh " + paths, e);
+      }
+      refreshed = graph;
+      for (String path : paths) {
+        refreshed = pathService.refresh(refreshed, path);
+      }
+      if (refreshed == graph) {
+        return;
       }
+      if (compact && !(refreshed.pathInfos() instanceof OverlayPathInfoMap)) {
+        // the overlay was flattened into a map of full paths, pack it again
+        refreshed = CompactPathGraph.from(refreshed).toPathGraph();
+      }
+    } while (!reference.compareAndSet(graph, refreshed));
+    generation.incrementAndGet();
+    dirty.set(true);
+    LOG.info("Refreshed {}", paths);
+  }
+
+  /**
+   * Builds graphs with {@code source} instead of scanning the disk, for instances that serve graphs
+   * received from elsewhere. Loads, reloads and rescans all take the graph from the source.
+   */
+  public void setGraphSource(Supplier<PathGraph> source) {
+    this.source = source;
+  }
+
+  /**
+   * Swaps in a graph built outside of a scan. It is not written to the cache file, the graph source
+   * keeps its own copy.
+   */
+  public void publish(PathGraph graph) {
+    synchronized (publishLock) {
+      publications++;
+      reference.set(graph);
+      scannedAt = 0L;
+      generation.incrementAndGet();
     }
+  }
 
-    if (graph == null) {
-      throw new IllegalArgumentException("Graph is empty");
+  @PreDestroy
+  @Scheduled(initialDelayString = "${disk-analysis.cache.flush-interval:300000}",
+      fixedDelayString = "${disk-analysis.cache.flush-interval:300000}")
+  public void flush() {
+    PathGraph graph = reference.get();
+    if (graph != null && dirty.getAndSet(false)) {
+      LOG.info("Writing updated graph to cache {}", cachePath);
+      serialize(graph, scannedAt);
     }
+  }
 
-    return graph;
+  /**
+   * Starts a fast rescan in the background. The current graph keeps serving until the new one is
+   * swapped in. Returns the running job if there is one already.
+   */
+  public CompletableFuture<PathGraph> rescan() {
+    return submit(ScanType.RESCAN);
   }
 
-  public void reload() {
-    try {
-      reference.set(null);
-      Files.deleteIfExists(cachePath);
-    } catch (IOException e) {
-      LOG.error("Failed to remove cache path {}", cachePath, e);
+  /**
+   * Starts a full scan in the background. The current graph keeps serving until the new one is
+   * swapped in. Returns the running job if there is one already.
+   */
+  public CompletableFuture<PathGraph> reload() {
+    return submit(ScanType.RELOAD);
+  }
+
+  /**
+   * The top lists of the current graph. Read from the cache side file or built during the scan;
+   * after a refresh the previous lists are served while they are rebuilt in the background.
+   */
+  public TopPaths getTopPaths() {
+    return topPaths.get(getPathGraph());
+  }
+
+  /**
+   * The file name index of the current graph, read from the cache side file or built during the
+   * scan.
+   */
+  public NameIndex getNameIndex() {
+    return nameIndex.require(getPathGraph());
+  }
+
+  /**
+   * Per-directory extension histograms of the current graph, read from the cache side file or
+   * built during the scan. After a refresh the previous histograms are served until the rebuild
+   * completes, which advances the generation so cached listings pick up the new ones.
+   */
+  public ExtensionIndex getExtensionIndex() {
+    return extensionIndex.get(getPathGraph());
+  }
+
+  /**
+   * The cache file. Refreshes reach it with the next flush.
+   */
+  public Path getCachePath() {
+    return cachePath;
+  }
+
+  public ScanStatus getScanStatus() {
+    return status;
+  }
+
+  private CompletableFuture<PathGraph> submit(ScanType type) {
+    while (true) {
+      CompletableFuture<PathGraph> running = job.get();
+      if (running != null) {
+        return running;
+      }
+
+      CompletableFuture<PathGraph> future = new CompletableFuture<>();
+      if (job.compareAndSet(null, future)) {
+        status = ScanStatus.running(type);
+        executor.execute(() -> run(type, future));
+        return future;
+      }
     }
-    getPathGraph();
   }
 
-  private void serialize(PathGraph pathGraph) {
-    try (
-        OutputStream fos =
-            Files.newOutputStream(cachePath, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
-        BufferedOutputStream bos = new BufferedOutputStream(fos);
-        GZIPOutputStream gzip = new GzipOutputQuickStream(bos);
-        DataOutputStream dos = new DataOutputStream(gzip)) {
-      dos.writeInt(pathGraph.roots().size());
-      for (String root : pathGraph.roots()) {
-        serializePath(dos, pathGraph, root);
+  private void run(ScanType type, CompletableFuture<PathGraph> future) {
+    LOG.info("Starting {} job", type);
+    try {
+      Supplier<PathGraph> graphSource = source;
+      PathGraph graph;
+      if (graphSource != null) {
+        graph = fromSource(graphSource);
+      } else {
+        graph = switch (type) {
+          case LOAD -> loadOrScan();
+          case RELOAD -> scan(null, 0L);
+          case RESCAN -> scan(Optional.ofNullable(reference.get()).or(this::deserialize)
+              .orElse(null), scannedAt);
+        };
+        reference.set(graph);
+        generation.incrementAndGet();
       }
-    } catch (IOException e) {
-      LOG.error("Failed to write graph to cache {}", cachePath, e);
+      status = status.finished();
+      LOG.info("Finished {} job", type);
+      job.set(null);
+      future.complete(graph);
+    } catch (Exception e) {
+      LOG.error("Failed {} job", type, e);
+      status = status.failed(e);
+      job.set(null);
+      future.completeExceptionally(e);
     }
   }
 
-  private void serializePath(DataOutputStream dos, PathGraph pathGraph, String path)
-      throws IOException {
-    dos.writeUTF(path);
+  /**
+   * Builds the graph with the source and swaps it in, unless a graph was published meanwhile: that
+   * one was built later, so it is kept.
+   */
+  private PathGraph fromSource(Supplier<PathGraph> graphSource) {
+    long seen;
+    synchronized (publishLock) {
+      seen = publications;
+    }
+    PathGraph graph = graphSource.get();
+    synchronized (publishLock) {
+      if (publications != seen) {
+        return reference.get();
+      }
+      reference.set(graph);
+      generation.incrementAndGet();
+      return graph;
+    }
+  }
 
-    PathInfo pathInfo = pathGraph.pathInfos().get(path);
-    dos.writeUTF(pathInfo.name());
-    dos.writeUTF(pathInfo.fileType());
-    dos.writeLong(pathInfo.timestamp());
-    dos.writeLong(pathInfo.size());
+  private PathGraph loadOrScan() throws IOException {
+    Optional<PathGraph> cached = deserialize();
+    if (cached.isPresent()) {
+      return cached.get();
+    }
+    return scan(null, 0L);
+  }
 
-    dos.writeInt(pathInfo.children().size());
-    for (String child : pathInfo.children()) {
-      serializePath(dos, pathGraph, child);
+  private PathGraph scan(PathGraph baseline, long baselineStartedAt) throws IOException {
+    long startedAt = System.currentTimeMillis();
+    PathGraph graph = baseline == null ? pathService.create()
+        : pathService.rescan(baseline, baselineStartedAt);
+    Timer.Sample sample = Timer.start();
+    serialize(graph, startedAt);
+    sample.stop(metrics.phase("serialize"));
+    scannedAt = startedAt;
+    dirty.set(false);
+    if (compact) {
+      PathGraph source = graph;
+      graph = CompactPathGraph.from(graph).toPathGraph();
+      topPaths.rebind(source, graph);
+      nameIndex.rebind(source, graph);
+      extensionIndex.rebind(source, graph);
     }
+    return graph;
   }
 
-  private Optional<PathGraph> deserialize() {
-    if (!Files.exists(cachePath)) {
-      return Optional.empty();
+  private void serialize(PathGraph pathGraph, long startedAt) {
+    Path tempPath = cachePath.resolveSibling(cachePath.getFileName() + ".tmp");
+    Timer.Sample sample = Timer.start();
+    try {
+      if (format == CacheFormat.MAPPED) {
+        MappedCacheFormat.write(CompactPathGraph.from(pathGraph), tempPath);
+      } else if (format == CacheFormat.SEGMENTED) {
+        SegmentedCacheFormat.write(pathGraph, tempPath, compressionLevel, segmentCount,
+            parallelism);
+      } else {
+        GzipCacheFormat.write(pathGraph, tempPath, compressionLevel);
+      }
+      Files.setLastModifiedTime(tempPath, FileTime.fromMillis(startedAt));
+    } catch (IOException e) {
+      LOG.error("Failed to write graph to cache {}", cachePath, e);
+      return;
+    }
+
+    try {
+      Files.move(tempPath, cachePath, StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+      sample.stop(metrics.cacheSave(format));
+    } catch (IOException e) {
+      LOG.error("Failed to replace cache {}", cachePath, e);
+      return;
     }
 
-    try (InputStream fis = Files.newInputStream(cachePath, StandardOpenOption.READ);
-        BufferedInputStream bis = new BufferedInputStream(fis);
-        GZIPInputStream gzip = new GZIPInputStream(bis);
-        DataInputStream dis = new DataInputStream(gzip)) {
-      int rootCount = dis.readInt();
-      List<String> roots = new ArrayList<>(rootCount);
-      Map<String, PathInfo> paths = new HashMap<>();
-      for (int i = 0; i < rootCount; i++) {
-        roots.add(deserializePath(dis, paths, null));
+    try {
+      long fingerprint = fingerprint();
+      topPaths.save(pathGraph, fingerprint);
+      nameIndex.save(pathGraph, fingerprint);
+      extensionIndex.save(pathGraph, fingerprint);
+    } catch (IOException e) {
+      LOG.warn("Failed to write cache {}", cachePath, e);
+    }
+  }
+
+  private Optional<PathGraph> deserialize() {
+    try {
+      Optional<CacheFormat> existing = CacheFormat.detect(cachePath);
+      if (existing.isEmpty()) {
+        return Optional.empty();
       }
-      return Optional.of(new PathGraph(roots, paths));
+
+      Timer.Sample sample = Timer.start();
+      PathGraph graph = read(existing.get());
+      sample.stop(metrics.cacheLoad(existing.get()));
+      scannedAt = Files.getLastModifiedTime(cachePath).toMillis();
+      long fingerprint = fingerprint();
+      topPaths.load(graph, fingerprint);
+      nameIndex.load(graph, fingerprint);
+      extensionIndex.load(graph, fingerprint);
+      return Optional.of(graph);
     } catch (IOException e) {
       LOG.error("Failed to read graph from cache {}", cachePath, e);
       return Optional.empty();
     }
   }
 
-  private String deserializePath(DataInputStream dis, Map<String, PathInfo> paths, String parent)
-      throws IOException {
-    String path = dis.readUTF();
+  private Path sidePath(String suffix) {
+    return cachePath.resolveSibling(cachePath.getFileName() + suffix);
+  }
 
-    String name = dis.readUTF();
-    String fileType = dis.readUTF();
-    long timestamp = dis.readLong();
-    long size = dis.readLong();
+  private long fingerprint() throws IOException {
+    return Files.getLastModifiedTime(cachePath).toMillis() * 31L + Files.size(cachePath);
+  }
 
-    int childCount = dis.readInt();
-    List<String> children = new ArrayList<>(childCount);
-    for (int i = 0; i < childCount; i++) {
-      children.add(deserializePath(dis, paths, path));
+  private PathGraph read(CacheFormat existing) throws IOException {
+    if (existing == CacheFormat.MAPPED) {
+      return MappedCacheFormat.open(cachePath).toPathGraph();
     }
 
-    PathInfo pathInfo = new PathInfo(parent, fileType, name, timestamp, size, children);
-    paths.put(path, pathInfo);
-    return path;
-  }
+    if (format == CacheFormat.MAPPED) {
+      LOG.info("Converting cache {} to the mapped format", cachePath);
+      serialize(readCompact(existing).toPathGraph(),
+          Files.getLastModifiedTime(cachePath).toMillis());
+      return MappedCacheFormat.open(cachePath).toPathGraph();
+    }
 
-  private static class GzipOutputQuickStream extends GZIPOutputStream {
+    if (compact) {
+      return readCompact(existing).toPathGraph();
+    }
+    if (existing == CacheFormat.SEGMENTED) {
+      return SegmentedCacheFormat.read(cachePath, parallelism);
+    }
+    return GzipCacheFormat.read(cachePath);
+  }
 
-    public GzipOutputQuickStream(OutputStream out) throws IOException {
-      super(out);
-      super.def.setLevel(5);
+  private CompactPathGraph readCompact(CacheFormat existing) throws IOException {
+    if (existing == CacheFormat.SEGMENTED) {
+      return SegmentedCacheFormat.readCompact(cachePath, parallelism);
     }
+    return GzipCacheFormat.readCompact(cachePath);
   }
+
 }
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2021 Voyta Krizek, https://github.com/NewTownData
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.newtowndata.disk.service;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Work queue of one device. Directory tasks run on the device's own fork-join pool, a resizable
+ * semaphore caps how many of them list directories at once and a {@link TokenBucket} paces the
+ * file system calls.
+ */
+class DeviceLane {
+
+  private final String name;
+  private final ForkJoinPool pool;
+  private final LimitSemaphore permits;
+  private final TokenBucket bucket;
+  private final LongAdder operations = new LongAdder();
+
+  private DeviceLimits limits;
+
+  public DeviceLane(String name, int threads, DeviceLimits limits) {
+    this.name = name;
+    this.pool = new ForkJoinPool(threads, pool -> {
+      ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+      thread.setName("scan-" + name + "-" + thread.getPoolIndex());
+      thread.setDaemon(true);
+      return thread;
+    }, null, false);
+    this.permits = new LimitSemaphore(0);
+    this.bucket = new TokenBucket(limits.statsPerSecond());
+    apply(limits);
+  }
+
+  public String name() {
+    return name;
+  }
+
+  public void execute(ForkJoinTask<?> task) {
+    if (ForkJoinTask.getPool() == pool) {
+      task.fork();
+    } else {
+      pool.execute(task);
+    }
+  }
+
+  public void enter() {
+    permits.acquireUninterruptibly();
+  }
+
+  public void exit() {
+    permits.release();
+  }
+
+  public void stat() {
+    bucket.acquire();
+    operations.increment();
+  }
+
+  public synchronized void apply(DeviceLimits limits) {
+    int parallelism = limits.parallelism() > 0 ? Math.min(limits.parallelism(),
+        pool.getParallelism()) : pool.getParallelism();
+    int previous = this.limits == null ? 0 : this.limits.parallelism();
+    if (parallelism > previous) {
+      permits.release(parallelism - previous);
+    } else if (parallelism < previous) {
+      permits.reducePermits(previous - parallelism);
+    }
+    bucket.setRate(limits.statsPerSecond());
+    this.limits = new DeviceLimits(parallelism, limits.statsPerSecond());
+  }
+
+  public synchronized DeviceStatus status() {
+    return new DeviceStatus(name, limits, operations.sum(), pool.getQueuedTaskCount());
+  }
+
+  public long getQueuedTaskCount() {
+    return pool.getQueuedTaskCount();
+  }
+
+  public void shutdown() {
+    pool.shutdownNow();
+  }
+
+  private static class LimitSemaphore extends Semaphore {
+
+    private static final long serialVersionUID = 1L;
+
+    public LimitSemaphore(int permits) {
+      super(permits);
+    }
+
+    @Override
+    public void reducePermits(int reduction) {
+      super.reducePermits(reduction);
+    }
+  }
+
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright 2021 Voyta Krizek, https://github.com/NewTownData
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.newtowndata.disk.service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+
+/**
+ * Identifies the device a path lives on: the unix device number where available, the
+ * {@link java.nio.file.FileStore} otherwise.
+ */
+final class Devices {
+
+  private Devices() {}
+
+  public static Object key(Path path) {
+    try {
+      return Files.getAttribute(path, "unix:dev", LinkOption.NOFOLLOW_LINKS);
+    } catch (UnsupportedOperationException e) {
+      try {
+        return Files.getFileStore(path);
+      } catch (IOException fse) {
+        return null;
+      }
+    } catch (IOException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Name of the device with key {@code key}: the file store name, followed by the device number
+   * where there is one, since file stores such as {@code tmpfs} share their name.
+   */
+  public static String name(Path path, Object key) {
+    String name;
+    try {
+      name = Files.getFileStore(path).name();
+    } catch (IOException e) {
+      name = path.toString();
+    }
+    return key instanceof Number ? name + "@" + key : name;
+  }
+
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2021 Voyta Krizek, https://github.com/NewTownData
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.newtowndata.disk.service;
+
+import com.newtowndata.disk.core.PathUtils;
+import com.newtowndata.disk.core.entity.PathInfo;
+import com.newtowndata.disk.core.entity.PathTotals;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Creates the entries of files for a single scan and tracks the hard-linked inodes seen so far, per
+ * device. Which link a scanner thread reaches first varies between scans, so linked files are
+ * created without an on-disk size and {@link #chargeLinks(Map)} charges it to the smallest path of
+ * every inode once the scan is done. Safe to share between scanner threads.
+ */
+class DiskUsage {
+
+  private static final Logger LOG = LoggerFactory.getLogger(DiskUsage.class);
+
+  private static final String UNIX_ATTRIBUTES = "unix:dev,ino,nlink";
+
+  private final SizeAccounting accounting;
+  private final Map<Long, Device> devices = new ConcurrentHashMap<>();
+
+  private volatile boolean unsupported;
+
+  public DiskUsage(SizeAccounting accounting) {
+    this.accounting = accounting;
+  }
+
+  public PathInfo createPathInfo(Path path, BasicFileAttributes attributes) {
+    PathInfo pathInfo = PathUtils.createPathInfo(path, attributes, Collections.emptyList());
+    if (accounting == SizeAccounting.APPARENT || unsupported || !attributes.isRegularFile()) {
+      return pathInfo;
+    }
+
+    Map<String, Object> unix;
+    try {
+      unix = Files.readAttributes(path, UNIX_ATTRIBUTES, LinkOption.NOFOLLOW_LINKS);
+    } catch (UnsupportedOperationException e) {
+      LOG.warn("Unix attributes are not supported, counting apparent sizes: {}", e.toString());
+      unsupported = true;
+      return pathInfo;
+    } catch (IOException e) {
+      LOG.warn("Cannot read unix attributes of {}: {}", path, e.toString());
+      return pathInfo;
+    }
+
+    Device device = devices.computeIfAbsent((Long) unix.get("dev"), dev -> new Device(path));
+    long diskSize = device.diskSize(attributes.size());
+    if ((Integer) unix.get("nlink") > 1) {
+      device.link((Long) unix.get("ino"), path.toString(), diskSize);
+      diskSize = 0L;
+    }
+    return pathInfo.withTotals(PathTotals.of(pathInfo.fileType(), pathInfo.size(), diskSize));
+  }
+
+  /**
+   * Charges the on-disk size of every hard-linked inode seen by the scan to the lexicographically
+   * smallest of its paths in {@code paths}, the other links keep counting zero.
+   */
+  public void chargeLinks(Map<String, PathInfo> paths) {
+    for (Device device : devices.values()) {
+      for (Link link : device.links.values()) {
+        PathInfo pathInfo = paths.get(link.path());
+        if (pathInfo != null) {
+          paths.put(link.path(), pathInfo.withTotals(
+              PathTotals.of(pathInfo.fileType(), pathInfo.size(), link.diskSize())));
+        }
+      }
+    }
+  }
+
+  private record Link(String path, long diskSize) {
+
+  }
+
+  private static class Device {
+
+    private final long blockSize;
+    private final Map<Long, Link> links = new ConcurrentHashMap<>();
+
+    public Device(Path path) {
+      this.blockSize = blockSize(path);
+    }
+
+    public long diskSize(long size) {
+      return (size + blockSize - 1) / blockSize * blockSize;
+    }
+
+    public void link(long inode, String path, long diskSize) {
+      links.merge(inode, new Link(path, diskSize),
+          (seen, link) -> seen.path().compareTo(link.path()) <= 0 ? seen : link);
+    }
+
+    private static long blockSize(Path path) {
+      try {
+        return Math.max(1L, Files.getFileStore(path).getBlockSize());
+      } catch (IOException | UnsupportedOperationException e) {
+        LOG.warn("Cannot read the block size of the file store of {}: {}", path, e.toString());
+        return 1L;
+      }
+    }
+  }
+
+}
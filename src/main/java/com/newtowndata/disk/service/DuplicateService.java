@@ -0,0 +1,124 @@
+/*
+ * Copyright 2021 Voyta Krizek, https://github.com/NewTownData
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.newtowndata.disk.service;
+
+import com.newtowndata.disk.core.duplicate.DuplicateFinder;
+import com.newtowndata.disk.core.duplicate.DuplicateReport;
+import com.newtowndata.disk.core.duplicate.HashCache;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * Runs the duplicate finder over the current graph in the background, one run at a time. File
+ * hashes are kept in a file next to the cache, so a rerun only hashes new or changed files.
+ */
+@Service
+public class DuplicateService {
+
+  private static final Logger LOG = LoggerFactory.getLogger(DuplicateService.class);
+
+  private final CacheService cacheService;
+  private final Path hashCachePath;
+  private final int parallelism;
+
+  private final AtomicReference<CompletableFuture<DuplicateReport>> job =
+      new AtomicReference<>();
+  private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+    Thread thread = new Thread(runnable, "duplicate-finder");
+    thread.setDaemon(true);
+    return thread;
+  });
+  private volatile DuplicateReport report;
+
+  public DuplicateService(CacheService cacheService,
+      @Value("${disk-analysis.cache}") Path cachePath,
+      @Value("${disk-analysis.duplicates.parallelism:0}") int parallelism) {
+    this.cacheService = cacheService;
+    this.hashCachePath = cachePath.resolveSibling(cachePath.getFileName() + ".hashes");
+    this.parallelism = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+  }
+
+  public Optional<DuplicateReport> getReport() {
+    return Optional.ofNullable(report);
+  }
+
+  public boolean isRunning() {
+    return job.get() != null;
+  }
+
+  /**
+   * Starts a search for duplicates of at least {@code minSize} bytes. Returns the running search
+   * if there is one already.
+   */
+  public CompletableFuture<DuplicateReport> find(long minSize) {
+    while (true) {
+      CompletableFuture<DuplicateReport> running = job.get();
+      if (running != null) {
+        return running;
+      }
+
+      CompletableFuture<DuplicateReport> future = new CompletableFuture<>();
+      if (job.compareAndSet(null, future)) {
+        executor.execute(() -> run(minSize, future));
+        return future;
+      }
+    }
+  }
+
+  private void run(long minSize, CompletableFuture<DuplicateReport> future) {
+    try {
+      HashCache hashCache = readHashCache();
+      DuplicateReport result = new DuplicateFinder(hashCache, parallelism)
+          .find(cacheService.getPathGraph(), minSize);
+      LOG.info("Found {} duplicate sets, {} bytes reclaimable ({} files hashed, {} cached)",
+          result.sets().size(), result.reclaimableBytes(),
+          result.partialHashes() + result.fullHashes(), result.cacheHits());
+      writeHashCache(hashCache);
+      report = result;
+      job.set(null);
+      future.complete(result);
+    } catch (RuntimeException e) {
+      LOG.error("Failed to find duplicates", e);
+      job.set(null);
+      future.completeExceptionally(e);
+    }
+  }
+
+  private HashCache readHashCache() {
+    try {
+      return HashCache.read(hashCachePath);
+    } catch (IOException e) {
+      LOG.warn("Failed to read hash cache {}", hashCachePath, e);
+      return new HashCache();
+    }
+  }
+
+  private void writeHashCache(HashCache hashCache) {
+    try {
+      hashCache.write(hashCachePath);
+    } catch (IOException e) {
+      LOG.warn("Failed to write hash cache {}", hashCachePath, e);
+    }
+  }
+
+}
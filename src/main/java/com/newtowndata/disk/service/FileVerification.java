@@ -0,0 +1,27 @@
+/*
+ * Copyright 2021 Voyta Krizek, https://github.com/NewTownData
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.newtowndata.disk.service;
+
+/**
+ * How files in a directory whose modification time did not change are checked during a rescan.
+ */
+public enum FileVerification {
+
+  /** Reuse the cached entries as they are. Fastest, misses files rewritten in place. */
+  NONE,
+
+  /** Read the attributes of every file again, but skip listing the directory. */
+  STAT
+
+}
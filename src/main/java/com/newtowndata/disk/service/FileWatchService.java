@@ -0,0 +1,228 @@
+/*
+ * Copyright 2021 Voyta Krizek, https://github.com/NewTownData
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.newtowndata.disk.service;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+import com.newtowndata.disk.core.entity.PathGraph;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * Keeps the cached graph up to date for the configured subtrees. File system events are coalesced
+ * for a short delay and applied as one batch of subtree refreshes.
+ */
+@Service
+public class FileWatchService {
+
+  private static final Logger LOG = LoggerFactory.getLogger(FileWatchService.class);
+
+  private static final int MAX_PENDING = 10_000;
+
+  private final CacheService cacheService;
+  private final List<Path> roots;
+  private final int maxDirectories;
+  private final long batchDelay;
+
+  private final Map<WatchKey, Path> keys = new HashMap<>();
+  private WatchService watchService;
+  private Thread thread;
+
+  public FileWatchService(CacheService cacheService,
+      @Value("${disk-analysis.watch.paths:}") List<String> paths,
+      @Value("${disk-analysis.watch.max-directories:8192}") int maxDirectories,
+      @Value("${disk-analysis.watch.batch-delay:2000}") long batchDelay) {
+    this.cacheService = cacheService;
+    this.roots = paths.stream().filter(path -> !path.isBlank()).map(Path::of).toList();
+    this.maxDirectories = maxDirectories;
+    this.batchDelay = batchDelay;
+  }
+
+  @PostConstruct
+  public void start() throws IOException {
+    if (roots.isEmpty()) {
+      return;
+    }
+
+    watchService = FileSystems.getDefault().newWatchService();
+    thread = new Thread(this::run, "file-watch");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  @PreDestroy
+  public void stop() throws IOException {
+    if (thread != null) {
+      thread.interrupt();
+      watchService.close();
+    }
+  }
+
+  private void run() {
+    try {
+      for (Path root : roots) {
+        register(root);
+      }
+      LOG.info("Watching {} directories under {}", keys.size(), roots);
+
+      Set<String> pending = new LinkedHashSet<>();
+      while (true) {
+        collect(watchService.take(), pending);
+
+        long deadline = System.currentTimeMillis() + batchDelay;
+        long remaining;
+        while ((remaining = deadline - System.currentTimeMillis()) > 0) {
+          WatchKey key = watchService.poll(remaining, TimeUnit.MILLISECONDS);
+          if (key != null) {
+            collect(key, pending);
+          }
+        }
+
+        apply(pending);
+        pending.clear();
+      }
+    } catch (InterruptedException | ClosedWatchServiceException e) {
+      LOG.info("File watch stopped.");
+    }
+  }
+
+  private void collect(WatchKey key, Set<String> pending) {
+    Path directory = keys.get(key);
+    if (directory == null) {
+      key.cancel();
+      return;
+    }
+
+    for (WatchEvent<?> event : key.pollEvents()) {
+      if (event.kind() == OVERFLOW) {
+        LOG.warn("Events lost for {}, rescanning the directory", directory);
+        pending.add(directory.toString());
+        continue;
+      }
+
+      Path child = directory.resolve((Path) event.context());
+      boolean isDirectory = Files.isDirectory(child, LinkOption.NOFOLLOW_LINKS);
+      if (event.kind() == ENTRY_MODIFY && isDirectory) {
+        continue;
+      }
+      if (event.kind() == ENTRY_CREATE && isDirectory) {
+        register(child);
+      }
+      pending.add(child.toString());
+    }
+
+    if (!key.reset()) {
+      keys.remove(key);
+    }
+
+    if (pending.size() > MAX_PENDING) {
+      LOG.warn("Too many pending changes, rescanning {}", roots);
+      pending.clear();
+      roots.forEach(root -> pending.add(root.toString()));
+    }
+  }
+
+  private void apply(Set<String> pending) {
+    Optional<PathGraph> graph = cacheService.getLoadedPathGraph();
+    if (graph.isEmpty()) {
+      return;
+    }
+
+    List<String> paths = new ArrayList<>();
+    for (String path : pending) {
+      if (!hasPendingAncestor(path, pending) && isKnown(graph.get(), path)) {
+        paths.add(path);
+      }
+    }
+    if (paths.isEmpty()) {
+      return;
+    }
+
+    try {
+      cacheService.refresh(paths);
+    } catch (IOException | RuntimeException e) {
+      LOG.warn("Failed to apply changes for {}", paths, e);
+    }
+  }
+
+  private static boolean hasPendingAncestor(String path, Set<String> pending) {
+    for (Path parent = Path.of(path).getParent(); parent != null; parent = parent.getParent()) {
+      if (pending.contains(parent.toString())) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static boolean isKnown(PathGraph graph, String path) {
+    if (graph.pathInfos().containsKey(path)) {
+      return true;
+    }
+    Path parent = Path.of(path).getParent();
+    return parent != null && graph.pathInfos().containsKey(parent.toString());
+  }
+
+  private void register(Path root) {
+    try {
+      Files.walkFileTree(root, new SimpleFileVisitor<>() {
+
+        @Override
+        public FileVisitResult preVisitDirectory(Path path, BasicFileAttributes attributes)
+            throws IOException {
+          if (keys.size() >= maxDirectories) {
+            LOG.warn("Watch limit of {} directories reached, not watching {}", maxDirectories,
+                path);
+            return FileVisitResult.TERMINATE;
+          }
+          keys.put(path.register(watchService, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY), path);
+          return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult visitFileFailed(Path path, IOException err) {
+          return FileVisitResult.CONTINUE;
+        }
+      });
+    } catch (IOException e) {
+      LOG.warn("Cannot watch {}: {}", root, e.toString());
+    }
+  }
+
+}
@@ -0,0 +1,214 @@
+/*
+ * Copyright 2021 Voyta Krizek, https://github.com/NewTownData
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.newtowndata.disk.service;
+
+import com.newtowndata.disk.core.cache.SnapshotFormat;
+import com.newtowndata.disk.core.entity.HostPathInfoMap;
+import com.newtowndata.disk.core.entity.PathGraph;
+import com.newtowndata.disk.core.entity.PathTotals;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+/**
+ * Aggregator side of the agent mode. Receives host snapshots pushed by agents and serves all hosts
+ * as one graph, each under its virtual root {@code [host]}. The last snapshot of every host is kept
+ * in a directory next to the cache, so the aggregator restarts without waiting for the agents.
+ */
+@Service
+public class HostService {
+
+  private static final Logger LOG = LoggerFactory.getLogger(HostService.class);
+
+  private static final Pattern HOST_NAME = Pattern.compile("[A-Za-z0-9._-]+");
+  private static final String SNAPSHOT_SUFFIX = ".snap";
+
+  private final CacheService cacheService;
+  private final boolean enabled;
+  private final Path directory;
+
+  private final Map<String, Host> hosts = new TreeMap<>();
+  private final Set<String> dirty = new HashSet<>();
+
+  public HostService(CacheService cacheService,
+      @Value("${disk-analysis.aggregator.enabled:false}") boolean enabled) {
+    this.cacheService = cacheService;
+    this.enabled = enabled;
+    Path cachePath = cacheService.getCachePath();
+    this.directory = cachePath.resolveSibling(cachePath.getFileName() + ".hosts");
+  }
+
+  @PostConstruct
+  public void start() {
+    if (!enabled) {
+      return;
+    }
+
+    cacheService.setGraphSource(this::merge);
+    if (Files.isDirectory(directory)) {
+      try (Stream<Path> files = Files.list(directory)) {
+        files.filter(file -> file.getFileName().toString().endsWith(SNAPSHOT_SUFFIX))
+            .forEach(this::load);
+      } catch (IOException e) {
+        LOG.error("Failed to list host snapshots in {}", directory, e);
+      }
+    }
+    LOG.info("Aggregating {} hosts from {}", hosts.size(), directory);
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * Applies a snapshot pushed by an agent and publishes the merged graph. A delta is only accepted
+   * on top of the snapshot it was computed against, otherwise {@link IllegalStateException} tells
+   * the agent to send a full snapshot.
+   */
+  public HostStatus receive(InputStream in) throws IOException {
+    DataInputStream dis = SnapshotFormat.open(in);
+    SnapshotFormat.Header header = SnapshotFormat.readHeader(dis);
+    String host = header.host();
+    if (!HOST_NAME.matcher(host).matches()) {
+      throw new IllegalArgumentException("Invalid host name " + host);
+    }
+
+    Host current;
+    synchronized (this) {
+      current = hosts.get(host);
+    }
+    checkBase(header, current);
+
+    // parsed outside of the lock, a large snapshot does not hold up the other hosts
+    PathGraph graph = SnapshotFormat.readGraph(dis, header.isFull() ? null : current.graph());
+    Host received = new Host(header.sequence(), System.currentTimeMillis(), graph);
+    synchronized (this) {
+      if (hosts.get(host) != current) {
+        throw new IllegalStateException("Host " + host + " changed while reading its snapshot");
+      }
+      hosts.put(host, received);
+      dirty.add(host);
+      cacheService.publish(merge());
+    }
+    LOG.info("Received {} snapshot {} of host {}", header.isFull() ? "full" : "delta",
+        header.sequence(), host);
+    return received.status(host);
+  }
+
+  public synchronized List<HostStatus> getHosts() {
+    List<HostStatus> statuses = new ArrayList<>(hosts.size());
+    hosts.forEach((host, state) -> statuses.add(state.status(host)));
+    return statuses;
+  }
+
+  /**
+   * Writes a full snapshot of every host that changed since the last flush.
+   */
+  @PreDestroy
+  @Scheduled(initialDelayString = "${disk-analysis.cache.flush-interval:300000}",
+      fixedDelayString = "${disk-analysis.cache.flush-interval:300000}")
+  public void flush() {
+    Map<String, Host> changed = new LinkedHashMap<>();
+    synchronized (this) {
+      for (String host : dirty) {
+        changed.put(host, hosts.get(host));
+      }
+      dirty.clear();
+    }
+
+    changed.forEach((host, state) -> {
+      Path path = directory.resolve(host + SNAPSHOT_SUFFIX);
+      Path tempPath = directory.resolve(host + SNAPSHOT_SUFFIX + ".tmp");
+      try {
+        Files.createDirectories(directory);
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(tempPath))) {
+          SnapshotFormat.write(state.graph(), new SnapshotFormat.Header(host, state.sequence(), 0L),
+              null, out);
+        }
+        Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.ATOMIC_MOVE);
+      } catch (IOException e) {
+        LOG.error("Failed to write snapshot of host {} to {}", host, path, e);
+      }
+    });
+  }
+
+  private synchronized PathGraph merge() {
+    Map<String, PathGraph> graphs = new LinkedHashMap<>();
+    hosts.forEach((host, state) -> graphs.put(host, state.graph()));
+    return HostPathInfoMap.merge(graphs);
+  }
+
+  private void load(Path path) {
+    try (InputStream in = Files.newInputStream(path)) {
+      DataInputStream dis = SnapshotFormat.open(in);
+      SnapshotFormat.Header header = SnapshotFormat.readHeader(dis);
+      if (!header.isFull() || !HOST_NAME.matcher(header.host()).matches()) {
+        throw new IOException("Not a full snapshot of a valid host");
+      }
+      PathGraph graph = SnapshotFormat.readGraph(dis, null);
+      synchronized (this) {
+        hosts.put(header.host(), new Host(header.sequence(), Files.getLastModifiedTime(path)
+            .toMillis(), graph));
+      }
+    } catch (IOException e) {
+      LOG.error("Failed to read host snapshot {}", path, e);
+    }
+  }
+
+  private static void checkBase(SnapshotFormat.Header header, Host current) {
+    if (header.isFull()) {
+      return;
+    }
+    if (current == null || current.sequence() != header.baseSequence()
+        || header.sequence() <= header.baseSequence()) {
+      throw new IllegalStateException("Snapshot " + header.sequence() + " of host "
+          + header.host() + " is based on " + header.baseSequence() + ", have "
+          + (current == null ? "none" : current.sequence()));
+    }
+  }
+
+  private record Host(long sequence, long receivedAt, PathGraph graph) {
+
+    HostStatus status(String host) {
+      PathTotals totals = PathTotals.EMPTY;
+      for (String root : graph.roots()) {
+        totals = totals.add(graph.pathInfos().get(root).totals());
+      }
+      return new HostStatus(host, sequence, receivedAt, totals.size(), totals.fileCount());
+    }
+  }
+
+}
@@ -16,12 +16,15 @@ package com.newtowndata.disk.service;
 import com.newtowndata.disk.core.PathConstants;
 import com.newtowndata.disk.core.PathUtils;
 import com.newtowndata.disk.core.entity.PathInfo;
-import com.newtowndata.disk.logic.utils.InfoThread;
 import java.io.IOException;
 import java.nio.file.FileVisitResult;
 import java.nio.file.FileVisitor;
 import java.nio.file.Path;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
 import java.util.Map;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -31,45 +34,83 @@ public class PathGraphVisitor implements FileVisitor<Path> {
   private static final Logger LOG = LoggerFactory.getLogger(PathGraphVisitor.class);
 
   private final Map<String, PathInfo> paths;
-  private final InfoThread infoThread;
+  private final ScanProgress progress;
+  private final DiskUsage diskUsage;
+  private final ScanFilter filter;
+  private final Deque<DirectoryFrame> directories = new ArrayDeque<>();
 
-  public PathGraphVisitor(Map<String, PathInfo> paths, InfoThread infoThread) {
+  public PathGraphVisitor(Map<String, PathInfo> paths, ScanProgress progress) {
+    this(paths, progress, new DiskUsage(SizeAccounting.APPARENT), ScanFilter.NONE);
+  }
+
+  PathGraphVisitor(Map<String, PathInfo> paths, ScanProgress progress, DiskUsage diskUsage,
+      ScanFilter filter) {
     this.paths = paths;
-    this.infoThread = infoThread;
+    this.progress = progress;
+    this.diskUsage = diskUsage;
+    this.filter = filter;
   }
 
   @Override
   public FileVisitResult preVisitDirectory(Path path, BasicFileAttributes attributes)
       throws IOException {
-    paths.put(path.toString(), PathUtils.createPathInfo(path, attributes));
+    if (!directories.isEmpty()
+        && (filter.excludes(path.toString()) || filter.leavesFileStore(path))) {
+      return FileVisitResult.SKIP_SUBTREE;
+    }
+    directories.push(new DirectoryFrame(attributes));
     return FileVisitResult.CONTINUE;
   }
 
   @Override
   public FileVisitResult postVisitDirectory(Path path, IOException err) throws IOException {
+    DirectoryFrame frame = directories.pop();
     if (err != null) {
       LOG.warn("Cannot read directory {}: {}", path, err.toString());
-      paths.put(path.toString(),
-          PathUtils.createEmptyPathInfo(path, PathConstants.FILE_TYPE_UNREADABLE_DIRECTORY));
+      record(path, PathUtils.createEmptyPathInfo(path,
+          PathConstants.FILE_TYPE_UNREADABLE_DIRECTORY, frame.children));
+    } else {
+      record(path, PathUtils.createPathInfo(path, frame.attributes, frame.children));
     }
-    infoThread.setLastPath(path.toString());
     return FileVisitResult.CONTINUE;
   }
 
   @Override
   public FileVisitResult visitFile(Path path, BasicFileAttributes attributes) throws IOException {
-    paths.put(path.toString(), PathUtils.createPathInfo(path, attributes));
+    if (filter.excludes(path.toString())) {
+      return FileVisitResult.CONTINUE;
+    }
+    record(path, diskUsage.createPathInfo(path, attributes));
     return FileVisitResult.CONTINUE;
   }
 
   @Override
   public FileVisitResult visitFileFailed(Path path, IOException err) throws IOException {
-    if (err != null) {
+    if (err != null && !filter.excludes(path.toString())) {
       LOG.warn("Cannot read file {}: {}", path, err.toString());
-      paths.put(path.toString(),
-          PathUtils.createEmptyPathInfo(path, PathConstants.FILE_TYPE_UNREADABLE_FILE));
+      record(path, PathUtils.createEmptyPathInfo(path, PathConstants.FILE_TYPE_UNREADABLE_FILE));
     }
     return FileVisitResult.CONTINUE;
   }
 
+  private void record(Path path, PathInfo pathInfo) {
+    String key = path.toString();
+    paths.put(key, pathInfo);
+    progress.record(pathInfo);
+    DirectoryFrame parent = directories.peek();
+    if (parent != null) {
+      parent.children.add(key);
+    }
+  }
+
+  private static class DirectoryFrame {
+
+    private final BasicFileAttributes attributes;
+    private final List<String> children = new ArrayList<>();
+
+    public DirectoryFrame(BasicFileAttributes attributes) {
+      this.attributes = attributes;
+    }
+  }
+
 }
@@ -0,0 +1,274 @@
+/*
+ * Copyright 2021 Voyta Krizek, https://github.com/NewTownData
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.newtowndata.disk.service;
+
+import com.newtowndata.disk.core.PathConstants;
+import com.newtowndata.disk.core.PathUtils;
+import com.newtowndata.disk.core.entity.PathInfo;
+import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountedCompleter;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Walks directory trees on a fork-join pool. Each directory is its own task, so idle workers steal
+ * whole subtrees instead of waiting for a single depth-first walk.
+ */
+public class PathScanner {
+
+  private static final Logger LOG = LoggerFactory.getLogger(PathScanner.class);
+
+  private final Map<String, PathInfo> paths;
+  private final ScanProgress progress;
+  private final int parallelism;
+  private final Map<String, PathInfo> baseline;
+  private final long reuseBefore;
+  private final FileVerification verification;
+  private final DiskUsage diskUsage;
+  private final ScanFilter filter;
+  private final ScanScheduler scheduler;
+
+  private final AtomicLong scannedDirectories = new AtomicLong();
+  private final AtomicLong reusedDirectories = new AtomicLong();
+
+  public PathScanner(Map<String, PathInfo> paths, ScanProgress progress, int parallelism) {
+    this(paths, progress, parallelism, null, Long.MIN_VALUE, FileVerification.STAT,
+        new DiskUsage(SizeAccounting.APPARENT), ScanFilter.NONE, null);
+  }
+
+  /**
+   * Baseline directories are only reused when they were last modified before {@code reuseBefore}.
+   * A non-null scheduler runs every device on its own throttled lane instead of the shared pool.
+   */
+  PathScanner(Map<String, PathInfo> paths, ScanProgress progress, int parallelism,
+      Map<String, PathInfo> baseline, long reuseBefore, FileVerification verification,
+      DiskUsage diskUsage, ScanFilter filter, ScanScheduler scheduler) {
+    this.paths = paths;
+    this.progress = progress;
+    this.parallelism = parallelism;
+    this.baseline = baseline;
+    this.reuseBefore = reuseBefore;
+    this.verification = verification;
+    this.diskUsage = diskUsage;
+    this.filter = filter;
+    this.scheduler = scheduler;
+  }
+
+  public void scan(List<Path> roots) {
+    if (scheduler != null) {
+      progress.setQueueDepth(scheduler::getQueuedTaskCount);
+      try {
+        new RootsTask(roots).invoke();
+      } finally {
+        progress.setQueueDepth(() -> 0L);
+      }
+    } else {
+      ForkJoinPool pool = new ForkJoinPool(parallelism);
+      progress.setQueueDepth(pool::getQueuedTaskCount);
+      try {
+        pool.invoke(new RootsTask(roots));
+      } finally {
+        progress.setQueueDepth(() -> 0L);
+        pool.shutdown();
+      }
+    }
+
+    if (baseline != null) {
+      LOG.info("Reused {} unchanged of {} directories", reusedDirectories.get(),
+          reusedDirectories.get() + scannedDirectories.get());
+    }
+  }
+
+  private List<DirectoryTask> visitDirectory(CountedCompleter<?> task, Path path,
+      BasicFileAttributes attributes) {
+    PathInfo cached = baseline == null ? null : baseline.get(path.toString());
+    long timestamp = attributes.lastModifiedTime().toMillis();
+    // a directory changed in the same timestamp tick after the baseline listed it looks unchanged
+    if (cached != null && PathConstants.FILE_TYPE_DIRECTORY.equals(cached.fileType())
+        && cached.timestamp() == timestamp && timestamp < reuseBefore) {
+      return reuseDirectory(task, path, attributes, cached);
+    }
+    scannedDirectories.incrementAndGet();
+
+    List<String> children = new ArrayList<>();
+    Map<String, PathInfo> entries = new HashMap<>();
+    List<DirectoryTask> subtasks = new ArrayList<>();
+
+    throttle(task);
+    try (DirectoryStream<Path> stream = Files.newDirectoryStream(path)) {
+      for (Path child : stream) {
+        String key = child.toString();
+        if (!filter.excludes(key) && visitEntry(task, child, entries, subtasks)) {
+          children.add(key);
+        }
+      }
+    } catch (IOException | DirectoryIteratorException e) {
+      LOG.warn("Cannot read directory {}: {}", path, e.toString());
+      record(path, PathUtils.createEmptyPathInfo(path,
+          PathConstants.FILE_TYPE_UNREADABLE_DIRECTORY));
+      return List.of();
+    }
+
+    recordAll(entries);
+    record(path, PathUtils.createPathInfo(path, attributes, children));
+    return subtasks;
+  }
+
+  private List<DirectoryTask> reuseDirectory(CountedCompleter<?> task, Path path,
+      BasicFileAttributes attributes, PathInfo cached) {
+    reusedDirectories.incrementAndGet();
+
+    List<String> children = new ArrayList<>(cached.children().size());
+    Map<String, PathInfo> entries = new HashMap<>();
+    List<DirectoryTask> subtasks = new ArrayList<>();
+    for (String child : cached.children()) {
+      PathInfo childInfo = baseline.get(child);
+      if (childInfo == null || filter.excludes(child)) {
+        continue;
+      }
+
+      if (verification == FileVerification.NONE
+          && !PathConstants.FILE_TYPE_DIRECTORY.equals(childInfo.fileType())
+          && !PathConstants.FILE_TYPE_UNREADABLE_DIRECTORY.equals(childInfo.fileType())) {
+        entries.put(child, childInfo);
+        children.add(child);
+      } else if (visitEntry(task, path.resolve(childInfo.name()), entries, subtasks)) {
+        children.add(child);
+      }
+    }
+
+    recordAll(entries);
+    record(path, PathUtils.createPathInfo(path, attributes, children));
+    return subtasks;
+  }
+
+  private boolean visitEntry(CountedCompleter<?> task, Path path, Map<String, PathInfo> entries,
+      List<DirectoryTask> subtasks) {
+    BasicFileAttributes attributes;
+    throttle(task);
+    try {
+      attributes = Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+    } catch (IOException e) {
+      LOG.warn("Cannot read file {}: {}", path, e.toString());
+      entries.put(path.toString(),
+          PathUtils.createEmptyPathInfo(path, PathConstants.FILE_TYPE_UNREADABLE_FILE));
+      return true;
+    }
+
+    if (attributes.isDirectory()) {
+      if (filter.leavesFileStore(path)) {
+        return false;
+      }
+      subtasks.add(new DirectoryTask(task, path, attributes));
+    } else {
+      entries.put(path.toString(), diskUsage.createPathInfo(path, attributes));
+    }
+    return true;
+  }
+
+  private void record(Path path, PathInfo pathInfo) {
+    paths.put(path.toString(), pathInfo);
+    progress.record(pathInfo);
+  }
+
+  private void recordAll(Map<String, PathInfo> entries) {
+    paths.putAll(entries);
+    entries.values().forEach(progress::record);
+  }
+
+  private void forkAll(CountedCompleter<?> task, List<DirectoryTask> subtasks) {
+    task.addToPendingCount(subtasks.size());
+    for (DirectoryTask subtask : subtasks) {
+      if (scheduler == null) {
+        subtask.fork();
+      } else {
+        subtask.lane = scheduler.lane(subtask.path);
+        subtask.lane.execute(subtask);
+      }
+    }
+    task.tryComplete();
+  }
+
+  private static void throttle(CountedCompleter<?> task) {
+    if (task instanceof DirectoryTask directoryTask && directoryTask.lane != null) {
+      directoryTask.lane.stat();
+    }
+  }
+
+  private class RootsTask extends CountedCompleter<Void> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final transient List<Path> roots;
+
+    public RootsTask(List<Path> roots) {
+      this.roots = roots;
+    }
+
+    @Override
+    public void compute() {
+      List<DirectoryTask> subtasks = new ArrayList<>();
+      Map<String, PathInfo> entries = new HashMap<>();
+      for (Path root : roots) {
+        visitEntry(this, root, entries, subtasks);
+      }
+      recordAll(entries);
+      forkAll(this, subtasks);
+    }
+  }
+
+  private class DirectoryTask extends CountedCompleter<Void> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final transient Path path;
+    private final transient BasicFileAttributes attributes;
+    private transient DeviceLane lane;
+
+    public DirectoryTask(CountedCompleter<?> parent, Path path, BasicFileAttributes attributes) {
+      super(parent);
+      this.path = path;
+      this.attributes = attributes;
+    }
+
+    @Override
+    public void compute() {
+      if (lane == null) {
+        forkAll(this, visitDirectory(this, path, attributes));
+        return;
+      }
+
+      List<DirectoryTask> subtasks;
+      lane.enter();
+      try {
+        subtasks = visitDirectory(this, path, attributes);
+      } finally {
+        lane.exit();
+      }
+      forkAll(this, subtasks);
+    }
+  }
+}
@@ -13,42 +13,223 @@
  */
 package com.newtowndata.disk.service;
 
+import com.newtowndata.disk.core.PathUtils;
+import com.newtowndata.disk.core.entity.OverlayPathInfoMap;
 import com.newtowndata.disk.core.entity.PathGraph;
 import com.newtowndata.disk.core.entity.PathInfo;
-import com.newtowndata.disk.logic.utils.InfoThread;
+import com.newtowndata.disk.core.entity.PathTotals;
+import io.micrometer.core.instrument.Timer;
 import java.io.IOException;
-import java.nio.file.FileSystems;
 import java.nio.file.Files;
+import java.nio.file.LinkOption;
 import java.nio.file.Path;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
 import org.springframework.stereotype.Service;
 
 @Service
 public class PathService {
 
+  /**
+   * The coarsest modification time resolution of the supported file systems (FAT): a directory
+   * changed within this long of being listed may still carry the timestamp that was listed.
+   */
+  static final long TIMESTAMP_GRANULARITY = 2000L;
+
+  private final int parallelism;
+  private final FileVerification verification;
+  private final SizeAccounting accounting;
+  private final ScanProfile profile;
+  private final ScanScheduler scheduler;
+  private final ScanMetrics metrics;
+
+  @Autowired
+  public PathService(@Value("${disk-analysis.scan.parallelism:0}") int parallelism,
+      @Value("${disk-analysis.scan.verify-files:STAT}") FileVerification verification,
+      @Value("${disk-analysis.scan.accounting:APPARENT}") SizeAccounting accounting,
+      @Value("${disk-analysis.scan.profile:}") String profile, Environment environment,
+      ScanScheduler scheduler, ScanMetrics metrics) {
+    this(parallelism, verification, accounting, ScanProfile.of(environment, profile), scheduler,
+        metrics);
+  }
+
+  public PathService(int parallelism, FileVerification verification, SizeAccounting accounting,
+      ScanProfile profile, ScanScheduler scheduler, ScanMetrics metrics) {
+    this.parallelism = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+    this.verification = verification;
+    this.accounting = accounting;
+    this.profile = profile;
+    this.scheduler = scheduler;
+    this.metrics = metrics;
+  }
+
   public PathGraph create() throws IOException {
-    List<String> roots = new ArrayList<>();
-    Map<String, PathInfo> paths = new HashMap<>();
+    return create(profile.rootPaths());
+  }
+
+  public PathGraph create(List<Path> rootPaths) throws IOException {
+    List<String> roots = rootPaths.stream().map(Path::toString).toList();
+    ScanProgress progress = metrics.start();
+
+    Timer.Sample walk = Timer.start();
+    Map<String, PathInfo> paths = walk(rootPaths, ScanFilter.of(profile, rootPaths), progress);
+    walk.stop(metrics.phase("walk"));
+
+    return rollup(roots, paths, progress);
+  }
+
+  public PathGraph rescan(PathGraph baseline, long baselineStartedAt) throws IOException {
+    return rescan(profile.rootPaths(), baseline, baselineStartedAt);
+  }
+
+  /**
+   * Scans again, reusing the baseline for directories whose modification time is unchanged and
+   * older than the start of the baseline scan by at least {@link #TIMESTAMP_GRANULARITY}.
+   */
+  public PathGraph rescan(List<Path> rootPaths, PathGraph baseline, long baselineStartedAt)
+      throws IOException {
+    List<String> roots = rootPaths.stream().map(Path::toString).toList();
+    ScanProgress progress = metrics.start();
+
+    Map<String, PathInfo> paths = new ConcurrentHashMap<>();
+    DiskUsage diskUsage = new DiskUsage(accounting);
+    Timer.Sample walk = Timer.start();
+    new PathScanner(paths, progress, parallelism, baseline.pathInfos(),
+        baselineStartedAt - TIMESTAMP_GRANULARITY, verification, diskUsage,
+        ScanFilter.of(profile, rootPaths), throttled()).scan(rootPaths);
+    diskUsage.chargeLinks(paths);
+    walk.stop(metrics.phase("walk"));
+
+    return rollup(roots, paths, progress);
+  }
+
+  private PathGraph rollup(List<String> roots, Map<String, PathInfo> paths,
+      ScanProgress progress) {
+    metrics.phase("rollup").record(() -> PathUtils.calculateTotals(roots, paths));
+    metrics.finish(progress);
+    return new PathGraph(roots, paths);
+  }
+
+  /**
+   * Scans {@code path} again and swaps its subtree into the graph. Paths the scans of the graph
+   * prune, excluded or on another file store, are skipped and the graph is returned as is.
+   */
+  public PathGraph refresh(PathGraph pathGraph, String path) throws IOException {
+    Path currentPath = Path.of(path);
+    boolean root = pathGraph.roots().contains(path);
+    ScanFilter filter =
+        ScanFilter.of(profile, pathGraph.roots().stream().map(Path::of).toList());
+    if (!root && (filter.excludes(path) || filter.leavesFileStore(currentPath))) {
+      return pathGraph;
+    }
+    PathInfo previous = pathGraph.pathInfos().get(path);
 
-    try (InfoThread infoThread = new InfoThread()) {
-      for (Path root : FileSystems.getDefault().getRootDirectories()) {
-        String path = root.toString();
-        roots.add(path);
+    String parentPath;
+    if (root) {
+      parentPath = null;
+    } else if (previous != null) {
+      parentPath = previous.parentPath();
+    } else {
+      parentPath = currentPath.getParent() == null ? null : currentPath.getParent().toString();
+    }
+    PathInfo parent = parentPath == null ? null : pathGraph.pathInfos().get(parentPath);
+    if (!root && parent == null) {
+      throw new UnknownPathException(path);
+    }
+
+    Set<String> removed = new HashSet<>();
+    if (previous != null) {
+      collectSubtree(pathGraph, path, removed);
+    }
+
+    Map<String, PathInfo> changes = new HashMap<>();
+    PathTotals totals = PathTotals.EMPTY;
+    boolean exists = root || Files.exists(currentPath, LinkOption.NOFOLLOW_LINKS);
+    if (exists) {
+      // walked with its own progress, a refresh must not replace the gauges of a running scan
+      Timer.Sample sample = Timer.start();
+      Map<String, PathInfo> subtree = walk(List.of(currentPath), filter, new ScanProgress());
+      PathUtils.calculateTotals(List.of(path), subtree);
+      sample.stop(metrics.refresh());
+      changes.putAll(subtree);
+      totals = subtree.get(path).totals();
+    }
+    PathTotals delta =
+        totals.subtract(previous == null ? PathTotals.EMPTY : previous.totals());
+
+    if (parent != null && exists != parent.children().contains(path)) {
+      List<String> children = new ArrayList<>(parent.children());
+      if (exists) {
+        children.add(path);
+      } else {
+        children.remove(path);
+      }
+      parent = new PathInfo(parent.parentPath(), parent.fileType(), parent.name(),
+          parent.timestamp(), parent.size(), children, parent.totals());
+    }
+
+    String ancestorPath = parentPath;
+    PathInfo ancestor = parent;
+    while (ancestor != null) {
+      changes.put(ancestorPath, ancestor.withTotals(ancestor.totals().add(delta)));
+      ancestorPath = ancestor.parentPath();
+      ancestor = ancestorPath == null ? null : pathGraph.pathInfos().get(ancestorPath);
+    }
+
+    return new PathGraph(pathGraph.roots(),
+        OverlayPathInfoMap.of(pathGraph.pathInfos(), changes, removed));
+  }
+
+  private Map<String, PathInfo> walk(List<Path> rootPaths, ScanFilter filter,
+      ScanProgress progress) throws IOException {
+    DiskUsage diskUsage = new DiskUsage(accounting);
+
+    Map<String, PathInfo> paths;
+    if (parallelism == 1 && !scheduler.isEnabled()) {
+      paths = new HashMap<>();
+      for (Path root : rootPaths) {
         try {
-          Files.walkFileTree(root, new PathGraphVisitor(paths, infoThread));
+          Files.walkFileTree(root, new PathGraphVisitor(paths, progress, diskUsage, filter));
         } catch (IOException e) {
-          throw new IllegalArgumentException("Cannot read path " + path, e);
+          throw new IOException("Cannot read path " + root, e);
         }
       }
-      return new PathGraph(roots, paths);
+    } else {
+      paths = new ConcurrentHashMap<>();
+      new PathScanner(paths, progress, parallelism, null, Long.MIN_VALUE, FileVerification.STAT,
+          diskUsage, filter, throttled()).scan(rootPaths);
     }
+    diskUsage.chargeLinks(paths);
+    return paths;
   }
 
-  public PathGraph refresh(PathGraph pathGraph, String path) {
-    return pathGraph;
+  private ScanScheduler throttled() {
+    return scheduler.isEnabled() ? scheduler : null;
+  }
+
+  private void collectSubtree(PathGraph pathGraph, String path, Set<String> paths) {
+    Deque<String> stack = new ArrayDeque<>();
+    stack.push(path);
+    while (!stack.isEmpty()) {
+      String current = stack.pop();
+      paths.add(current);
+      PathInfo pathInfo = pathGraph.pathInfos().get(current);
+      if (pathInfo != null) {
+        for (String child : pathInfo.children()) {
+          stack.push(child);
+        }
+      }
+    }
   }
 
 }
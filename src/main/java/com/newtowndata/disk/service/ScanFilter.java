@@ -0,0 +1,73 @@
+/*
+ * Copyright 2021 Voyta Krizek, https://github.com/NewTownData
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.newtowndata.disk.service;
+
+import com.newtowndata.disk.core.PathFilter;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Decides which entries of a scan are pruned: paths matching the excludes of the profile and, if
+ * the profile stays on one file store, directories on a different device than the scanned roots.
+ */
+class ScanFilter {
+
+  private static final Logger LOG = LoggerFactory.getLogger(ScanFilter.class);
+
+  public static final ScanFilter NONE = new ScanFilter(PathFilter.NONE, null);
+
+  private final PathFilter excludes;
+  private final Set<Object> devices;
+
+  private ScanFilter(PathFilter excludes, Set<Object> devices) {
+    this.excludes = excludes;
+    this.devices = devices;
+  }
+
+  public static ScanFilter of(ScanProfile profile, List<Path> roots) {
+    Set<Object> devices = null;
+    if (profile.sameFileStore()) {
+      devices = new HashSet<>();
+      for (Path root : roots) {
+        Object device = Devices.key(root);
+        if (device != null) {
+          devices.add(device);
+        }
+      }
+    }
+    return new ScanFilter(PathFilter.compile(profile.excludes()), devices);
+  }
+
+  public boolean excludes(String path) {
+    return excludes.matches(path);
+  }
+
+  public boolean leavesFileStore(Path directory) {
+    if (devices == null) {
+      return false;
+    }
+
+    Object device = Devices.key(directory);
+    if (device != null && !devices.contains(device)) {
+      LOG.info("Skipping {} on another file store", directory);
+      return true;
+    }
+    return false;
+  }
+
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2021 Voyta Krizek, https://github.com/NewTownData
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.newtowndata.disk.service;
+
+import com.newtowndata.disk.core.cache.CacheFormat;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.ToDoubleFunction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+/**
+ * Publishes scan progress and phase timings to Micrometer. The gauges follow the current or last
+ * finished scan, the timers accumulate over all scans.
+ */
+@Service
+public class ScanMetrics {
+
+  private static final Logger LOG = LoggerFactory.getLogger(ScanMetrics.class);
+
+  private final MeterRegistry registry;
+  private final AtomicReference<ScanProgress> current = new AtomicReference<>(new ScanProgress());
+
+  public ScanMetrics(MeterRegistry registry) {
+    this.registry = registry;
+
+    gauge("disk.scan.files", "Files found by the current scan", null, ScanProgress::files);
+    gauge("disk.scan.directories", "Directories found by the current scan", null,
+        ScanProgress::directories);
+    gauge("disk.scan.bytes", "Apparent size of the files found by the current scan", "bytes",
+        ScanProgress::bytes);
+    gauge("disk.scan.queue.depth", "Directories waiting to be read", null,
+        ScanProgress::queueDepth);
+    gauge("disk.scan.duration", "Elapsed time of the current scan", "milliseconds",
+        ScanProgress::elapsedMillis);
+    Gauge.builder("disk.scan.errors", current, ref -> ref.get().unreadableFiles())
+        .description("Entries that could not be read").tag("type", "file").register(registry);
+    Gauge.builder("disk.scan.errors", current, ref -> ref.get().unreadableDirectories())
+        .description("Entries that could not be read").tag("type", "directory")
+        .register(registry);
+    Gauge.builder("disk.scan.rate", current, ref -> ref.get().filesPerSecond())
+        .description("Entries found per second").baseUnit("per second").tag("type", "file")
+        .register(registry);
+    Gauge.builder("disk.scan.rate", current, ref -> ref.get().directoriesPerSecond())
+        .description("Entries found per second").baseUnit("per second").tag("type", "directory")
+        .register(registry);
+  }
+
+  public ScanProgress start() {
+    ScanProgress progress = new ScanProgress();
+    current.set(progress);
+    return progress;
+  }
+
+  public void finish(ScanProgress progress) {
+    progress.finish();
+    LOG.info("Scanned {} files and {} directories ({} unreadable) in {} ms, {} files/s",
+        progress.files(), progress.directories(),
+        progress.unreadableFiles() + progress.unreadableDirectories(), progress.elapsedMillis(),
+        Math.round(progress.filesPerSecond()));
+  }
+
+  /** Timer of a scan phase: {@code walk}, {@code rollup} or {@code serialize}. */
+  public Timer phase(String phase) {
+    return Timer.builder("disk.scan.phase").description("Time spent in a scan phase")
+        .tag("phase", phase).register(registry);
+  }
+
+  /** Timer of subtree refreshes, which are not reported as scans. */
+  public Timer refresh() {
+    return Timer.builder("disk.refresh").description("Time to refresh a subtree")
+        .register(registry);
+  }
+
+  public Timer cacheLoad(CacheFormat format) {
+    return Timer.builder("disk.cache.load").description("Time to read the cache file")
+        .tag("format", format.name()).register(registry);
+  }
+
+  public Timer cacheSave(CacheFormat format) {
+    return Timer.builder("disk.cache.save").description("Time to write the cache file")
+        .tag("format", format.name()).register(registry);
+  }
+
+  private void gauge(String name, String description, String baseUnit,
+      ToDoubleFunction<ScanProgress> value) {
+    Gauge.builder(name, current, ref -> value.applyAsDouble(ref.get())).description(description)
+        .baseUnit(baseUnit).register(registry);
+  }
+
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2021 Voyta Krizek, https://github.com/NewTownData
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.newtowndata.disk.service;
+
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.springframework.core.env.Environment;
+
+/**
+ * Named set of scan roots and excludes, configured under
+ * {@code disk-analysis.scan.profiles.<name>}. The default profile scans every file system root.
+ */
+public record ScanProfile(String name, List<Path> roots, List<String> excludes,
+        boolean sameFileStore) {
+
+  public static final ScanProfile DEFAULT = new ScanProfile("default", List.of(), List.of(), false);
+
+  private static final String PREFIX = "disk-analysis.scan.profiles.";
+
+  public static ScanProfile of(Environment environment, String name) {
+    if (name == null || name.isBlank()) {
+      return DEFAULT;
+    }
+
+    String prefix = PREFIX + name + ".";
+    List<Path> roots = list(environment, prefix + "roots").stream().map(Path::of).toList();
+    if (roots.isEmpty()) {
+      throw new IllegalArgumentException("Scan profile " + name + " has no " + prefix + "roots");
+    }
+    return new ScanProfile(name, roots, list(environment, prefix + "excludes"),
+        environment.getProperty(prefix + "same-file-store", Boolean.class, false));
+  }
+
+  public List<Path> rootPaths() {
+    if (!roots.isEmpty()) {
+      return roots;
+    }
+
+    List<Path> rootPaths = new ArrayList<>();
+    for (Path root : FileSystems.getDefault().getRootDirectories()) {
+      rootPaths.add(root);
+    }
+    return rootPaths;
+  }
+
+  private static List<String> list(Environment environment, String key) {
+    String[] values = environment.getProperty(key, String[].class, new String[0]);
+    return Arrays.stream(values).map(String::trim).filter(value -> !value.isEmpty()).toList();
+  }
+
+}
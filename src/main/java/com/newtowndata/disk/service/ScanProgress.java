@@ -0,0 +1,99 @@
+/*
+ * Copyright 2021 Voyta Krizek, https://github.com/NewTownData
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.newtowndata.disk.service;
+
+import com.newtowndata.disk.core.PathConstants;
+import com.newtowndata.disk.core.entity.PathInfo;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Counters of a single scan. Updated by the scanner threads and read by the metric gauges.
+ */
+public class ScanProgress {
+
+  private final long startNanos = System.nanoTime();
+  private final LongAdder files = new LongAdder();
+  private final LongAdder directories = new LongAdder();
+  private final LongAdder bytes = new LongAdder();
+  private final LongAdder unreadableFiles = new LongAdder();
+  private final LongAdder unreadableDirectories = new LongAdder();
+  private volatile LongSupplier queueDepth = () -> 0L;
+  private volatile long endNanos;
+
+  public void record(PathInfo pathInfo) {
+    switch (pathInfo.fileType()) {
+      case PathConstants.FILE_TYPE_DIRECTORY -> directories.increment();
+      case PathConstants.FILE_TYPE_UNREADABLE_DIRECTORY -> unreadableDirectories.increment();
+      case PathConstants.FILE_TYPE_UNREADABLE_FILE -> unreadableFiles.increment();
+      default -> {
+        files.increment();
+        bytes.add(pathInfo.size());
+      }
+    }
+  }
+
+  public void setQueueDepth(LongSupplier queueDepth) {
+    this.queueDepth = queueDepth;
+  }
+
+  public void finish() {
+    queueDepth = () -> 0L;
+    endNanos = System.nanoTime();
+  }
+
+  public long files() {
+    return files.sum();
+  }
+
+  public long directories() {
+    return directories.sum();
+  }
+
+  public long bytes() {
+    return bytes.sum();
+  }
+
+  public long unreadableFiles() {
+    return unreadableFiles.sum();
+  }
+
+  public long unreadableDirectories() {
+    return unreadableDirectories.sum();
+  }
+
+  public long queueDepth() {
+    return queueDepth.getAsLong();
+  }
+
+  public long elapsedMillis() {
+    long end = endNanos != 0L ? endNanos : System.nanoTime();
+    return TimeUnit.NANOSECONDS.toMillis(end - startNanos);
+  }
+
+  public double filesPerSecond() {
+    return perSecond(files());
+  }
+
+  public double directoriesPerSecond() {
+    return perSecond(directories());
+  }
+
+  private double perSecond(long count) {
+    long elapsed = elapsedMillis();
+    return elapsed == 0L ? 0.0 : count * 1000.0 / elapsed;
+  }
+
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2021 Voyta Krizek, https://github.com/NewTownData
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.newtowndata.disk.service;
+
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * Low-impact scan mode. Directories are grouped by device and every device is scanned on its own
+ * {@link DeviceLane}, so all disks are walked in parallel while each is held to its own limits.
+ * Limits can be changed while a scan runs; devices without an override follow the defaults.
+ */
+@Service
+public class ScanScheduler {
+
+  private static final Logger LOG = LoggerFactory.getLogger(ScanScheduler.class);
+
+  private final boolean enabled;
+  private final int threads;
+  private final Map<String, DeviceLimits> overrides = new ConcurrentHashMap<>();
+  private final Map<Object, DeviceLane> lanes = new ConcurrentHashMap<>();
+
+  private volatile DeviceLimits defaults;
+
+  @Autowired
+  public ScanScheduler(@Value("${disk-analysis.scan.throttle.enabled:false}") boolean enabled,
+      @Value("${disk-analysis.scan.parallelism:0}") int threads,
+      @Value("${disk-analysis.scan.throttle.device-parallelism:2}") int deviceParallelism,
+      @Value("${disk-analysis.scan.throttle.stats-per-second:0}") int statsPerSecond) {
+    this.enabled = enabled;
+    this.threads = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+    this.defaults = new DeviceLimits(deviceParallelism, statsPerSecond);
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  public DeviceLimits getDefaults() {
+    return defaults;
+  }
+
+  public DeviceLimits getLimits(String device) {
+    return device == null ? defaults : overrides.getOrDefault(device, defaults);
+  }
+
+  public List<DeviceStatus> getDevices() {
+    return lanes.values().stream().map(DeviceLane::status)
+        .sorted(Comparator.comparing(DeviceStatus::device)).toList();
+  }
+
+  /**
+   * Changes the limits of one device, or the defaults when {@code device} is {@code null}. Lanes of
+   * a running scan pick the new limits up immediately.
+   */
+  public synchronized void setLimits(String device, DeviceLimits limits) {
+    if (device == null) {
+      defaults = limits;
+    } else {
+      overrides.put(device, limits);
+    }
+    for (DeviceLane lane : lanes.values()) {
+      if (device == null ? !overrides.containsKey(lane.name()) : device.equals(lane.name())) {
+        lane.apply(limits);
+      }
+    }
+    LOG.info("Scan limits of {} set to {}", Objects.requireNonNullElse(device, "all devices"),
+        limits);
+  }
+
+  public long getQueuedTaskCount() {
+    return lanes.values().stream().mapToLong(DeviceLane::getQueuedTaskCount).sum();
+  }
+
+  DeviceLane lane(Path directory) {
+    Object key = Devices.key(directory);
+    return lanes.computeIfAbsent(key == null ? "" : key, unused -> createLane(directory, key));
+  }
+
+  private synchronized DeviceLane createLane(Path directory, Object key) {
+    String name = Devices.name(directory, key);
+    LOG.info("Scanning device {} with {}", name, overrides.getOrDefault(name, defaults));
+    return new DeviceLane(name, threads, overrides.getOrDefault(name, defaults));
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    lanes.values().forEach(DeviceLane::shutdown);
+  }
+
+}
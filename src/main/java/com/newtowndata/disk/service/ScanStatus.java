@@ -0,0 +1,46 @@
+/*
+ * Copyright 2021 Voyta Krizek, https://github.com/NewTownData
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.newtowndata.disk.service;
+
+/**
+ * State of the background scan job. Timestamps are epoch milliseconds, {@code finishedAt} is null
+ * while the job runs.
+ */
+public record ScanStatus(State state, ScanType type, Long startedAt, Long finishedAt,
+    String error) {
+
+  public static final ScanStatus IDLE = new ScanStatus(State.IDLE, null, null, null, null);
+
+  public enum State {
+    IDLE, RUNNING, FINISHED, FAILED
+  }
+
+  public static ScanStatus running(ScanType type) {
+    return new ScanStatus(State.RUNNING, type, System.currentTimeMillis(), null, null);
+  }
+
+  public ScanStatus finished() {
+    return new ScanStatus(State.FINISHED, type, startedAt, System.currentTimeMillis(), null);
+  }
+
+  public ScanStatus failed(Throwable error) {
+    return new ScanStatus(State.FAILED, type, startedAt, System.currentTimeMillis(),
+        String.valueOf(error.getMessage()));
+  }
+
+  public boolean isRunning() {
+    return state == State.RUNNING;
+  }
+
+}
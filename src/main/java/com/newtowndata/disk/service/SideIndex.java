@@ -0,0 +1,188 @@
+/*
+ * Copyright 2021 Voyta Krizek, https://github.com/NewTownData
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.newtowndata.disk.service;
+
+import com.newtowndata.disk.core.entity.PathGraph;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Index derived from the graph and stored in a file next to the cache. The file carries a
+ * fingerprint of the cache file it was built for; a stale or missing file is rebuilt from the
+ * graph. In memory the index is bound to the graph instance it was built from and rebuilt on first
+ * use after the graph was swapped. Builds run on {@code executor}, one at a time per graph, and
+ * {@code onReplaced} runs once the value of a previous graph was replaced.
+ */
+class SideIndex<T> {
+
+  private static final Logger LOG = LoggerFactory.getLogger(SideIndex.class);
+
+  private final Path path;
+  private final Function<PathGraph, T> builder;
+  private final Reader<T> reader;
+  private final Writer<T> writer;
+  private final Executor executor;
+  private final Runnable onReplaced;
+
+  private volatile Derived<T> current;
+  private Build<T> building;
+  private long sequence;
+
+  SideIndex(Path path, Function<PathGraph, T> builder, Reader<T> reader, Writer<T> writer,
+      Executor executor, Runnable onReplaced) {
+    this.path = path;
+    this.builder = builder;
+    this.reader = reader;
+    this.writer = writer;
+    this.executor = executor;
+    this.onReplaced = onReplaced;
+  }
+
+  /**
+   * The index of {@code graph}. While the index of a swapped-in graph is being built, the value of
+   * the previous graph is served, so requests never wait for a traversal once an index exists.
+   */
+  T get(PathGraph graph) {
+    Derived<T> derived = current;
+    if (derived != null && derived.graph() == graph) {
+      return derived.value();
+    }
+
+    Build<T> build = build(graph, derived != null);
+    if (derived != null && !build.future().isDone()) {
+      return derived.value();
+    }
+    return build.future().join();
+  }
+
+  /** The index of exactly {@code graph}, waiting for it to be built. */
+  T require(PathGraph graph) {
+    Derived<T> derived = current;
+    if (derived != null && derived.graph() == graph) {
+      return derived.value();
+    }
+    return build(graph, false).future().join();
+  }
+
+  /** Starts or joins the build for {@code graph}, marking it when a stale value is served. */
+  private synchronized Build<T> build(PathGraph graph, boolean stale) {
+    Derived<T> derived = current;
+    if (derived != null && derived.graph() == graph) {
+      return new Build<>(graph, derived.sequence(),
+          CompletableFuture.completedFuture(derived.value()), new AtomicBoolean());
+    }
+    if (building != null && building.graph() == graph) {
+      if (stale) {
+        building.stale().set(true);
+      }
+      return building;
+    }
+
+    Build<T> build =
+        new Build<>(graph, ++sequence, new CompletableFuture<>(), new AtomicBoolean(stale));
+    building = build;
+    CompletableFuture.supplyAsync(() -> builder.apply(graph), executor)
+        .whenComplete((value, error) -> finish(build, value, error));
+    return build;
+  }
+
+  /** Binds a completed build; when a request was served the previous value, notifies. */
+  private void finish(Build<T> build, T value, Throwable error) {
+    boolean replaced;
+    synchronized (this) {
+      if (building == build) {
+        building = null;
+      }
+      if (error != null) {
+        LOG.warn("Failed to build {}", path, error);
+        build.future().completeExceptionally(error);
+        return;
+      }
+      Derived<T> previous = current;
+      bind(build.graph(), value, build.sequence());
+      replaced = current != previous && build.stale().get();
+    }
+    if (replaced) {
+      onReplaced.run();
+    }
+    build.future().complete(value);
+  }
+
+  /** Binds the index of one graph instance to an equivalent one, e.g. its compact copy. */
+  void rebind(PathGraph source, PathGraph target) {
+    T value = require(source);
+    synchronized (this) {
+      bind(target, value, ++sequence);
+    }
+  }
+
+  /** Reads the file written for the loaded cache, or builds and writes it when stale. */
+  void load(PathGraph graph, long fingerprint) {
+    try {
+      T value = reader.read(path, fingerprint);
+      if (value != null) {
+        synchronized (this) {
+          bind(graph, value, ++sequence);
+        }
+        return;
+      }
+    } catch (IOException e) {
+      LOG.warn("Failed to read {}, rebuilding", path, e);
+    }
+    save(graph, fingerprint);
+  }
+
+  void save(PathGraph graph, long fingerprint) {
+    try {
+      writer.write(require(graph), path, fingerprint);
+    } catch (IOException e) {
+      LOG.warn("Failed to write {}", path, e);
+    }
+  }
+
+  /** Keeps the newest value, a build that started before a later bind does not replace it. */
+  private synchronized void bind(PathGraph graph, T value, long number) {
+    Derived<T> derived = current;
+    if (derived == null || derived.sequence() < number) {
+      current = new Derived<>(graph, value, number);
+    }
+  }
+
+  interface Reader<T> {
+
+    /** @return null when the file is missing or was written for another cache file */
+    T read(Path path, long fingerprint) throws IOException;
+  }
+
+  interface Writer<T> {
+
+    void write(T value, Path path, long fingerprint) throws IOException;
+  }
+
+  private record Derived<T>(PathGraph graph, T value, long sequence) {
+
+  }
+
+  private record Build<T>(PathGraph graph, long sequence, CompletableFuture<T> future,
+      AtomicBoolean stale) {
+
+  }
+
+}
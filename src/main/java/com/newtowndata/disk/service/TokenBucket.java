@@ -0,0 +1,70 @@
+/*
+ * Copyright 2021 Voyta Krizek, https://github.com/NewTownData
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.newtowndata.disk.service;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Blocking rate limiter. Up to one second worth of operations may be taken in a burst; callers
+ * over the limit reserve a token in advance and sleep until it is due. A rate of {@code 0} does not
+ * limit.
+ */
+class TokenBucket {
+
+  private static final long SECOND = TimeUnit.SECONDS.toNanos(1L);
+
+  private int rate;
+  private double tokens;
+  private long updatedAt = System.nanoTime();
+
+  public TokenBucket(int rate) {
+    setRate(rate);
+  }
+
+  public synchronized void setRate(int rate) {
+    refill();
+    this.rate = Math.max(0, rate);
+    this.tokens = Math.min(tokens, this.rate);
+  }
+
+  public void acquire() {
+    long deadline;
+    synchronized (this) {
+      if (rate == 0) {
+        return;
+      }
+      refill();
+      tokens -= 1.0;
+      if (tokens >= 0.0) {
+        return;
+      }
+      deadline = updatedAt + (long) (-tokens * SECOND / rate);
+    }
+
+    long remaining;
+    while ((remaining = deadline - System.nanoTime()) > 0L) {
+      LockSupport.parkNanos(remaining);
+    }
+  }
+
+  private void refill() {
+    long now = System.nanoTime();
+    if (rate > 0) {
+      tokens = Math.min(rate, tokens + (double) (now - updatedAt) * rate / SECOND);
+    }
+    updatedAt = now;
+  }
+
+}
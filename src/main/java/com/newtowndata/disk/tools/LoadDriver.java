@@ -0,0 +1,230 @@
+/*
+ * Copyright 2021 Voyta Krizek, https://github.com/NewTownData
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.newtowndata.disk.tools;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Drives concurrent clients against a running instance and reports latency percentiles and
+ * throughput per endpoint. Directories are discovered breadth-first through {@code /api/list}, so
+ * the driver works against any loaded tree, typically one from {@link TreeGenerator}.
+ *
+ * <p>Only read endpoints are requested by default. {@code /cache/reload} can be added to the mix,
+ * but {@code /cache/refresh} and {@code /cache/rescan} are left out on purpose: they rescan the
+ * disk and would drop a generated tree that only exists in the cache file.
+ */
+public final class LoadDriver {
+
+  private static final Map<String, String> ENDPOINTS = Map.of(
+      "index", "/?path=",
+      "list", "/api/list?limit=50&path=",
+      "status", "/cache/status",
+      "reload", "/cache/reload");
+
+  private final HttpClient client;
+  private final ObjectMapper objectMapper = new ObjectMapper();
+  private final String baseUrl;
+
+  public LoadDriver(String baseUrl) {
+    this.baseUrl = baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl;
+    this.client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(10)).build();
+  }
+
+  public static void main(String[] args) throws Exception {
+    if (args.length < 1) {
+      System.err.println("Usage: LoadDriver <base url> [clients=8] [requests=2000] [warmup=200]"
+          + " [paths=200] [endpoints=index,list,status]");
+      System.exit(1);
+    }
+
+    Map<String, String> options = new HashMap<>(Map.of("clients", "8", "requests", "2000",
+        "warmup", "200", "paths", "200", "endpoints", "index,list,status"));
+    for (String arg : Arrays.asList(args).subList(1, args.length)) {
+      int index = arg.indexOf('=');
+      if (index < 0 || !options.containsKey(arg.substring(0, index))) {
+        throw new IllegalArgumentException("Unknown option " + arg);
+      }
+      options.put(arg.substring(0, index), arg.substring(index + 1));
+    }
+    List<String> endpoints = Arrays.asList(options.get("endpoints").split(","));
+    for (String endpoint : endpoints) {
+      if (!ENDPOINTS.containsKey(endpoint)) {
+        throw new IllegalArgumentException("Unknown endpoint " + endpoint);
+      }
+    }
+
+    LoadDriver driver = new LoadDriver(args[0]);
+    List<String> paths = driver.discover(Integer.parseInt(options.get("paths")));
+    System.out.println("Discovered " + paths.size() + " directories");
+
+    int clients = Integer.parseInt(options.get("clients"));
+    driver.run(paths, endpoints, clients, Integer.parseInt(options.get("warmup")));
+    Report report =
+        driver.run(paths, endpoints, clients, Integer.parseInt(options.get("requests")));
+    report.print();
+  }
+
+  /**
+   * Lists up to {@code limit} directories breadth-first from the roots.
+   */
+  public List<String> discover(int limit) throws IOException, InterruptedException {
+    List<String> directories = new ArrayList<>();
+    Deque<String> queue = new ArrayDeque<>(children(null));
+    while (!queue.isEmpty() && directories.size() < limit) {
+      String path = queue.poll();
+      directories.add(path);
+      queue.addAll(children(path));
+    }
+    return directories;
+  }
+
+  private List<String> children(String path) throws IOException, InterruptedException {
+    String uri = baseUrl + "/api/list?sort=name&limit=1000"
+        + (path == null ? "" : "&path=" + encode(path));
+    HttpResponse<String> response = client.send(HttpRequest.newBuilder(URI.create(uri)).build(),
+        HttpResponse.BodyHandlers.ofString());
+    if (response.statusCode() != 200) {
+      throw new IOException("GET " + uri + " returned " + response.statusCode());
+    }
+
+    List<String> children = new ArrayList<>();
+    for (JsonNode entry : objectMapper.readTree(response.body()).path("entries")) {
+      if (entry.path("directoryCount").asLong() > 0) {
+        children.add(entry.path("path").asText());
+      }
+    }
+    return children;
+  }
+
+  /**
+   * Sends {@code requests} requests from {@code clients} concurrent clients, each picking a random
+   * endpoint and directory.
+   */
+  public Report run(List<String> paths, List<String> endpoints, int clients, int requests)
+      throws InterruptedException, ExecutionException {
+    AtomicInteger remaining = new AtomicInteger(requests);
+    ExecutorService executor = Executors.newFixedThreadPool(clients);
+    try {
+      long start = System.nanoTime();
+      List<Future<List<Sample>>> futures = new ArrayList<>();
+      for (int i = 0; i < clients; i++) {
+        Random random = new Random(i);
+        futures.add(executor.submit(() -> {
+          List<Sample> samples = new ArrayList<>();
+          while (remaining.getAndDecrement() > 0) {
+            String endpoint = endpoints.get(random.nextInt(endpoints.size()));
+            samples.add(request(endpoint, paths.get(random.nextInt(paths.size()))));
+          }
+          return samples;
+        }));
+      }
+
+      List<Sample> samples = new ArrayList<>(requests);
+      for (Future<List<Sample>> future : futures) {
+        samples.addAll(future.get());
+      }
+      return new Report(samples, System.nanoTime() - start);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private Sample request(String endpoint, String path) {
+    String uri = baseUrl + ENDPOINTS.get(endpoint);
+    if (uri.endsWith("path=")) {
+      uri += encode(path);
+    }
+
+    long start = System.nanoTime();
+    boolean success;
+    try {
+      HttpResponse<Void> response = client.send(
+          HttpRequest.newBuilder(URI.create(uri)).timeout(Duration.ofMinutes(1)).build(),
+          HttpResponse.BodyHandlers.discarding());
+      success = response.statusCode() < 400;
+    } catch (IOException e) {
+      success = false;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      success = false;
+    }
+    return new Sample(endpoint, System.nanoTime() - start, success);
+  }
+
+  private static String encode(String value) {
+    return URLEncoder.encode(value, StandardCharsets.UTF_8);
+  }
+
+  public record Sample(String endpoint, long nanos, boolean success) {
+  }
+
+  public record Report(List<Sample> samples, long elapsedNanos) {
+
+    public void print() {
+      Map<String, List<Sample>> byEndpoint = new TreeMap<>();
+      for (Sample sample : samples) {
+        byEndpoint.computeIfAbsent(sample.endpoint(), key -> new ArrayList<>()).add(sample);
+      }
+      byEndpoint.put("total", samples);
+
+      System.out.printf(Locale.ROOT, "%-8s %8s %7s %10s %10s %10s%n", "endpoint", "requests",
+          "errors", "p50 ms", "p99 ms", "max ms");
+      for (Map.Entry<String, List<Sample>> entry : byEndpoint.entrySet()) {
+        long[] nanos = entry.getValue().stream().mapToLong(Sample::nanos).sorted().toArray();
+        long errors = entry.getValue().stream().filter(sample -> !sample.success()).count();
+        System.out.printf(Locale.ROOT, "%-8s %8d %7d %10.2f %10.2f %10.2f%n", entry.getKey(),
+            nanos.length, errors, millis(percentile(nanos, 0.5)), millis(percentile(nanos, 0.99)),
+            millis(nanos.length == 0 ? 0 : nanos[nanos.length - 1]));
+      }
+      System.out.printf(Locale.ROOT, "Throughput: %.1f requests/s%n",
+          samples.size() / (elapsedNanos / 1e9));
+    }
+
+    static long percentile(long[] sorted, double quantile) {
+      if (sorted.length == 0) {
+        return 0;
+      }
+      return sorted[(int) Math.min(sorted.length - 1, Math.ceil(quantile * sorted.length) - 1)];
+    }
+
+    private static double millis(long nanos) {
+      return nanos / 1e6;
+    }
+  }
+
+}
@@ -0,0 +1,242 @@
+/*
+ * Copyright 2021 Voyta Krizek, https://github.com/NewTownData
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.newtowndata.disk.tools;
+
+import com.newtowndata.disk.core.PathConstants;
+import com.newtowndata.disk.core.cache.CacheFormat;
+import com.newtowndata.disk.core.cache.GzipCacheFormat;
+import com.newtowndata.disk.core.cache.SegmentedCacheFormat;
+import com.newtowndata.disk.core.compact.CompactPathGraph;
+import com.newtowndata.disk.core.compact.CompactPathGraphBuilder;
+import com.newtowndata.disk.core.compact.MappedCacheFormat;
+import com.newtowndata.disk.core.compact.NodeGraph;
+import com.newtowndata.disk.core.entity.PathGraph;
+import com.newtowndata.disk.core.entity.PathInfo;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * Generates deterministic synthetic trees of a {@link TreeShape}, either on disk (ideally a tmpfs)
+ * to be scanned, or directly as a graph or cache file without touching the file system. Files on
+ * disk are created sparse, so their sizes cost no space.
+ *
+ * <pre>
+ * java -cp target/classes com.newtowndata.disk.tools.TreeGenerator cache cache.idx depth=4 files=100
+ * </pre>
+ */
+public final class TreeGenerator {
+
+  private static final String[] EXTENSIONS = {".txt", ".log", ".jpg", ".java", ".gz", ""};
+  private static final long EPOCH = 1_600_000_000_000L;
+  private static final long YEAR = 365L * 24L * 60L * 60L * 1000L;
+
+  private TreeGenerator() {}
+
+  public static void main(String[] args) throws IOException {
+    if (args.length < 2 || !List.of("disk", "cache").contains(args[0])) {
+      System.err.println("Usage: TreeGenerator disk <directory> [key=value...]");
+      System.err.println("       TreeGenerator cache <cache file> [format=GZIP|MAPPED|SEGMENTED]"
+          + " [root=/synthetic] [key=value...]");
+      System.exit(1);
+    }
+
+    Path target = Path.of(args[1]);
+    List<String> shapeArgs = new ArrayList<>();
+    CacheFormat format = CacheFormat.GZIP;
+    String root = "/synthetic";
+    for (String arg : Arrays.asList(args).subList(2, args.length)) {
+      if (arg.startsWith("format=")) {
+        format = CacheFormat.valueOf(arg.substring("format=".length()));
+      } else if (arg.startsWith("root=")) {
+        root = arg.substring("root=".length());
+      } else {
+        shapeArgs.add(arg);
+      }
+    }
+    TreeShape shape = TreeShape.parse(shapeArgs.toArray(String[]::new));
+
+    long start = System.currentTimeMillis();
+    int count;
+    if (args[0].equals("disk")) {
+      count = write(target, shape);
+    } else {
+      CompactPathGraph graph = compact(root, shape);
+      writeCache(graph, target, format);
+      count = graph.size();
+    }
+    System.out.println("Generated " + count + " entries of " + shape + " in "
+        + (System.currentTimeMillis() - start) + " ms");
+  }
+
+  public static CompactPathGraph compact(String root, TreeShape shape) {
+    CompactPathGraphBuilder builder = new CompactPathGraphBuilder();
+    generate(root, shape, (parentId, name, directory, size, timestamp) -> builder.add(parentId,
+        name, directory ? PathConstants.FILE_TYPE_DIRECTORY : PathConstants.FILE_TYPE_FILE,
+        timestamp, size));
+    return builder.build();
+  }
+
+  /**
+   * Same tree as {@link #compact(String, TreeShape)}, copied into the hash map the scanner builds.
+   */
+  public static PathGraph graph(String root, TreeShape shape) {
+    PathGraph view = compact(root, shape).toPathGraph();
+    Map<String, PathInfo> paths = new HashMap<>(view.pathInfos().size() * 4 / 3 + 1);
+    for (Map.Entry<String, PathInfo> entry : view.pathInfos().entrySet()) {
+      PathInfo pathInfo = entry.getValue();
+      paths.put(entry.getKey(), new PathInfo(pathInfo.parentPath(), pathInfo.fileType(),
+          pathInfo.name(), pathInfo.timestamp(), pathInfo.size(),
+          new ArrayList<>(pathInfo.children()), pathInfo.totals()));
+    }
+    return new PathGraph(new ArrayList<>(view.roots()), paths);
+  }
+
+  /**
+   * Creates the tree below an existing directory and returns the number of entries created,
+   * including the directory itself.
+   */
+  public static int write(Path root, TreeShape shape) throws IOException {
+    List<Path> paths = new ArrayList<>();
+    List<Long> timestamps = new ArrayList<>();
+    try {
+      generate(root.toString(), shape, (parentId, name, directory, size, timestamp) -> {
+        Path path = parentId == NodeGraph.NO_PARENT ? root : paths.get(parentId).resolve(name);
+        if (parentId == NodeGraph.NO_PARENT) {
+          Files.createDirectories(path);
+        } else if (directory) {
+          Files.createDirectory(path);
+        } else {
+          try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+            file.setLength(size);
+          }
+          Files.setLastModifiedTime(path, FileTime.fromMillis(timestamp));
+        }
+        paths.add(directory ? path : null);
+        timestamps.add(timestamp);
+        return paths.size() - 1;
+      });
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+
+    for (int id = paths.size() - 1; id >= 0; id--) {
+      if (paths.get(id) != null) {
+        Files.setLastModifiedTime(paths.get(id), FileTime.fromMillis(timestamps.get(id)));
+      }
+    }
+    return paths.size();
+  }
+
+  public static void writeCache(CompactPathGraph graph, Path target, CacheFormat format)
+      throws IOException {
+    int parallelism = Runtime.getRuntime().availableProcessors();
+    switch (format) {
+      case MAPPED -> MappedCacheFormat.write(graph, target);
+      case SEGMENTED -> SegmentedCacheFormat.write(graph.toPathGraph(), target,
+          GzipCacheFormat.DEFAULT_COMPRESSION_LEVEL, parallelism * 4, parallelism);
+      default -> GzipCacheFormat.write(graph.toPathGraph(), target);
+    }
+  }
+
+  public static void delete(Path directory) throws IOException {
+    try (Stream<Path> paths = Files.walk(directory)) {
+      for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+        Files.delete(path);
+      }
+    }
+  }
+
+  private static void generate(String root, TreeShape shape, Sink sink) {
+    Random random = new Random(shape.seed());
+    Generator generator = new Generator(shape, sink, random);
+    int rootId = generator.add(NodeGraph.NO_PARENT, root, true);
+
+    Deque<int[]> queue = new ArrayDeque<>();
+    queue.add(new int[] {rootId, 0});
+    while (!queue.isEmpty() && !generator.full()) {
+      int[] directory = queue.poll();
+      if (directory[1] < shape.depth()) {
+        for (int i = 0; i < shape.directories() && !generator.full(); i++) {
+          queue.add(new int[] {generator.add(directory[0], "dir-" + i, true), directory[1] + 1});
+        }
+      }
+      generator.addFiles(directory[0], shape.files());
+    }
+
+    if (shape.flat() > 0 && !generator.full()) {
+      generator.addFiles(generator.add(rootId, "flat", true), shape.flat());
+    }
+    int parentId = rootId;
+    for (int i = 0; i < shape.chain() && !generator.full(); i++) {
+      parentId = generator.add(parentId, i == 0 ? "deep" : "level-" + i, true);
+      generator.addFiles(parentId, 1);
+    }
+  }
+
+  @FunctionalInterface
+  private interface Sink {
+
+    int add(int parentId, String name, boolean directory, long size, long timestamp)
+        throws IOException;
+  }
+
+  private static class Generator {
+
+    private final TreeShape shape;
+    private final Sink sink;
+    private final Random random;
+    private int count;
+
+    public Generator(TreeShape shape, Sink sink, Random random) {
+      this.shape = shape;
+      this.sink = sink;
+      this.random = random;
+    }
+
+    public boolean full() {
+      return count >= shape.limit();
+    }
+
+    public int add(int parentId, String name, boolean directory) {
+      long size = directory ? 4096L : random.nextLong(2L * shape.fileSize() + 1L);
+      try {
+        count++;
+        return sink.add(parentId, name, directory, size, EPOCH + random.nextLong(YEAR));
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+
+    public void addFiles(int parentId, int files) {
+      for (int i = 0; i < files && !full(); i++) {
+        add(parentId, "file-" + i + EXTENSIONS[i % EXTENSIONS.length], false);
+      }
+    }
+  }
+
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2021 Voyta Krizek, https://github.com/NewTownData
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.newtowndata.disk.tools;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Shape of a synthetic tree. Every directory down to {@code depth} has {@code directories}
+ * subdirectories and every directory has {@code files} files. {@code flat} adds a single directory
+ * with that many files and {@code chain} a single path that many directories deep. Generation stops
+ * after {@code limit} entries.
+ */
+public record TreeShape(int depth, int directories, int files, int flat, int chain, long fileSize,
+    int limit, long seed) {
+
+  public static final TreeShape DEFAULT = new TreeShape(3, 8, 16, 0, 0, 4096L, Integer.MAX_VALUE,
+      42L);
+
+  private static final List<String> KEYS =
+      List.of("depth", "directories", "files", "flat", "chain", "file-size", "limit", "seed");
+
+  /**
+   * Reads {@code key=value} arguments, for example {@code depth=4 files=100 flat=1000000}. Missing
+   * keys keep their {@link #DEFAULT} values.
+   */
+  public static TreeShape parse(String... args) {
+    Map<String, Long> values = new HashMap<>();
+    for (String arg : args) {
+      int index = arg.indexOf('=');
+      String key = index < 0 ? arg : arg.substring(0, index);
+      if (index < 0 || !KEYS.contains(key)) {
+        throw new IllegalArgumentException("Expected one of " + KEYS + " as key=value, got " + arg);
+      }
+      values.put(key, Long.parseLong(arg.substring(index + 1).replace("_", "")));
+    }
+
+    return new TreeShape(
+        values.getOrDefault("depth", (long) DEFAULT.depth).intValue(),
+        values.getOrDefault("directories", (long) DEFAULT.directories).intValue(),
+        values.getOrDefault("files", (long) DEFAULT.files).intValue(),
+        values.getOrDefault("flat", (long) DEFAULT.flat).intValue(),
+        values.getOrDefault("chain", (long) DEFAULT.chain).intValue(),
+        values.getOrDefault("file-size", DEFAULT.fileSize),
+        values.getOrDefault("limit", (long) DEFAULT.limit).intValue(),
+        values.getOrDefault("seed", DEFAULT.seed));
+  }
+
+}
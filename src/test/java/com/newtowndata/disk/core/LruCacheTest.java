@@ -0,0 +1,51 @@
+package com.newtowndata.disk.core;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+public class LruCacheTest {
+
+  @Test
+  void evictsLeastRecentlyUsedByWeight() {
+    LruCache<String, List<Integer>> cache = new LruCache<>(5, List::size);
+    AtomicInteger loads = new AtomicInteger();
+
+    cache.get("a", key -> load(loads, 2));
+    cache.get("b", key -> load(loads, 2));
+    cache.get("a", key -> load(loads, 2));
+    assertEquals(2, loads.get());
+
+    // "b" is the least recently used entry and makes room for "c"
+    cache.get("c", key -> load(loads, 3));
+    assertEquals(5, cache.weight());
+    cache.get("a", key -> load(loads, 2));
+    assertEquals(3, loads.get());
+    cache.get("b", key -> load(loads, 2));
+    assertEquals(4, loads.get());
+    assertEquals(2, cache.size());
+  }
+
+  @Test
+  void skipsValuesHeavierThanCapacity() {
+    LruCache<String, List<Integer>> cache = new LruCache<>(2, List::size);
+    AtomicInteger loads = new AtomicInteger();
+
+    assertEquals(3, cache.get("a", key -> load(loads, 3)).size());
+    cache.get("a", key -> load(loads, 3));
+    assertEquals(2, loads.get());
+    assertEquals(0, cache.size());
+
+    cache.get("b", key -> load(loads, 1));
+    cache.clear();
+    assertEquals(0, cache.weight());
+  }
+
+  private static List<Integer> load(AtomicInteger loads, int size) {
+    loads.incrementAndGet();
+    return Collections.nCopies(size, 0);
+  }
+
+}
@@ -0,0 +1,32 @@
+package com.newtowndata.disk.core;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+public class PathFilterTest {
+
+  @Test
+  void matchesGlobsAndRegexes() {
+    PathFilter filter = PathFilter.compile(
+        List.of("/proc", "glob:**/node_modules", "/home/*/.cache", "regex:.*\\.tmp", " "));
+
+    assertTrue(filter.matches("/proc"));
+    assertFalse(filter.matches("/proc/1"));
+    assertFalse(filter.matches("/processes"));
+    assertTrue(filter.matches("/srv/app/node_modules"));
+    assertFalse(filter.matches("/srv/app/node_modules.txt"));
+    assertTrue(filter.matches("/home/user/.cache"));
+    assertFalse(filter.matches("/home/user/nested/.cache"));
+    assertTrue(filter.matches("/var/log/x.tmp"));
+    assertFalse(filter.matches("/var/log/x.tmpl"));
+  }
+
+  @Test
+  void emptyFilterMatchesNothing() {
+    assertFalse(PathFilter.compile(List.of()).matches("/"));
+    assertFalse(PathFilter.NONE.matches(""));
+  }
+
+}
@@ -0,0 +1,29 @@
+package com.newtowndata.disk.core;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+public class TopNTest {
+
+  @Test
+  void selectsSameItemsAsFullSort() {
+    Random random = new Random(42L);
+    List<Integer> items = new ArrayList<>();
+    for (int i = 0; i < 10_000; i++) {
+      items.add(random.nextInt(1000));
+    }
+    Comparator<Integer> order = Comparator.reverseOrder();
+
+    List<Integer> sorted = new ArrayList<>(items);
+    sorted.sort(order);
+    for (int count : new int[] {0, 1, 50, 10_000, 20_000}) {
+      assertEquals(sorted.subList(0, Math.min(count, items.size())),
+          TopN.select(items, count, order));
+    }
+  }
+
+}
@@ -0,0 +1,94 @@
+package com.newtowndata.disk.core.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import com.newtowndata.disk.core.compact.MappedCacheFormat;
+import com.newtowndata.disk.core.entity.PathGraph;
+import com.newtowndata.disk.core.entity.PathInfo;
+import com.newtowndata.disk.service.FileVerification;
+import com.newtowndata.disk.service.PathServices;
+import com.newtowndata.disk.service.SizeAccounting;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class CacheFormatTest {
+
+  @TempDir
+  Path directory;
+
+  @Test
+  void formatsRoundTrip() throws IOException {
+    Path root = Files.createDirectory(directory.resolve("root"));
+    for (int i = 0; i < 5; i++) {
+      Path child = Files.createDirectories(root.resolve("dir-" + i).resolve("nested-" + i));
+      Files.writeString(child.resolve("file.txt"), "x".repeat(i));
+      Files.writeString(root.resolve("dir-" + i).resolve("file-" + i), "abc");
+    }
+    Files.createLink(root.resolve("link"), root.resolve("dir-4").resolve("file-4"));
+    PathGraph source =
+        PathServices.of(2, FileVerification.STAT, SizeAccounting.ALLOCATED).create(List.of(root));
+    PathInfo rootInfo = source.pathInfos().get(root.toString());
+    assertNotEquals(rootInfo.totals().size(), rootInfo.totals().diskSize());
+
+    Path gzip = directory.resolve("cache.idx");
+    GzipCacheFormat.write(source, gzip);
+    Path mapped = directory.resolve("cache-v2.idx");
+    assertEquals(CacheFormat.MAPPED, CacheConverter.convert(gzip, mapped));
+
+    assertEquals(Optional.of(CacheFormat.GZIP), CacheFormat.detect(gzip));
+    assertEquals(Optional.of(CacheFormat.MAPPED), CacheFormat.detect(mapped));
+    assertSameGraph(source, GzipCacheFormat.read(gzip));
+    assertSameGraph(source, GzipCacheFormat.readCompact(gzip).toPathGraph());
+    assertSameGraph(source, MappedCacheFormat.open(mapped).toPathGraph());
+  }
+
+  @Test
+  void segmentedRoundTrip() throws IOException {
+    Path root = Files.createDirectory(directory.resolve("root"));
+    for (int i = 0; i < 5; i++) {
+      Path child = Files.createDirectories(root.resolve("dir-" + i).resolve("nested-" + i));
+      for (int j = 0; j < i; j++) {
+        Files.writeString(child.resolve("file-" + j), "x".repeat(j));
+      }
+    }
+    PathGraph source =
+        PathServices.of(2, FileVerification.STAT, SizeAccounting.ALLOCATED).create(List.of(root));
+
+    for (int segmentCount : new int[] {1, 3, 8}) {
+      Path segmented = directory.resolve("cache-v3-" + segmentCount + ".idx");
+      SegmentedCacheFormat.write(source, segmented, 1, segmentCount, 2);
+
+      assertEquals(Optional.of(CacheFormat.SEGMENTED), CacheFormat.detect(segmented));
+      assertSameGraph(source, SegmentedCacheFormat.read(segmented, 2));
+      assertSameGraph(source, SegmentedCacheFormat.readCompact(segmented, 2).toPathGraph());
+    }
+
+    Path gzip = directory.resolve("cache.idx");
+    assertEquals(CacheFormat.GZIP,
+        CacheConverter.convert(directory.resolve("cache-v3-3.idx"), gzip, CacheFormat.GZIP));
+    assertSameGraph(source, GzipCacheFormat.read(gzip));
+  }
+
+  private static void assertSameGraph(PathGraph expected, PathGraph actual) {
+    assertEquals(expected.roots(), actual.roots());
+    assertEquals(expected.pathInfos().size(), actual.pathInfos().size());
+    for (Map.Entry<String, PathInfo> entry : expected.pathInfos().entrySet()) {
+      PathInfo expectedInfo = entry.getValue();
+      PathInfo actualInfo = actual.pathInfos().get(entry.getKey());
+      assertEquals(expectedInfo.name(), actualInfo.name());
+      assertEquals(expectedInfo.fileType(), actualInfo.fileType());
+      assertEquals(expectedInfo.timestamp(), actualInfo.timestamp());
+      assertEquals(expectedInfo.size(), actualInfo.size());
+      assertEquals(expectedInfo.totals(), actualInfo.totals());
+      assertEquals(new HashSet<>(expectedInfo.children()), new HashSet<>(actualInfo.children()));
+    }
+  }
+
+}
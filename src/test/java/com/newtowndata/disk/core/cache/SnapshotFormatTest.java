@@ -0,0 +1,130 @@
+package com.newtowndata.disk.core.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import com.newtowndata.disk.core.entity.PathGraph;
+import com.newtowndata.disk.core.entity.PathInfo;
+import com.newtowndata.disk.core.entity.PathTotals;
+import com.newtowndata.disk.tools.TreeGenerator;
+import com.newtowndata.disk.tools.TreeShape;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+public class SnapshotFormatTest {
+
+  private static final TreeShape SHAPE =
+      TreeShape.parse("depth=3", "directories=4", "files=8", "chain=10");
+
+  @Test
+  void fullSnapshotRoundTrips() throws IOException {
+    PathGraph graph = TreeGenerator.graph("/synthetic", SHAPE);
+    byte[] snapshot = write(graph, new SnapshotFormat.Header("web1", 1L, 0L), null);
+
+    DataInputStream dis = SnapshotFormat.open(new ByteArrayInputStream(snapshot));
+    assertEquals(new SnapshotFormat.Header("web1", 1L, 0L), SnapshotFormat.readHeader(dis));
+    PathGraph read = SnapshotFormat.readGraph(dis, null);
+
+    assertEquals(graph.roots(), read.roots());
+    assertEquals(graph.pathInfos(), read.pathInfos());
+  }
+
+  @Test
+  void deltaAppliesLikeFullSnapshot() throws IOException {
+    PathGraph base = TreeGenerator.graph("/synthetic", SHAPE);
+    SnapshotFormat.Digests digests = SnapshotFormat.digests(base);
+
+    PathGraph changed = resize(base, "/synthetic/dir-1/dir-2/dir-0/file-1.log", 1_000_000L);
+    changed = remove(changed, "/synthetic/dir-3");
+    byte[] full = write(changed, new SnapshotFormat.Header("web1", 2L, 0L), null);
+    byte[] delta = write(changed, new SnapshotFormat.Header("web1", 2L, 1L), digests);
+    assertTrue(delta.length * 4 < full.length, delta.length + " of " + full.length);
+
+    DataInputStream dis = SnapshotFormat.open(new ByteArrayInputStream(delta));
+    assertFalse(SnapshotFormat.readHeader(dis).isFull());
+    PathGraph read = SnapshotFormat.readGraph(dis, base);
+
+    assertEquals(changed.pathInfos(), read.pathInfos());
+    assertFalse(read.pathInfos().containsKey("/synthetic/dir-3/dir-0"));
+    assertEquals(1_000_000L,
+        read.pathInfos().get("/synthetic/dir-1/dir-2/dir-0/file-1.log").size());
+  }
+
+  @Test
+  void unchangedGraphSendsOnlyRoots() throws IOException {
+    PathGraph graph = TreeGenerator.graph("/synthetic", SHAPE);
+    byte[] delta = write(graph, new SnapshotFormat.Header("web1", 2L, 1L),
+        SnapshotFormat.digests(graph));
+
+    DataInputStream dis = SnapshotFormat.open(new ByteArrayInputStream(delta));
+    SnapshotFormat.readHeader(dis);
+    PathGraph read = SnapshotFormat.readGraph(dis, graph);
+    assertEquals(graph.pathInfos(), read.pathInfos());
+    assertTrue(delta.length < 200, Integer.toString(delta.length));
+  }
+
+  @Test
+  void deltaRequiresBase() throws IOException {
+    PathGraph graph = TreeGenerator.graph("/synthetic", SHAPE);
+    byte[] delta = write(graph, new SnapshotFormat.Header("web1", 2L, 1L),
+        SnapshotFormat.digests(graph));
+
+    DataInputStream dis = SnapshotFormat.open(new ByteArrayInputStream(delta));
+    SnapshotFormat.readHeader(dis);
+    assertThrows(IOException.class, () -> SnapshotFormat.readGraph(dis, null));
+  }
+
+  private static byte[] write(PathGraph graph, SnapshotFormat.Header header,
+      SnapshotFormat.Digests digests) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    SnapshotFormat.write(graph, header, digests, out);
+    return out.toByteArray();
+  }
+
+  private static PathGraph resize(PathGraph graph, String path, long size) {
+    Map<String, PathInfo> pathInfos = new HashMap<>(graph.pathInfos());
+    PathInfo pathInfo = pathInfos.get(path);
+    pathInfos.put(path, new PathInfo(pathInfo.parentPath(), pathInfo.fileType(), pathInfo.name(),
+        pathInfo.timestamp(), size, pathInfo.children()));
+    PathTotals difference = PathTotals.of(pathInfo.fileType(), size)
+        .subtract(PathTotals.of(pathInfo.fileType(), pathInfo.size()));
+    addToAncestors(pathInfos, pathInfo.parentPath(), difference);
+    return new PathGraph(graph.roots(), pathInfos);
+  }
+
+  private static PathGraph remove(PathGraph graph, String path) {
+    Map<String, PathInfo> pathInfos = new HashMap<>(graph.pathInfos());
+    PathInfo pathInfo = pathInfos.get(path);
+    List<String> pending = new ArrayList<>(List.of(path));
+    while (!pending.isEmpty()) {
+      pending.addAll(pathInfos.remove(pending.remove(pending.size() - 1)).children());
+    }
+
+    PathInfo parent = pathInfos.get(pathInfo.parentPath());
+    List<String> children = new ArrayList<>(parent.children());
+    children.remove(path);
+    pathInfos.put(pathInfo.parentPath(), new PathInfo(parent.parentPath(), parent.fileType(),
+        parent.name(), parent.timestamp(), parent.size(), children, parent.totals()));
+    addToAncestors(pathInfos, pathInfo.parentPath(),
+        PathTotals.EMPTY.subtract(pathInfo.totals()));
+    return new PathGraph(graph.roots(), pathInfos);
+  }
+
+  private static void addToAncestors(Map<String, PathInfo> pathInfos, String path,
+      PathTotals difference) {
+    while (path != null) {
+      PathInfo pathInfo = pathInfos.get(path);
+      pathInfos.put(path, pathInfo.withTotals(pathInfo.totals().add(difference)));
+      path = pathInfo.parentPath();
+    }
+  }
+
+}
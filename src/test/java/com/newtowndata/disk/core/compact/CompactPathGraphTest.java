@@ -0,0 +1,54 @@
+package com.newtowndata.disk.core.compact;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import com.newtowndata.disk.core.entity.PathGraph;
+import com.newtowndata.disk.core.entity.PathInfo;
+import com.newtowndata.disk.service.FileVerification;
+import com.newtowndata.disk.service.PathServices;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class CompactPathGraphTest {
+
+  @TempDir
+  Path root;
+
+  @Test
+  void viewMatchesSourceGraph() throws IOException {
+    for (int i = 0; i < 3; i++) {
+      Path directory = Files.createDirectories(root.resolve("dir-" + i).resolve("nested"));
+      Files.writeString(directory.resolve("same.txt"), "x".repeat(i + 1));
+      Files.writeString(root.resolve("dir-" + i).resolve("file-" + i), "abc");
+    }
+    PathGraph source = PathServices.of(2, FileVerification.STAT).create(List.of(root));
+
+    PathGraph compact = CompactPathGraph.from(source).toPathGraph();
+
+    assertEquals(source.roots(), compact.roots());
+    assertEquals(source.pathInfos().size(), compact.pathInfos().size());
+    for (Map.Entry<String, PathInfo> entry : source.pathInfos().entrySet()) {
+      PathInfo expected = entry.getValue();
+      PathInfo actual = compact.pathInfos().get(entry.getKey());
+      assertEquals(expected.fileType(), actual.fileType());
+      assertEquals(expected.name(), actual.name());
+      assertEquals(expected.timestamp(), actual.timestamp());
+      assertEquals(expected.size(), actual.size());
+      assertEquals(expected.totals(), actual.totals());
+      assertEquals(new HashSet<>(expected.children()), new HashSet<>(actual.children()));
+      if (!entry.getKey().equals(root.toString())) {
+        assertEquals(expected.parentPath(), actual.parentPath());
+      }
+    }
+    assertEquals(source.pathInfos().keySet(), compact.pathInfos().keySet());
+    assertNull(compact.pathInfos().get(root.resolve("missing").toString()));
+    assertNull(compact.pathInfos().get(root + "-other"));
+  }
+
+}
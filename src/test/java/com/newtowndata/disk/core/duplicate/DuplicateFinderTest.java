@@ -0,0 +1,75 @@
+package com.newtowndata.disk.core.duplicate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import com.newtowndata.disk.core.entity.PathGraph;
+import com.newtowndata.disk.service.FileVerification;
+import com.newtowndata.disk.service.PathServices;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class DuplicateFinderTest {
+
+  @TempDir
+  Path directory;
+
+  @Test
+  void findsDuplicatesInStages() throws IOException {
+    Path root = Files.createDirectory(directory.resolve("root"));
+    byte[] large = new byte[5 * DuplicateFinder.EDGE_SIZE];
+    Files.write(root.resolve("large-1"), large);
+    Files.write(Files.createDirectory(root.resolve("copy")).resolve("large-2"), large);
+    large[2 * DuplicateFinder.EDGE_SIZE] = 1;
+    Files.write(root.resolve("large-middle-differs"), large);
+    Files.writeString(root.resolve("small-1"), "same");
+    Files.writeString(root.resolve("small-2"), "same");
+    Files.writeString(root.resolve("small-3"), "diff");
+    Files.writeString(root.resolve("unique"), "unique size");
+    PathGraph graph = PathServices.of(2, FileVerification.STAT).create(List.of(root));
+
+    HashCache hashCache = new HashCache();
+    DuplicateReport report = new DuplicateFinder(hashCache, 2).find(graph, 1L);
+
+    assertEquals(2, report.sets().size());
+    DuplicateReport.DuplicateSet largest = report.sets().get(0);
+    assertEquals(List.of(root.resolve("copy/large-2").toString(),
+        root.resolve("large-1").toString()), largest.paths());
+    assertEquals(large.length, largest.reclaimableBytes());
+    assertEquals(List.of(root.resolve("small-1").toString(), root.resolve("small-2").toString()),
+        report.sets().get(1).paths());
+    assertEquals(large.length + 4L, report.reclaimableBytes());
+    assertEquals(6L, report.candidateFiles());
+    assertEquals(6L, report.partialHashes());
+    assertEquals(3L, report.fullHashes());
+
+    Path file = directory.resolve("cache.idx.hashes");
+    hashCache.write(file);
+    DuplicateReport rerun = new DuplicateFinder(HashCache.read(file), 2).find(graph, 1L);
+    assertEquals(report.sets(), rerun.sets());
+    assertEquals(0L, rerun.partialHashes() + rerun.fullHashes());
+    assertEquals(9L, rerun.cacheHits());
+  }
+
+  @Test
+  void collapsesHardLinks() throws IOException {
+    Path root = Files.createDirectory(directory.resolve("root"));
+    Files.writeString(root.resolve("a"), "linked");
+    Files.createLink(root.resolve("b"), root.resolve("a"));
+    Files.writeString(root.resolve("c"), "copied");
+    Files.writeString(root.resolve("d"), "copied");
+    Files.createLink(root.resolve("e"), root.resolve("d"));
+    PathGraph graph = PathServices.of(1, FileVerification.STAT).create(List.of(root));
+
+    DuplicateReport report = new DuplicateFinder(new HashCache(), 1).find(graph, 1L);
+
+    assertEquals(1, report.sets().size());
+    assertEquals(List.of(root.resolve("c").toString(), root.resolve("d").toString()),
+        report.sets().get(0).paths());
+    assertEquals(6L, report.reclaimableBytes());
+    assertEquals(3L, report.partialHashes());
+  }
+
+}
@@ -0,0 +1,82 @@
+package com.newtowndata.disk.core.entity;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import com.newtowndata.disk.core.PathConstants;
+import com.newtowndata.disk.tools.TreeGenerator;
+import com.newtowndata.disk.tools.TreeShape;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+
+public class HostPathInfoMapTest {
+
+  private static final TreeShape SHAPE =
+      TreeShape.parse("depth=2", "directories=3", "files=4", "chain=5");
+
+  private final PathGraph web = TreeGenerator.graph("/srv", SHAPE);
+  private final PathGraph db = TreeGenerator.graph("/var", SHAPE);
+
+  @Test
+  void prefixesEveryPathWithItsHost() {
+    PathGraph merged = merge();
+
+    assertEquals(List.of("[web1]", "[db1]"), merged.roots());
+    PathInfo original = web.pathInfos().get("/srv/dir-1");
+    PathInfo prefixed = merged.pathInfos().get("[web1]/srv/dir-1");
+    assertEquals("[web1]/srv", prefixed.parentPath());
+    assertEquals(original.name(), prefixed.name());
+    assertEquals(original.totals(), prefixed.totals());
+    List<String> children = new ArrayList<>();
+    original.children().forEach(child -> children.add("[web1]" + child));
+    assertEquals(children, prefixed.children());
+
+    assertNull(merged.pathInfos().get("/srv/dir-1"));
+    assertNull(merged.pathInfos().get("[web2]/srv/dir-1"));
+    assertNull(merged.pathInfos().get("[db1]/srv/dir-1"));
+    assertFalse(merged.pathInfos().containsKey("[web1"));
+  }
+
+  @Test
+  void linksHostRootsToVirtualRoots() {
+    PathGraph merged = merge();
+
+    PathInfo virtualRoot = merged.pathInfos().get("[db1]");
+    assertNull(virtualRoot.parentPath());
+    assertEquals("db1", virtualRoot.name());
+    assertEquals(PathConstants.FILE_TYPE_DIRECTORY, virtualRoot.fileType());
+    assertEquals(List.of("[db1]/var"), virtualRoot.children());
+    PathTotals rootTotals = db.pathInfos().get("/var").totals();
+    assertEquals(rootTotals.size(), virtualRoot.totals().size());
+    assertEquals(rootTotals.fileCount(), virtualRoot.totals().fileCount());
+    assertEquals("[db1]", merged.pathInfos().get("[db1]/var").parentPath());
+  }
+
+  @Test
+  void iteratesAllEntries() {
+    PathGraph merged = merge();
+
+    int size = web.pathInfos().size() + db.pathInfos().size() + 2;
+    assertEquals(size, merged.pathInfos().size());
+    assertEquals(size, merged.pathInfos().entrySet().size());
+    Set<String> keys = new HashSet<>();
+    for (Map.Entry<String, PathInfo> entry : merged.pathInfos().entrySet()) {
+      keys.add(entry.getKey());
+      assertEquals(merged.pathInfos().get(entry.getKey()), entry.getValue(), entry.getKey());
+    }
+    assertEquals(size, keys.size());
+  }
+
+  private PathGraph merge() {
+    Map<String, PathGraph> hosts = new LinkedHashMap<>();
+    hosts.put("web1", web);
+    hosts.put("db1", db);
+    return HostPathInfoMap.merge(hosts);
+  }
+
+}
@@ -0,0 +1,107 @@
+package com.newtowndata.disk.core.export;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import com.newtowndata.disk.core.PathConstants;
+import com.newtowndata.disk.core.cache.CacheFormat;
+import com.newtowndata.disk.core.entity.PathGraph;
+import com.newtowndata.disk.core.entity.PathInfo;
+import com.newtowndata.disk.tools.TreeGenerator;
+import com.newtowndata.disk.tools.TreeShape;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class TreeExporterTest {
+
+  private static final TreeShape SHAPE =
+      TreeShape.parse("depth=3", "directories=3", "files=5", "chain=20");
+
+  @TempDir
+  Path directory;
+
+  @Test
+  void cacheFilesExportLikeGraph() throws IOException {
+    PathGraph graph = TreeGenerator.graph("/synthetic", SHAPE);
+    List<String> expected = sorted(export(graph, null, 0L, ExportFormat.NDJSON));
+    assertEquals(graph.pathInfos().size(), expected.size());
+
+    for (CacheFormat format : CacheFormat.values()) {
+      Path cache = directory.resolve(format + ".idx");
+      TreeGenerator.writeCache(TreeGenerator.compact("/synthetic", SHAPE), cache, format);
+      StringWriter out = new StringWriter();
+      TreeExporter.export(cache, null, 0L, new ExportWriter(out, ExportFormat.NDJSON));
+      assertEquals(expected, sorted(out.toString()), format.name());
+
+      out = new StringWriter();
+      TreeExporter.export(cache, "/synthetic/dir-1", 0L,
+          new ExportWriter(out, ExportFormat.NDJSON));
+      assertEquals(sorted(export(graph, "/synthetic/dir-1", 0L, ExportFormat.NDJSON)),
+          sorted(out.toString()), format.name());
+
+      out = new StringWriter();
+      TreeExporter.export(cache, null, 5000L, new ExportWriter(out, ExportFormat.NDJSON));
+      assertEquals(sorted(export(graph, null, 5000L, ExportFormat.NDJSON)),
+          sorted(out.toString()), format.name());
+
+      out = new StringWriter();
+      assertFalse(TreeExporter.export(cache, "/synthetic/missing", 0L,
+          new ExportWriter(out, ExportFormat.NDJSON)), format.name());
+      assertEquals("", out.toString(), format.name());
+    }
+  }
+
+  @Test
+  void exportsDepthFirstPostOrder() throws IOException {
+    PathGraph graph = TreeGenerator.graph("/synthetic", SHAPE);
+    String[] lines = export(graph, "/synthetic/dir-0", 0L, ExportFormat.CSV).split("\n");
+
+    assertEquals("path,type,size,totalSize,timestamp", lines[0]);
+    assertTrue(lines[lines.length - 1].startsWith("/synthetic/dir-0,D,"));
+    PathInfo dir = graph.pathInfos().get("/synthetic/dir-0");
+    assertEquals(dir.totals().fileCount() + dir.totals().directoryCount(), lines.length - 1);
+  }
+
+  @Test
+  void minSizeKeepsLargeEntriesOnly() throws IOException {
+    PathGraph graph = TreeGenerator.graph("/synthetic", SHAPE);
+    String[] lines = export(graph, null, 5000L, ExportFormat.CSV).split("\n");
+
+    long expected = graph.pathInfos().values().stream()
+        .filter(pathInfo -> pathInfo.totals().size() >= 5000L).count();
+    assertEquals(expected, lines.length - 1);
+  }
+
+  @Test
+  void escapesNames() throws IOException {
+    StringWriter out = new StringWriter();
+    ExportWriter writer = new ExportWriter(out, ExportFormat.CSV);
+    writer.row("/a,\"b\"", PathConstants.FILE_TYPE_FILE, 1L, 1L, 2L);
+    assertEquals("path,type,size,totalSize,timestamp\n\"/a,\"\"b\"\"\",F,1,1,2\n",
+        out.toString());
+
+    out = new StringWriter();
+    writer = new ExportWriter(out, ExportFormat.NDJSON);
+    writer.row("/a\"\\\n", PathConstants.FILE_TYPE_FILE, 1L, 1L, 2L);
+    assertEquals("{\"path\":\"/a\\\"\\\\\\u000a\",\"type\":\"F\",\"size\":1,\"totalSize\":1,"
+        + "\"timestamp\":2}\n", out.toString());
+    assertEquals(1L, writer.rowCount());
+  }
+
+  private static String export(PathGraph graph, String path, long minSize, ExportFormat format)
+      throws IOException {
+    StringWriter out = new StringWriter();
+    TreeExporter.export(graph, path, minSize, new ExportWriter(out, format));
+    return out.toString();
+  }
+
+  private static List<String> sorted(String export) {
+    return Arrays.stream(export.split("\n")).sorted().toList();
+  }
+
+}
@@ -0,0 +1,77 @@
+package com.newtowndata.disk.core.index;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import com.newtowndata.disk.core.PathConstants;
+import com.newtowndata.disk.core.entity.HostPathInfoMap;
+import com.newtowndata.disk.core.entity.PathGraph;
+import com.newtowndata.disk.core.entity.PathInfo;
+import com.newtowndata.disk.service.FileVerification;
+import com.newtowndata.disk.service.PathServices;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class ExtensionIndexTest {
+
+  @TempDir
+  Path directory;
+
+  @Test
+  void rollsUpTopExtensions() throws IOException {
+    Path root = Files.createDirectory(directory.resolve("root"));
+    Path logs = Files.createDirectory(root.resolve("logs"));
+    Files.writeString(logs.resolve("a.log"), "x".repeat(500));
+    Files.writeString(logs.resolve("b.LOG"), "x".repeat(300));
+    Files.writeString(logs.resolve("c.txt"), "x".repeat(100));
+    Files.writeString(root.resolve("data.parquet"), "x".repeat(400));
+    Files.writeString(root.resolve("README"), "x".repeat(50));
+    Files.writeString(root.resolve(".hidden"), "x".repeat(10));
+    PathGraph graph = PathServices.of(2, FileVerification.STAT).create(List.of(root));
+
+    ExtensionIndex index = ExtensionIndex.build(graph, 2);
+
+    assertEquals(new ExtensionHistogram(List.of(new ExtensionHistogram.Bucket("log", 800L, 2L),
+        new ExtensionHistogram.Bucket("txt", 100L, 1L)), 0L, 0L), index.get(logs.toString()));
+    assertEquals(new ExtensionHistogram(List.of(new ExtensionHistogram.Bucket("log", 800L, 2L),
+        new ExtensionHistogram.Bucket("parquet", 400L, 1L)), 160L, 3L),
+        index.get(root.toString()));
+    assertNull(index.get(logs.resolve("a.log").toString()));
+
+    Path file = directory.resolve("cache.idx.ext");
+    index.write(file, 3L);
+    assertEquals(index.get(root.toString()),
+        ExtensionIndex.read(file, 3L, 2).get(root.toString()));
+    assertNull(ExtensionIndex.read(file, 3L, 4));
+  }
+
+  @Test
+  void findsEveryDirectoryByPath() throws IOException {
+    Path root = Files.createDirectory(directory.resolve("root"));
+    Path logs = Files.createDirectories(root.resolve("var").resolve("logs"));
+    Files.writeString(logs.resolve("server.log"), "x".repeat(20));
+    PathGraph graph = HostPathInfoMap.merge(Map.of("web1",
+        PathServices.of(1, FileVerification.STAT).create(List.of(root))));
+
+    ExtensionIndex index = ExtensionIndex.build(graph, 2);
+    Path file = directory.resolve("cache.idx.ext");
+    index.write(file, 5L);
+    ExtensionIndex read = ExtensionIndex.read(file, 5L, 2);
+
+    for (Map.Entry<String, PathInfo> entry : graph.pathInfos().entrySet()) {
+      if (PathConstants.FILE_TYPE_DIRECTORY.equals(entry.getValue().fileType())) {
+        assertNotNull(index.get(entry.getKey()), entry.getKey());
+        assertEquals(index.get(entry.getKey()), read.get(entry.getKey()));
+      } else {
+        assertNull(index.get(entry.getKey()), entry.getKey());
+      }
+    }
+    assertNull(index.get(root.resolve("missing").toString()));
+  }
+
+}
@@ -0,0 +1,88 @@
+package com.newtowndata.disk.core.index;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import com.newtowndata.disk.core.entity.HostPathInfoMap;
+import com.newtowndata.disk.core.entity.PathGraph;
+import com.newtowndata.disk.core.entity.PathInfo;
+import com.newtowndata.disk.service.FileVerification;
+import com.newtowndata.disk.service.PathServices;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Predicate;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class NameIndexTest {
+
+  @TempDir
+  Path directory;
+
+  @Test
+  void matchesBruteForceAndRoundTrips() throws IOException {
+    Path root = Files.createDirectory(directory.resolve("root"));
+    String[] names = {"Report-2021.csv", "report-2022.CSV", "data.parquet", "server.log",
+        "server.log.1", "notes.txt", "a", "ab"};
+    for (int i = 0; i < 3; i++) {
+      Path child = Files.createDirectory(root.resolve("dir-" + i));
+      for (String name : names) {
+        Files.writeString(child.resolve(name), name);
+      }
+    }
+    PathGraph graph = PathServices.of(2, FileVerification.STAT).create(List.of(root));
+    NameIndex index = NameIndex.build(graph);
+
+    assertSearch(graph, index, SearchMode.SUBSTRING, "report", n -> n.contains("report"));
+    assertSearch(graph, index, SearchMode.SUBSTRING, "b", n -> n.contains("b"));
+    assertSearch(graph, index, SearchMode.SUBSTRING, "xyz", n -> false);
+    assertSearch(graph, index, SearchMode.PREFIX, "Server", n -> n.startsWith("server"));
+    assertSearch(graph, index, SearchMode.GLOB, "*.csv", n -> n.endsWith(".csv"));
+    assertSearch(graph, index, SearchMode.GLOB, "report-202?.*", n -> n.startsWith("report-"));
+    assertSearch(graph, index, SearchMode.GLOB, "server.log", n -> n.equals("server.log"));
+
+    Path file = directory.resolve("cache.idx.names");
+    index.write(file, 7L);
+    NameIndex read = NameIndex.read(file, 7L);
+    assertEquals(index.nameCount(), read.nameCount());
+    assertSearch(graph, read, SearchMode.GLOB, "*.csv", n -> n.endsWith(".csv"));
+    assertNull(NameIndex.read(file, 8L));
+  }
+
+  @Test
+  void resolvesPathsThatAreNotJoinedFromTheirParent() throws IOException {
+    Path root = Files.createDirectory(directory.resolve("root"));
+    Files.writeString(Files.createDirectory(root.resolve("logs")).resolve("server.log"), "x");
+    PathGraph graph = HostPathInfoMap.merge(Map.of("web1",
+        PathServices.of(1, FileVerification.STAT).create(List.of(root))));
+    NameIndex index = NameIndex.build(graph);
+
+    assertSearch(graph, index, SearchMode.SUBSTRING, "log", n -> n.contains("log"));
+    assertSearch(graph, index, SearchMode.PREFIX, "root", n -> n.startsWith("root"));
+    assertSearch(graph, index, SearchMode.PREFIX, "web", n -> n.startsWith("web"));
+
+    Path file = directory.resolve("cache.idx.names");
+    index.write(file, 7L);
+    assertSearch(graph, NameIndex.read(file, 7L), SearchMode.SUBSTRING, "o", n -> n.contains("o"));
+  }
+
+  private static void assertSearch(PathGraph graph, NameIndex index, SearchMode mode,
+      String query, Predicate<String> expected) {
+    Set<String> expectedPaths = new TreeSet<>();
+    for (Map.Entry<String, PathInfo> entry : graph.pathInfos().entrySet()) {
+      if (expected.test(entry.getValue().name().toLowerCase(Locale.ROOT))) {
+        expectedPaths.add(entry.getKey());
+      }
+    }
+
+    Set<String> actualPaths = new TreeSet<>();
+    index.search(mode, query, actualPaths::add);
+    assertEquals(expectedPaths, actualPaths, mode + " " + query);
+  }
+
+}
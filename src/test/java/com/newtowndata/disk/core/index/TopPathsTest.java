@@ -0,0 +1,51 @@
+package com.newtowndata.disk.core.index;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import com.newtowndata.disk.core.entity.PathGraph;
+import com.newtowndata.disk.service.FileVerification;
+import com.newtowndata.disk.service.PathServices;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class TopPathsTest {
+
+  @TempDir
+  Path directory;
+
+  @Test
+  void ranksAndRoundTrips() throws IOException {
+    Path root = Files.createDirectory(directory.resolve("root"));
+    Path big = Files.createDirectory(root.resolve("big"));
+    for (int i = 1; i <= 5; i++) {
+      Path file = Files.writeString(big.resolve("file-" + i), "x".repeat(i * 100));
+      Files.setLastModifiedTime(file, FileTime.fromMillis(i * 1000L));
+    }
+    Files.writeString(root.resolve("small"), "x");
+    PathGraph graph = PathServices.of(2, FileVerification.STAT).create(List.of(root));
+
+    TopPaths top = TopPaths.build(graph, 3, 200L);
+
+    assertEquals(List.of(big.resolve("file-5").toString(), big.resolve("file-4").toString(),
+        big.resolve("file-3").toString()),
+        top.largestFiles().stream().map(TopPaths.Entry::path).toList());
+    assertEquals(List.of(root.toString(), big.toString()),
+        top.largestDirectories().stream().map(TopPaths.Entry::path).toList());
+    assertEquals(graph.pathInfos().get(root.toString()).totals().size(),
+        top.largestDirectories().get(0).size());
+    assertEquals(List.of(5000L, 4000L, 3000L),
+        top.recentLargeFiles().stream().map(TopPaths.Entry::timestamp).toList());
+
+    Path file = directory.resolve("cache.idx.top");
+    top.write(file, 42L);
+    assertEquals(top, TopPaths.read(file, 42L, 3, 200L));
+    assertNull(TopPaths.read(file, 43L, 3, 200L));
+    assertNull(TopPaths.read(file, 42L, 10, 200L));
+  }
+
+}
@@ -0,0 +1,85 @@
+package com.newtowndata.disk.core.treemap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import com.newtowndata.disk.core.entity.PathGraph;
+import com.newtowndata.disk.tools.TreeGenerator;
+import com.newtowndata.disk.tools.TreeShape;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+public class TreemapLayoutTest {
+
+  @Test
+  void tilesFillTheirDirectory() {
+    PathGraph graph = TreeGenerator.graph("/synthetic",
+        TreeShape.parse("depth=3", "directories=4", "files=6"));
+    Treemap treemap = TreemapLayout.layout(graph, "/synthetic", 3, 800, 600, 1);
+
+    Map<String, Treemap.Tile> directories = new HashMap<>();
+    Map<String, Double> areas = new HashMap<>();
+    for (Treemap.Tile tile : treemap.tiles()) {
+      String parent = tile.depth() == 1 ? "/synthetic"
+          : graph.pathInfos().get(tile.path()).parentPath();
+      areas.merge(parent, tile.width() * tile.height(), Double::sum);
+      if (!tile.other()) {
+        directories.put(tile.path(), tile);
+      }
+
+      Treemap.Tile container = directories.get(parent);
+      if (container != null) {
+        assertTrue(tile.x() >= container.x() && tile.y() >= container.y()
+            && tile.x() + tile.width() <= container.x() + container.width() + 1e-6
+            && tile.y() + tile.height() <= container.y() + container.height() + 1e-6, tile.path());
+      }
+      assertTrue(tile.width() > 0 && tile.height() > 0, tile.path());
+    }
+
+    assertEquals(800 * 600, areas.get("/synthetic"), 1e-3);
+    Treemap.Tile dir = directories.get("/synthetic/dir-0");
+    double inner = (dir.width() - 2 * TreemapLayout.PADDING)
+        * (dir.height() - 2 * TreemapLayout.PADDING);
+    assertEquals(inner, areas.get("/synthetic/dir-0"), 1e-3);
+    assertEquals(4 + 6 + 16 + 24 + 64 + 96, treemap.tiles().size());
+  }
+
+  @Test
+  void areasFollowSizes() {
+    PathGraph graph = TreeGenerator.graph("/synthetic",
+        TreeShape.parse("depth=1", "directories=5", "files=20"));
+    Treemap treemap = TreemapLayout.layout(graph, null, 1, 400, 300, 1);
+
+    List<Treemap.Tile> tiles = treemap.tiles();
+    assertEquals(1, tiles.size());
+    assertEquals(400 * 300, tiles.get(0).width() * tiles.get(0).height(), 1e-6);
+    // the own size of the directory is not drawn when no entry is merged into other
+    tiles = TreemapLayout.layout(graph, "/synthetic", 1, 400, 300, 1).tiles();
+    long total = tiles.stream().mapToLong(Treemap.Tile::size).sum();
+    assertEquals(graph.pathInfos().get("/synthetic").totals().size() - 4096L, total);
+    for (Treemap.Tile tile : tiles) {
+      double expected = 400.0 * 300.0 * tile.size() / total;
+      assertEquals(expected, tile.width() * tile.height(), expected * 1e-6);
+    }
+  }
+
+  @Test
+  void smallEntriesAreMergedIntoOther() {
+    PathGraph graph = TreeGenerator.graph("/synthetic",
+        TreeShape.parse("depth=0", "files=100000"));
+    Treemap treemap = TreemapLayout.layout(graph, "/synthetic", 3, 100, 100, 100);
+
+    assertTrue(treemap.tiles().size() <= 100 + 1);
+    Treemap.Tile other = treemap.tiles().stream().filter(Treemap.Tile::other).findFirst()
+        .orElseThrow();
+    assertEquals(100_000, other.count() + treemap.tiles().size() - 1);
+    assertEquals(treemap.size(),
+        treemap.tiles().stream().mapToLong(Treemap.Tile::size).sum());
+
+    treemap = TreemapLayout.layout(graph, "/synthetic", 3, 8192, 8192, 1);
+    assertEquals(TreemapLayout.MAX_TILES, treemap.tiles().size());
+    assertTrue(treemap.tiles().stream().anyMatch(Treemap.Tile::other));
+  }
+
+}
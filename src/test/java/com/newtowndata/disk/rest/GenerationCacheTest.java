@@ -0,0 +1,47 @@
+package com.newtowndata.disk.rest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+public class GenerationCacheTest {
+
+  @Test
+  void lateRequestsDoNotResetTheCache() {
+    GenerationCache<String, String> cache = new GenerationCache<>(10, value -> 1L);
+    AtomicInteger loads = new AtomicInteger();
+
+    assertEquals("a2", cache.get(2L, "a", key -> load(loads, key + 2)));
+    assertEquals("a2", cache.get(2L, "a", key -> load(loads, key + 2)));
+    assertEquals(1, loads.get());
+
+    // an older generation is computed but neither cached nor clearing the newer results
+    assertEquals("a1", cache.get(1L, "a", key -> load(loads, key + 1)));
+    assertEquals("b1", cache.get(1L, "b", key -> load(loads, key + 1)));
+    assertEquals("a2", cache.get(2L, "a", key -> load(loads, key + 2)));
+    assertEquals("b2", cache.get(2L, "b", key -> load(loads, key + 2)));
+    assertEquals(4, loads.get());
+
+    assertEquals("a3", cache.get(3L, "a", key -> load(loads, key + 3)));
+    assertEquals(5, loads.get());
+  }
+
+  @Test
+  void resultsOfAGenerationThatEndedWhileLoadingAreNotCached() {
+    GenerationCache<String, String> cache = new GenerationCache<>(10, value -> 1L);
+    AtomicInteger loads = new AtomicInteger();
+
+    assertEquals("a1", cache.get(1L, "a", key -> {
+      cache.get(2L, "b", other -> load(loads, other + 2));
+      return load(loads, key + 1);
+    }));
+    assertEquals("a2", cache.get(2L, "a", key -> load(loads, key + 2)));
+    assertEquals(3, loads.get());
+  }
+
+  private static String load(AtomicInteger loads, String value) {
+    loads.incrementAndGet();
+    return value;
+  }
+
+}
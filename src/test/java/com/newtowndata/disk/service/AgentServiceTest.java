@@ -0,0 +1,108 @@
+package com.newtowndata.disk.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import com.newtowndata.disk.core.entity.HostPathInfoMap;
+import com.newtowndata.disk.core.entity.PathGraph;
+import com.newtowndata.disk.tools.TreeGenerator;
+import com.newtowndata.disk.tools.TreeShape;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class AgentServiceTest {
+
+  private static final TreeShape SHAPE =
+      TreeShape.parse("depth=2", "directories=3", "files=4", "chain=5");
+
+  @TempDir
+  Path directory;
+
+  private final AtomicReference<Aggregator> aggregator = new AtomicReference<>();
+  private final List<Integer> statuses = new CopyOnWriteArrayList<>();
+  private HttpServer server;
+
+  @BeforeEach
+  void startAggregator() throws IOException {
+    server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    server.createContext("/api/hosts/snapshot", this::receive);
+    server.start();
+  }
+
+  @AfterEach
+  void stopAggregator() {
+    server.stop(0);
+  }
+
+  @Test
+  void fallsBackToFullSnapshotWhenAggregatorLostTheBase() throws Exception {
+    aggregator.set(aggregator("first"));
+    CacheService cacheService = CacheServiceTest.cacheService(
+        PathServices.of(1, FileVerification.STAT), directory.resolve("agent.idx"));
+    AgentService agentService = new AgentService(cacheService,
+        "http://127.0.0.1:" + server.getAddress().getPort() + "/", "web1");
+
+    cacheService.publish(TreeGenerator.graph("/srv", SHAPE));
+    pushUntil(agentService, 1);
+    assertEquals(List.of(200), statuses);
+
+    // the aggregator restarted without the snapshots of its hosts
+    Aggregator restarted = aggregator("second");
+    aggregator.set(restarted);
+    PathGraph changed =
+        TreeGenerator.graph("/srv", TreeShape.parse("depth=2", "directories=3", "files=5"));
+    cacheService.publish(changed);
+    pushUntil(agentService, 3);
+
+    assertEquals(List.of(200, 409, 200), statuses);
+    assertEquals(List.of("web1"),
+        restarted.hostService().getHosts().stream().map(HostStatus::host).toList());
+    assertEquals(HostPathInfoMap.merge(Map.of("web1", changed)).pathInfos(),
+        restarted.cacheService().getPathGraph().pathInfos());
+  }
+
+  private Aggregator aggregator(String name) throws IOException {
+    Path cachePath = Files.createDirectory(directory.resolve(name)).resolve("cache.idx");
+    CacheService cacheService =
+        CacheServiceTest.cacheService(PathServices.of(1, FileVerification.STAT), cachePath);
+    return new Aggregator(HostServiceTest.hostService(cacheService), cacheService);
+  }
+
+  /** Pushes until the aggregator answered {@code count} pushes, a tick is skipped while busy. */
+  private void pushUntil(AgentService agentService, int count) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 10_000L;
+    while (statuses.size() < count && System.currentTimeMillis() < deadline) {
+      agentService.push();
+      Thread.sleep(20L);
+    }
+  }
+
+  private void receive(HttpExchange exchange) throws IOException {
+    int status;
+    try (InputStream in = exchange.getRequestBody()) {
+      aggregator.get().hostService().receive(in);
+      status = 200;
+    } catch (IllegalStateException e) {
+      status = 409;
+    }
+    statuses.add(status);
+    exchange.sendResponseHeaders(status, -1);
+    exchange.close();
+  }
+
+  private record Aggregator(HostService hostService, CacheService cacheService) {
+
+  }
+
+}
@@ -0,0 +1,172 @@
+package com.newtowndata.disk.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import com.newtowndata.disk.core.cache.CacheFormat;
+import com.newtowndata.disk.core.entity.PathGraph;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class CacheServiceTest {
+
+  @TempDir
+  Path directory;
+
+  @Test
+  void concurrentReloadsShareOneJob() throws Exception {
+    Path root = Files.createDirectory(directory.resolve("root"));
+    Files.writeString(root.resolve("file.txt"), "x".repeat(10));
+    CountDownLatch release = new CountDownLatch(1);
+    CacheService cacheService = cacheService(blockingPathService(root, release, null));
+
+    CompletableFuture<PathGraph> first = cacheService.reload();
+    CompletableFuture<PathGraph> second = cacheService.reload();
+    assertSame(first, second);
+    assertSame(first, cacheService.rescan());
+    ScanStatus running = cacheService.getScanStatus();
+    assertEquals(ScanStatus.State.RUNNING, running.state());
+    assertEquals(ScanType.RELOAD, running.type());
+    assertNull(running.finishedAt());
+    assertTrue(cacheService.getLoadedPathGraph().isEmpty());
+    assertEquals(0L, cacheService.getGeneration());
+
+    release.countDown();
+    PathGraph graph = first.get(10, TimeUnit.SECONDS);
+    assertEquals(List.of(root.toString()), graph.roots());
+    ScanStatus finished = cacheService.getScanStatus();
+    assertEquals(ScanStatus.State.FINISHED, finished.state());
+    assertEquals(running.startedAt(), finished.startedAt());
+    assertSame(graph, cacheService.getPathGraph());
+    assertEquals(1L, cacheService.getGeneration());
+
+    CompletableFuture<PathGraph> next = cacheService.reload();
+    assertNotSame(first, next);
+    next.get(10, TimeUnit.SECONDS);
+    assertEquals(2L, cacheService.getGeneration());
+  }
+
+  @Test
+  void failedJobKeepsServingPreviousGraph() throws Exception {
+    Path root = Files.createDirectory(directory.resolve("root"));
+    CountDownLatch release = new CountDownLatch(1);
+    IOException failure = new IOException("disk gone");
+    CacheService cacheService = cacheService(blockingPathService(root, release, failure));
+
+    CompletableFuture<PathGraph> job = cacheService.reload();
+    assertEquals(ScanStatus.State.RUNNING, cacheService.getScanStatus().state());
+    release.countDown();
+    assertThrows(CompletionException.class, job::join);
+
+    ScanStatus failed = cacheService.getScanStatus();
+    assertEquals(ScanStatus.State.FAILED, failed.state());
+    assertEquals("disk gone", failed.error());
+    assertTrue(cacheService.getLoadedPathGraph().isEmpty());
+    assertEquals(0L, cacheService.getGeneration());
+  }
+
+  @Test
+  void sourceJobKeepsANewerPublishedGraph() throws Exception {
+    Path root = Files.createDirectory(directory.resolve("root"));
+    CountDownLatch building = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    PathGraph stale = new PathGraph(List.of(), Map.of());
+    PathGraph published = new PathGraph(List.of(), Map.of());
+    CacheService cacheService = cacheService(blockingPathService(root, release, null));
+    cacheService.setGraphSource(() -> {
+      building.countDown();
+      await(release);
+      return stale;
+    });
+
+    CompletableFuture<PathGraph> job = cacheService.reload();
+    assertTrue(building.await(10, TimeUnit.SECONDS));
+    cacheService.publish(published);
+    release.countDown();
+
+    assertSame(published, job.get(10, TimeUnit.SECONDS));
+    assertSame(published, cacheService.getPathGraph());
+    assertEquals(1L, cacheService.getGeneration());
+
+    // published graphs are kept by their source, not written to the cache file
+    cacheService.flush();
+    assertFalse(Files.exists(cacheService.getCachePath()));
+  }
+
+  @Test
+  void refreshesThatChangeNothingKeepTheGeneration() throws Exception {
+    Path root = Files.createDirectory(directory.resolve("root"));
+    Files.writeString(root.resolve("file.txt"), "x".repeat(10));
+    Files.writeString(root.resolve("scratch.tmp"), "abc");
+    ScanProfile profile = new ScanProfile("test", List.of(root), List.of("regex:.*\\.tmp"), false);
+    CacheService cacheService = cacheService(PathServices.of(1, FileVerification.STAT,
+        SizeAccounting.APPARENT, profile, new ScanMetrics(new SimpleMeterRegistry())));
+    PathGraph graph = cacheService.reload().get(10, TimeUnit.SECONDS);
+    Files.delete(cacheService.getCachePath());
+
+    cacheService.refresh(List.of());
+    cacheService.refresh(root.resolve("scratch.tmp").toString());
+    assertSame(graph, cacheService.getPathGraph());
+    assertEquals(1L, cacheService.getGeneration());
+    cacheService.flush();
+    assertFalse(Files.exists(cacheService.getCachePath()));
+
+    cacheService.refresh(root.resolve("file.txt").toString());
+    assertEquals(2L, cacheService.getGeneration());
+    cacheService.flush();
+    assertTrue(Files.exists(cacheService.getCachePath()));
+  }
+
+  static CacheService cacheService(PathService pathService, Path cachePath) {
+    return new CacheService(pathService, new ScanMetrics(new SimpleMeterRegistry()), cachePath,
+        false, CacheFormat.GZIP, 1, 0, 10, 0L, 4);
+  }
+
+  private CacheService cacheService(PathService pathService) {
+    return cacheService(pathService, directory.resolve("cache.idx"));
+  }
+
+  private static void await(CountDownLatch latch) {
+    try {
+      latch.await(10, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private static PathService blockingPathService(Path root, CountDownLatch release,
+      IOException failure) {
+    ScanProfile profile = new ScanProfile("test", List.of(root), List.of(), false);
+    return new PathService(1, FileVerification.STAT, SizeAccounting.APPARENT, profile,
+        PathServices.unthrottled(), new ScanMetrics(new SimpleMeterRegistry())) {
+
+      @Override
+      public PathGraph create() throws IOException {
+        try {
+          release.await();
+        } catch (InterruptedException e) {
+          throw new IOException(e);
+        }
+        if (failure != null) {
+          throw failure;
+        }
+        return super.create();
+      }
+    };
+  }
+
+}
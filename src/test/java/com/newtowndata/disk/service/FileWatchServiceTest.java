@@ -0,0 +1,93 @@
+package com.newtowndata.disk.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import com.newtowndata.disk.core.cache.CacheFormat;
+import com.newtowndata.disk.core.entity.PathGraph;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BooleanSupplier;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class FileWatchServiceTest {
+
+  @TempDir
+  Path directory;
+
+  @Test
+  void coalescesEventsIntoOneRefresh() throws Exception {
+    Path root = Files.createDirectory(directory.resolve("root"));
+    Files.writeString(root.resolve("existing.txt"), "x");
+    List<Set<String>> refreshes = new CopyOnWriteArrayList<>();
+    ScanProfile profile = new ScanProfile("test", List.of(root), List.of(), false);
+    CacheService cacheService = new CacheService(
+        PathServices.of(1, FileVerification.STAT, SizeAccounting.APPARENT, profile,
+            new ScanMetrics(new SimpleMeterRegistry())),
+        new ScanMetrics(new SimpleMeterRegistry()), directory.resolve("cache.idx"), false,
+        CacheFormat.GZIP, 1, 0, 10, 0L, 4) {
+
+      @Override
+      public void refresh(Collection<String> paths) throws IOException {
+        refreshes.add(Set.copyOf(paths));
+        super.refresh(paths);
+      }
+    };
+    cacheService.getPathGraph();
+
+    FileWatchService watchService =
+        new FileWatchService(cacheService, List.of(root.toString()), 100, 300L);
+    watchService.start();
+    try {
+      // the directories are registered on the watch thread, wait until events come through
+      for (int i = 0; refreshes.isEmpty(); i++) {
+        Files.writeString(root.resolve("probe-" + i + ".txt"), "x");
+        awaitTrue(() -> !refreshes.isEmpty(), 1000L);
+      }
+      awaitTrue(() -> false, 500L);
+      // probes written before the registration are only picked up by a refresh of the root
+      cacheService.refresh(List.of(root.toString()));
+      refreshes.clear();
+
+      Path created = Files.createDirectory(root.resolve("created"));
+      Files.writeString(created.resolve("nested.txt"), "x".repeat(10));
+      Files.writeString(root.resolve("a.txt"), "x".repeat(20));
+      Files.writeString(root.resolve("b.txt"), "x".repeat(30));
+      Files.delete(root.resolve("existing.txt"));
+
+      PathGraph[] graph = new PathGraph[1];
+      assertTrue(awaitTrue(() -> {
+        graph[0] = cacheService.getPathGraph();
+        return graph[0].pathInfos().containsKey(created.resolve("nested.txt").toString())
+            && graph[0].pathInfos().containsKey(root.resolve("b.txt").toString());
+      }, 10_000L));
+
+      assertEquals(List.of(Set.of(created.toString(), root.resolve("a.txt").toString(),
+          root.resolve("b.txt").toString(), root.resolve("existing.txt").toString())),
+          refreshes);
+      assertEquals(PathServices.of(1, FileVerification.STAT).create(List.of(root)).pathInfos()
+          .get(root.toString()).totals(), graph[0].pathInfos().get(root.toString()).totals());
+    } finally {
+      watchService.stop();
+    }
+  }
+
+  private static boolean awaitTrue(BooleanSupplier condition, long timeoutMillis)
+      throws InterruptedException {
+    long deadline = System.currentTimeMillis() + timeoutMillis;
+    while (System.currentTimeMillis() < deadline) {
+      if (condition.getAsBoolean()) {
+        return true;
+      }
+      Thread.sleep(20L);
+    }
+    return condition.getAsBoolean();
+  }
+
+}
@@ -0,0 +1,98 @@
+package com.newtowndata.disk.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import com.newtowndata.disk.core.cache.SnapshotFormat;
+import com.newtowndata.disk.core.entity.HostPathInfoMap;
+import com.newtowndata.disk.core.entity.PathGraph;
+import com.newtowndata.disk.tools.TreeGenerator;
+import com.newtowndata.disk.tools.TreeShape;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class HostServiceTest {
+
+  private static final TreeShape SHAPE =
+      TreeShape.parse("depth=2", "directories=3", "files=4", "chain=5");
+
+  @TempDir
+  Path directory;
+
+  @Test
+  void servesReceivedHostsAndRestoresThem() throws IOException {
+    PathGraph web = TreeGenerator.graph("/srv", SHAPE);
+    PathGraph db = TreeGenerator.graph("/var", SHAPE);
+    CacheService cacheService = cacheService();
+    HostService hostService = hostService(cacheService);
+    hostService.receive(snapshot(web, new SnapshotFormat.Header("web1", 1L, 0L), null));
+    hostService.receive(snapshot(db, new SnapshotFormat.Header("db1", 7L, 0L), null));
+
+    PathGraph expected = HostPathInfoMap.merge(Map.of("db1", db, "web1", web));
+    PathGraph merged = cacheService.getPathGraph();
+    assertEquals(List.of("[db1]", "[web1]"), merged.roots());
+    assertEquals(expected.pathInfos(), merged.pathInfos());
+    List<HostStatus> hosts = hostService.getHosts();
+    assertEquals(List.of("db1", "web1"), hosts.stream().map(HostStatus::host).toList());
+    assertEquals(List.of(7L, 1L), hosts.stream().map(HostStatus::sequence).toList());
+
+    hostService.flush();
+    CacheService restoredCache = cacheService();
+    HostService restored = hostService(restoredCache);
+    assertEquals(List.of(7L, 1L),
+        restored.getHosts().stream().map(HostStatus::sequence).toList());
+    assertEquals(expected.pathInfos(), restoredCache.getPathGraph().pathInfos());
+  }
+
+  @Test
+  void acceptsDeltasOnTheirBaseOnly() throws IOException {
+    PathGraph base = TreeGenerator.graph("/srv", SHAPE);
+    PathGraph changed =
+        TreeGenerator.graph("/srv", TreeShape.parse("depth=2", "directories=3", "files=5"));
+    SnapshotFormat.Digests digests = SnapshotFormat.write(base,
+        new SnapshotFormat.Header("web1", 1L, 0L), null, new ByteArrayOutputStream());
+    CacheService cacheService = cacheService();
+    HostService hostService = hostService(cacheService);
+
+    ByteArrayInputStream missingBase =
+        snapshot(changed, new SnapshotFormat.Header("web1", 2L, 1L), digests);
+    assertThrows(IllegalStateException.class, () -> hostService.receive(missingBase));
+
+    hostService.receive(snapshot(base, new SnapshotFormat.Header("web1", 1L, 0L), null));
+    ByteArrayInputStream staleBase =
+        snapshot(changed, new SnapshotFormat.Header("web1", 3L, 2L), digests);
+    assertThrows(IllegalStateException.class, () -> hostService.receive(staleBase));
+    ByteArrayInputStream notNewer =
+        snapshot(changed, new SnapshotFormat.Header("web1", 1L, 1L), digests);
+    assertThrows(IllegalStateException.class, () -> hostService.receive(notNewer));
+
+    hostService.receive(snapshot(changed, new SnapshotFormat.Header("web1", 2L, 1L), digests));
+    assertEquals(HostPathInfoMap.merge(Map.of("web1", changed)).pathInfos(),
+        cacheService.getPathGraph().pathInfos());
+    assertEquals(2L, hostService.getHosts().get(0).sequence());
+  }
+
+  static ByteArrayInputStream snapshot(PathGraph graph, SnapshotFormat.Header header,
+      SnapshotFormat.Digests digests) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    SnapshotFormat.write(graph, header, digests, out);
+    return new ByteArrayInputStream(out.toByteArray());
+  }
+
+  private CacheService cacheService() {
+    return CacheServiceTest.cacheService(PathServices.of(1, FileVerification.STAT),
+        directory.resolve("cache.idx"));
+  }
+
+  static HostService hostService(CacheService cacheService) {
+    HostService hostService = new HostService(cacheService, true);
+    hostService.start();
+    return hostService;
+  }
+
+}
@@ -0,0 +1,298 @@
+package com.newtowndata.disk.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import com.newtowndata.disk.core.PathConstants;
+import com.newtowndata.disk.core.entity.OverlayPathInfoMap;
+import com.newtowndata.disk.core.entity.PathGraph;
+import com.newtowndata.disk.core.entity.PathInfo;
+import com.newtowndata.disk.core.entity.PathTotals;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class PathServiceTest {
+
+  @TempDir
+  Path root;
+
+  @Test
+  void parallelScanMatchesSequentialWalk() throws IOException {
+    createTree(root, 3, 4);
+
+    PathGraph sequential = PathServices.of(1, FileVerification.STAT).create(List.of(root));
+    PathGraph parallel = PathServices.of(4, FileVerification.STAT).create(List.of(root));
+
+    assertEquals(sequential.roots(), parallel.roots());
+    assertEquals(sequential.pathInfos().keySet(), parallel.pathInfos().keySet());
+    for (Map.Entry<String, PathInfo> entry : sequential.pathInfos().entrySet()) {
+      PathInfo expected = entry.getValue();
+      PathInfo actual = parallel.pathInfos().get(entry.getKey());
+      assertEquals(expected.parentPath(), actual.parentPath());
+      assertEquals(expected.fileType(), actual.fileType());
+      assertEquals(expected.name(), actual.name());
+      assertEquals(expected.size(), actual.size());
+      assertEquals(new HashSet<>(expected.children()), new HashSet<>(actual.children()));
+    }
+    assertEquals(PathConstants.FILE_TYPE_DIRECTORY,
+        parallel.pathInfos().get(root.toString()).fileType());
+  }
+
+  @Test
+  void totalsAreRolledUp() throws IOException {
+    createTree(root, 2, 3);
+
+    PathGraph graph = PathServices.of(2, FileVerification.STAT).create(List.of(root));
+    PathTotals totals = graph.pathInfos().get(root.toString()).totals();
+
+    long size = 0L;
+    long files = 0L;
+    long directories = 0L;
+    for (PathInfo pathInfo : graph.pathInfos().values()) {
+      size += pathInfo.size();
+      if (PathConstants.FILE_TYPE_DIRECTORY.equals(pathInfo.fileType())) {
+        directories++;
+      } else {
+        files++;
+      }
+    }
+    assertEquals(new PathTotals(size, files, directories), totals);
+    assertEquals(new PathTotals(20L, 1L, 0L),
+        graph.pathInfos().get(root.resolve("file-2.txt").toString()).totals());
+  }
+
+  @Test
+  void refreshUpdatesSubtreeAndAncestors() throws IOException {
+    createTree(root, 2, 2);
+    PathService pathService = PathServices.of(2, FileVerification.STAT);
+    PathGraph graph = pathService.create(List.of(root));
+    PathTotals before = graph.pathInfos().get(root.toString()).totals();
+
+    Path directory = root.resolve("dir-0").resolve("dir-1");
+    Files.writeString(directory.resolve("new.txt"), "x".repeat(100));
+    Files.delete(directory.resolve("file-1.txt"));
+    PathGraph refreshed = pathService.refresh(graph, directory.toString());
+
+    assertEquals(pathService.create(List.of(root)).pathInfos().get(root.toString()).totals(),
+        refreshed.pathInfos().get(root.toString()).totals());
+    assertEquals(new PathTotals(100L, 1L, 0L),
+        refreshed.pathInfos().get(directory.resolve("new.txt").toString()).totals());
+    assertNull(refreshed.pathInfos().get(directory.resolve("file-1.txt").toString()));
+    assertEquals(graph.pathInfos().size(), refreshed.pathInfos().size());
+    assertEquals(before, graph.pathInfos().get(root.toString()).totals());
+
+    Path removed = root.resolve("dir-1");
+    deleteTree(removed);
+    PathGraph pruned = pathService.refresh(refreshed, removed.toString());
+
+    assertNull(pruned.pathInfos().get(removed.toString()));
+    assertFalse(pruned.pathInfos().get(root.toString()).children().contains(removed.toString()));
+    PathGraph expected = PathServices.of(1, FileVerification.STAT).create(List.of(root));
+    assertEquals(expected.pathInfos().get(root.toString()).totals(),
+        pruned.pathInfos().get(root.toString()).totals());
+    assertEquals(pruned.pathInfos().size(), pruned.pathInfos().entrySet().stream().count());
+    assertThrows(UnknownPathException.class,
+        () -> pathService.refresh(pruned, removed.resolve("file-0.txt").toString()));
+  }
+
+  @Test
+  void rescanReusesUnchangedDirectories() throws IOException {
+    createTree(root, 2, 2);
+    long startedAt = System.currentTimeMillis();
+    FileTime old = FileTime.fromMillis(startedAt - 3_600_000L);
+    FileTime sameTick = FileTime.fromMillis(startedAt);
+    try (Stream<Path> paths = Files.walk(root)) {
+      for (Path path : paths.filter(Files::isDirectory).toList()) {
+        Files.setLastModifiedTime(path, old);
+      }
+    }
+    Path changed = root.resolve("dir-1");
+    Files.setLastModifiedTime(changed, sameTick);
+    PathGraph baseline = PathServices.of(2, FileVerification.STAT).create(List.of(root));
+
+    // changed within the timestamp tick the baseline listed it in
+    Files.writeString(changed.resolve("added.txt"), "abc");
+    Files.setLastModifiedTime(changed, sameTick);
+    Path rewritten = root.resolve("dir-0").resolve("file-1.txt");
+    Files.writeString(rewritten, "x".repeat(500));
+
+    PathGraph trusted = PathServices.of(2, FileVerification.NONE)
+        .rescan(List.of(root), baseline, startedAt);
+    PathGraph verified = PathServices.of(2, FileVerification.STAT)
+        .rescan(List.of(root), baseline, startedAt);
+    PathGraph expected = PathServices.of(2, FileVerification.STAT).create(List.of(root));
+
+    assertEquals(expected.pathInfos().keySet(), trusted.pathInfos().keySet());
+    assertEquals(10L, trusted.pathInfos().get(rewritten.toString()).size());
+    assertEquals(expected.pathInfos().keySet(), verified.pathInfos().keySet());
+    assertEquals(500L, verified.pathInfos().get(rewritten.toString()).size());
+    assertEquals(expected.pathInfos().get(root.toString()).totals(),
+        verified.pathInfos().get(root.toString()).totals());
+  }
+
+  @Test
+  void hardLinksAreCountedOnceOnDisk() throws IOException {
+    Path data = Files.write(root.resolve("data.bin"), new byte[10_000]);
+    Path snapshot = Files.createDirectory(root.resolve("snapshot"));
+    Files.createLink(snapshot.resolve("data.bin"), data);
+    Files.createLink(snapshot.resolve("copy.bin"), data);
+
+    for (int parallelism : new int[] {1, 2}) {
+      PathGraph apparent = PathServices.of(parallelism, FileVerification.STAT,
+          SizeAccounting.APPARENT).create(List.of(root));
+      PathGraph allocated = PathServices.of(parallelism, FileVerification.STAT,
+          SizeAccounting.ALLOCATED).create(List.of(root));
+
+      PathTotals apparentTotals = apparent.pathInfos().get(root.toString()).totals();
+      PathTotals allocatedTotals = allocated.pathInfos().get(root.toString()).totals();
+      assertEquals(apparentTotals.size(), apparentTotals.diskSize());
+      assertEquals(apparentTotals.size(), allocatedTotals.size());
+      assertEquals(apparentTotals.fileCount(), allocatedTotals.fileCount());
+
+      long blockSize = Files.getFileStore(root).getBlockSize();
+      long directories = apparentTotals.size() - 3L * 10_000L;
+      assertEquals(directories + (10_000L + blockSize - 1L) / blockSize * blockSize,
+          allocatedTotals.diskSize());
+      // charged to the smallest path whichever link the scan reached first
+      assertEquals(allocatedTotals.diskSize() - directories,
+          allocated.pathInfos().get(data.toString()).diskSize());
+      assertEquals(0L, allocated.pathInfos().get(snapshot.resolve("copy.bin").toString())
+          .diskSize());
+    }
+  }
+
+  @Test
+  void profileExcludesArePruned() throws IOException {
+    createTree(root, 2, 3);
+    Files.createDirectories(root.resolve("cache").resolve("nested"));
+    Files.writeString(root.resolve("cache").resolve("nested").resolve("entry"), "abc");
+    Files.writeString(root.resolve("dir-0").resolve("scratch.tmp"), "abc");
+    ScanProfile profile = new ScanProfile("test", List.of(root),
+        List.of("**/cache", "regex:.*\\.tmp"), true);
+
+    for (int parallelism : new int[] {1, 2}) {
+      PathService pathService = PathServices.of(parallelism, FileVerification.STAT,
+          SizeAccounting.APPARENT, profile, new ScanMetrics(new SimpleMeterRegistry()));
+      PathGraph graph = pathService.create();
+      PathGraph rescanned = pathService.rescan(graph, System.currentTimeMillis());
+
+      for (PathGraph current : List.of(graph, rescanned)) {
+        assertEquals(List.of(root.toString()), current.roots());
+        assertNull(current.pathInfos().get(root.resolve("cache").toString()));
+        assertNull(current.pathInfos().get(root.resolve("cache").resolve("nested").toString()));
+        assertNull(
+            current.pathInfos().get(root.resolve("dir-0").resolve("scratch.tmp").toString()));
+        assertFalse(current.pathInfos().get(root.toString()).children()
+            .contains(root.resolve("cache").toString()));
+        assertNotNull(current.pathInfos().get(root.resolve("dir-0").toString()));
+      }
+      assertSame(graph,
+          pathService.refresh(graph, root.resolve("dir-0").resolve("scratch.tmp").toString()));
+      assertNull(pathService.refresh(graph, root.resolve("dir-0").toString()).pathInfos()
+          .get(root.resolve("dir-0").resolve("scratch.tmp").toString()));
+    }
+  }
+
+  @Test
+  void throttledScanMatchesParallelScan() throws IOException {
+    createTree(root, 2, 3);
+    ScanScheduler scheduler = new ScanScheduler(true, 4, 2, 0);
+    try {
+      PathGraph expected = PathServices.of(4, FileVerification.STAT).create(List.of(root));
+      PathGraph throttled = new PathService(4, FileVerification.STAT, SizeAccounting.APPARENT,
+          ScanProfile.DEFAULT, scheduler, new ScanMetrics(new SimpleMeterRegistry()))
+          .create(List.of(root));
+
+      assertEquals(expected.pathInfos().keySet(), throttled.pathInfos().keySet());
+      assertEquals(expected.pathInfos().get(root.toString()).totals(),
+          throttled.pathInfos().get(root.toString()).totals());
+
+      DeviceStatus device = scheduler.getDevices().get(0);
+      assertEquals(new DeviceLimits(2, 0), device.limits());
+      assertTrue(device.operations() >= expected.pathInfos().size() - 1L);
+
+      scheduler.setLimits(device.device(), new DeviceLimits(1, 10_000));
+      assertEquals(new DeviceLimits(1, 10_000), scheduler.getDevices().get(0).limits());
+      assertEquals(new DeviceLimits(2, 0), scheduler.getDefaults());
+    } finally {
+      scheduler.shutdown();
+    }
+  }
+
+  @Test
+  void scanPublishesMetrics() throws IOException {
+    createTree(root, 2, 3);
+    for (int parallelism : new int[] {1, 2}) {
+      MeterRegistry registry = new SimpleMeterRegistry();
+      PathGraph graph = PathServices.of(parallelism, FileVerification.STAT,
+          SizeAccounting.APPARENT, ScanProfile.DEFAULT, new ScanMetrics(registry))
+          .create(List.of(root));
+      PathTotals totals = graph.pathInfos().get(root.toString()).totals();
+
+      assertEquals(totals.fileCount(), registry.get("disk.scan.files").gauge().value());
+      assertEquals(totals.directoryCount(),
+          registry.get("disk.scan.directories").gauge().value());
+      assertEquals(0.0, registry.get("disk.scan.errors").tag("type", "file").gauge().value());
+      assertEquals(0.0, registry.get("disk.scan.queue.depth").gauge().value());
+      assertEquals(1L, registry.get("disk.scan.phase").tag("phase", "walk").timer().count());
+    }
+  }
+
+  @Test
+  void repeatedRefreshesStayBounded() throws IOException {
+    createTree(root, 2, 3);
+    PathService pathService = PathServices.of(2, FileVerification.STAT);
+    PathGraph graph = pathService.create(List.of(root));
+    int baseSize = graph.pathInfos().size();
+
+    for (int i = 0; i < 200; i++) {
+      Path directory = root.resolve("dir-" + i % 3).resolve("dir-" + i / 3 % 3);
+      Files.deleteIfExists(directory.resolve("churn-" + (i - 9) + ".txt"));
+      Files.writeString(directory.resolve("churn-" + i + ".txt"), "x".repeat(i));
+      graph = pathService.refresh(graph, directory.toString());
+      if (graph.pathInfos() instanceof OverlayPathInfoMap overlay) {
+        assertTrue(overlay.changeCount() <= overlay.base().size() / 4,
+            overlay.changeCount() + " changes over " + overlay.base().size());
+      }
+    }
+
+    assertEquals(baseSize + 9, graph.pathInfos().size());
+    assertEquals(pathService.create(List.of(root)).pathInfos(), graph.pathInfos());
+  }
+
+  private static void deleteTree(Path path) throws IOException {
+    try (Stream<Path> paths = Files.walk(path)) {
+      for (Path current : paths.sorted(Comparator.reverseOrder()).toList()) {
+        Files.delete(current);
+      }
+    }
+  }
+
+  private static void createTree(Path directory, int depth, int width) throws IOException {
+    for (int i = 0; i < width; i++) {
+      Files.writeString(directory.resolve("file-" + i + ".txt"), "x".repeat(i * 10));
+    }
+    if (depth > 0) {
+      for (int i = 0; i < width; i++) {
+        Path child = Files.createDirectory(directory.resolve("dir-" + i));
+        createTree(child, depth - 1, width);
+      }
+    }
+  }
+
+}
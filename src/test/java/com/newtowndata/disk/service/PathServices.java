@@ -0,0 +1,32 @@
+package com.newtowndata.disk.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Path services for tests and benchmarks, unthrottled and with metrics in a private registry.
+ */
+public final class PathServices {
+
+  private PathServices() {}
+
+  public static PathService of(int parallelism, FileVerification verification) {
+    return of(parallelism, verification, SizeAccounting.APPARENT);
+  }
+
+  public static PathService of(int parallelism, FileVerification verification,
+      SizeAccounting accounting) {
+    return of(parallelism, verification, accounting, ScanProfile.DEFAULT,
+        new ScanMetrics(new SimpleMeterRegistry()));
+  }
+
+  public static PathService of(int parallelism, FileVerification verification,
+      SizeAccounting accounting, ScanProfile profile, ScanMetrics metrics) {
+    return new PathService(parallelism, verification, accounting, profile, unthrottled(),
+        metrics);
+  }
+
+  public static ScanScheduler unthrottled() {
+    return new ScanScheduler(false, 1, 0, 0);
+  }
+
+}
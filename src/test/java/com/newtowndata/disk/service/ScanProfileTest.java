@@ -0,0 +1,25 @@
+package com.newtowndata.disk.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import java.nio.file.Path;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+
+public class ScanProfileTest {
+
+  @Test
+  void readsNamedProfile() {
+    MockEnvironment environment = new MockEnvironment()
+        .withProperty("disk-analysis.scan.profiles.system.roots", "/, /home")
+        .withProperty("disk-analysis.scan.profiles.system.excludes", "/proc,**/node_modules")
+        .withProperty("disk-analysis.scan.profiles.system.same-file-store", "true");
+
+    assertEquals(new ScanProfile("system", List.of(Path.of("/"), Path.of("/home")),
+        List.of("/proc", "**/node_modules"), true), ScanProfile.of(environment, "system"));
+    assertEquals(ScanProfile.DEFAULT, ScanProfile.of(environment, ""));
+    assertThrows(IllegalArgumentException.class, () -> ScanProfile.of(environment, "other"));
+  }
+
+}
@@ -0,0 +1,91 @@
+package com.newtowndata.disk.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import com.newtowndata.disk.core.entity.PathGraph;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+public class SideIndexTest {
+
+  @Test
+  void concurrentRequestsShareOneBuild() throws Exception {
+    PathGraph graph = new PathGraph(List.of(), Map.of());
+    AtomicInteger builds = new AtomicInteger();
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    SideIndex<Integer> index = new SideIndex<>(null, source -> {
+      started.countDown();
+      await(release);
+      return builds.incrementAndGet();
+    }, (path, fingerprint) -> null, (value, path, fingerprint) -> {}, Runnable::run, () -> {});
+
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<Integer>> results = new ArrayList<>();
+      results.add(executor.submit(() -> index.get(graph)));
+      started.await(10, TimeUnit.SECONDS);
+      for (int i = 0; i < 7; i++) {
+        results.add(executor.submit(() -> index.get(graph)));
+      }
+      Thread.sleep(100L);
+      release.countDown();
+
+      for (Future<Integer> result : results) {
+        assertEquals(1, result.get(10, TimeUnit.SECONDS));
+      }
+      assertEquals(1, builds.get());
+      assertEquals(2, index.require(new PathGraph(List.of(), Map.of())));
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  void servesPreviousValueWhileRebuilding() throws Exception {
+    PathGraph first = new PathGraph(List.of(), Map.of());
+    PathGraph second = new PathGraph(List.of(), Map.of());
+    AtomicInteger builds = new AtomicInteger();
+    AtomicInteger replaced = new AtomicInteger();
+    CountDownLatch release = new CountDownLatch(1);
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      SideIndex<Integer> index = new SideIndex<>(null, source -> {
+        if (source == second) {
+          await(release);
+        }
+        return builds.incrementAndGet();
+      }, (path, fingerprint) -> null, (value, path, fingerprint) -> {}, executor,
+          replaced::incrementAndGet);
+
+      assertEquals(1, index.get(first));
+      assertEquals(1, index.get(second));
+      assertEquals(1, index.get(second));
+      assertEquals(0, replaced.get());
+
+      release.countDown();
+      assertEquals(2, index.require(second));
+      assertEquals(2, index.get(second));
+      assertEquals(2, builds.get());
+      assertEquals(1, replaced.get());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private static void await(CountDownLatch latch) {
+    try {
+      latch.await(10, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+}
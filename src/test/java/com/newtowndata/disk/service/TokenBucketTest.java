@@ -0,0 +1,26 @@
+package com.newtowndata.disk.service;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+public class TokenBucketTest {
+
+  @Test
+  void pacesAcquisitions() {
+    TokenBucket bucket = new TokenBucket(200);
+    long start = System.nanoTime();
+    for (int i = 0; i < 40; i++) {
+      bucket.acquire();
+    }
+    assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(190L));
+
+    bucket.setRate(0);
+    start = System.nanoTime();
+    for (int i = 0; i < 10_000; i++) {
+      bucket.acquire();
+    }
+    assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(190L));
+  }
+
+}
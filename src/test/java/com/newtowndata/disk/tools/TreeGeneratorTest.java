@@ -0,0 +1,68 @@
+package com.newtowndata.disk.tools;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import com.newtowndata.disk.core.PathConstants;
+import com.newtowndata.disk.core.entity.PathGraph;
+import com.newtowndata.disk.core.entity.PathInfo;
+import com.newtowndata.disk.service.FileVerification;
+import com.newtowndata.disk.service.PathServices;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class TreeGeneratorTest {
+
+  @TempDir
+  Path directory;
+
+  @Test
+  void diskTreeScansLikeGeneratedGraph() throws IOException {
+    TreeShape shape = TreeShape.parse("depth=2", "directories=3", "files=4", "flat=20", "chain=5");
+    Path root = directory.resolve("tree");
+    int count = TreeGenerator.write(root, shape);
+
+    PathGraph scanned = PathServices.of(1, FileVerification.STAT).create(List.of(root));
+    PathGraph generated = TreeGenerator.graph(root.toString(), shape);
+
+    assertEquals(count, generated.pathInfos().size());
+    assertEquals(generated.pathInfos().keySet(), scanned.pathInfos().keySet());
+    assertEquals(fileSizes(generated), fileSizes(scanned));
+    assertEquals(generated.pathInfos().get(root.toString()).totals().fileCount(),
+        scanned.pathInfos().get(root.toString()).totals().fileCount());
+  }
+
+  @Test
+  void shapeControlsCounts() {
+    PathGraph graph = TreeGenerator.graph("/synthetic",
+        TreeShape.parse("depth=2", "directories=3", "files=4", "flat=20", "chain=5"));
+    Map<String, PathInfo> paths = graph.pathInfos();
+
+    // 1 + 3 + 9 directories with 4 files each, a flat directory and a chain of 5
+    assertEquals(13 * 5 + 21 + 5 * 2, paths.size());
+    assertEquals(20, paths.get("/synthetic/flat").children().size());
+    assertTrue(paths.containsKey("/synthetic/deep/level-1/level-2/level-3/level-4/file-0.txt"));
+
+    assertEquals(100, TreeGenerator.graph("/synthetic",
+        TreeShape.parse("depth=10", "limit=100")).pathInfos().size());
+  }
+
+  @Test
+  void parsesShape() {
+    assertEquals(new TreeShape(0, 8, 1_000_000, 0, 200, 4096L, Integer.MAX_VALUE, 42L),
+        TreeShape.parse("depth=0", "files=1_000_000", "chain=200"));
+    assertThrows(IllegalArgumentException.class, () -> TreeShape.parse("width=3"));
+  }
+
+  private static Map<String, Long> fileSizes(PathGraph graph) {
+    return graph.pathInfos().entrySet().stream()
+        .filter(entry -> entry.getValue().fileType().equals(PathConstants.FILE_TYPE_FILE))
+        .collect(Collectors.toMap(Map.Entry::getKey, entry -> entry.getValue().size()));
+  }
+
+}